@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread;
+
+import com.skype.research.bakebread.config.Configuration;
+import com.skype.research.bakebread.config.Conversion;
+import com.skype.research.bakebread.config.HostMode;
+import com.skype.research.bakebread.config.cmdline.CmdLineConfiguration;
+import com.skype.research.bakebread.io.AutoClose;
+import com.skype.research.bakebread.io.PrivateFiles;
+import com.skype.research.bakebread.model.host.BuildIdStore;
+import com.skype.research.bakebread.model.host.HostCache;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Resident converter: takes jobs from a loopback port and keeps host files warm between them.
+ * A job is the daemon's token, then a command line, one argument per line, ended by an empty line.
+ * The reply is the console output of the job, ended by an "exit <CODE>" line. Jobs beyond the queue
+ * wait to be accepted.
+ * <p>
+ * Any local user may connect to a loopback port, and a job reads and writes any file the daemon can.
+ * The token is what keeps the other users out: a random one per start, in a file only the owner of
+ * the daemon may read. Jobs which would keep a worker, such as a gdb server, are rejected.
+ */
+public class Daemon implements Runnable, Closeable {
+	public static final String EXIT = "exit ";
+	public static final int MAX_HOST_CACHES = 4; // sysroots kept warm; each holds up to its open file budget
+	private static final int REQUEST_TIMEOUT = 10000; // ms to send the token and the job
+	private static final int TOKEN_BYTES = 32;
+
+	private static final class SharedCache {
+		final FutureTask<HostCache> built; // by the first user, outside of the lock
+		int users;
+		boolean retired;
+
+		SharedCache(FutureTask<HostCache> built) {
+			this.built = built;
+		}
+
+		void close() {
+			try {
+				built.get().close();
+			} catch (InterruptedException | ExecutionException e) {
+				// never built, nothing to close
+			}
+		}
+	}
+
+	private final PrintStream printStream;
+	private final ServerSocket serverSocket;
+	private final File tokenFile;
+	private final byte[] token;
+	private final int workers = Runtime.getRuntime().availableProcessors();
+	private final Semaphore slots = new Semaphore(4 * workers); // running and queued
+	private final ExecutorService executor = Executors.newFixedThreadPool(workers);
+	// guarded by itself; least recently used first. one per module paths, host modes, store, budget and cache
+	private final Map<List<Object>, SharedCache> hostCaches = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Listens on the port and writes a new token into daemon-PORT.token in the folder.
+	 * @param port        loopback port to listen on, 0 for any free one
+	 * @param tokenFolder where to write the token file, e.g. {@link PrivateFiles#getUserFolder()}
+	 */
+	public Daemon(int port, File tokenFolder, PrintStream printStream) throws IOException {
+		this.printStream = printStream;
+		serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		try {
+			final byte[] random = new byte[TOKEN_BYTES];
+			new SecureRandom().nextBytes(random);
+			token = BuildIdStore.toHex(random).getBytes(StandardCharsets.US_ASCII);
+			tokenFile = new File(PrivateFiles.mkdirs(tokenFolder), "daemon-" + getPort() + ".token");
+			final File temp = PrivateFiles.createTemp(tokenFile);
+			try {
+				try (FileOutputStream fos = new FileOutputStream(temp)) {
+					fos.write(token);
+				}
+				PrivateFiles.replace(temp, tokenFile);
+			} finally {
+				//noinspection ResultOfMethodCallIgnored
+				temp.delete(); // moved unless failed
+			}
+		} catch (IOException | RuntimeException e) {
+			serverSocket.close();
+			throw e;
+		}
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return the file a client reads the token from, to send it as the first line of a job
+	 */
+	public File getTokenFile() {
+		return tokenFile;
+	}
+
+	/**
+	 * Takes jobs until closed.
+	 */
+	@Override
+	public void run() {
+		printStream.println("Taking jobs on port " + getPort() + ", token in " + tokenFile.getAbsolutePath());
+		printStream.flush();
+		try {
+			//noinspection InfiniteLoopStatement
+			while (true) {
+				slots.acquireUninterruptibly(); // backpressure: unaccepted clients wait in the backlog
+				final Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch (IOException e) {
+					slots.release();
+					throw e;
+				}
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							serve(socket);
+						} finally {
+							slots.release();
+						}
+					}
+				});
+			}
+		} catch (IOException e) {
+			if (!serverSocket.isClosed()) {
+				e.printStackTrace(printStream);
+			}
+		} finally {
+			executor.shutdownNow();
+			//noinspection ResultOfMethodCallIgnored
+			tokenFile.delete();
+			synchronized (hostCaches) {
+				for (SharedCache shared : hostCaches.values()) {
+					shared.retired = true;
+					if (shared.users == 0) {
+						shared.close();
+					}
+				}
+				hostCaches.clear();
+			}
+		}
+	}
+
+	/**
+	 * Stops taking jobs; the running ones complete.
+	 */
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	private void serve(Socket socket) {
+		try (Socket closing = socket) {
+			closing.setSoTimeout(REQUEST_TIMEOUT);
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(closing.getInputStream(), StandardCharsets.UTF_8));
+			final String presented = reader.readLine();
+			final PrintStream jobStream = new PrintStream(closing.getOutputStream(), false, "UTF-8");
+			if (presented == null || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+				jobStream.println("Error: wrong token!");
+				jobStream.println(EXIT + 1);
+				jobStream.flush();
+				return;
+			}
+			final List<String> args = new ArrayList<>();
+			String line;
+			while ((line = reader.readLine()) != null && !line.isEmpty()) {
+				args.add(line);
+			}
+			closing.setSoTimeout(0);
+			jobStream.println(EXIT + runJob(args.toArray(new String[args.size()]), jobStream));
+			jobStream.flush();
+		} catch (IOException e) {
+			e.printStackTrace(printStream); // the client is gone
+		}
+	}
+
+	private int runJob(String[] args, PrintStream jobStream) {
+		try {
+			final Configuration configuration = new CmdLineConfiguration(args);
+			if (configuration.hasNothingToDo() || configuration.getResidentPort() >= 0) {
+				jobStream.println("Error: no conversion or display requested, or no file specified!");
+				return 1;
+			}
+			if (configuration.shouldConvertTo(Conversion.GDB_SERVER)) {
+				jobStream.println("Error: a gdb server cannot be run as a job!");
+				return 1;
+			}
+			final SharedCache shared = acquireHostCache(configuration);
+			final HostCache hostCache;
+			try {
+				hostCache = getHostCache(shared);
+			} catch (IOException | RuntimeException e) {
+				releaseHostCache(shared);
+				throw e;
+			}
+			try {
+				if (configuration.getBatchFiles().isEmpty()) {
+					Main.runTask(configuration, jobStream, hostCache);
+					return 0;
+				}
+				return Main.runBatch(configuration, jobStream, hostCache) ? 0 : 2;
+			} finally {
+				if (hostCache.getElfCache() != null) {
+					hostCache.getElfCache().save(); // the daemon is not expected to exit cleanly
+				}
+				releaseHostCache(shared);
+			}
+		} catch (Exception e) {
+			e.printStackTrace(jobStream);
+			return 3;
+		}
+	}
+
+	/**
+	 * @return the cache shared by the jobs on the same host files, counting this one in; built by {@link #getHostCache}
+	 */
+	private SharedCache acquireHostCache(final Configuration configuration) {
+		final List<Object> key = Arrays.<Object>asList(configuration.getModulePaths(),
+				configuration.isHostModeEnabled(HostMode.INDEXED), configuration.isHostModeEnabled(HostMode.ELF_CACHE),
+				configuration.getBuildIdStore(), configuration.getOpenFileBudget(), Main.getCacheFolder(configuration));
+		synchronized (hostCaches) {
+			SharedCache shared = hostCaches.get(key);
+			if (shared == null || shared.built.isDone() && failed(shared.built)) {
+				// WISDOM ingesting a store or indexing a sysroot takes minutes; jobs on warm caches do not wait for it
+				shared = new SharedCache(new FutureTask<>(new Callable<HostCache>() {
+					@Override
+					public HostCache call() throws IOException {
+						return Main.newHostCache(configuration, printStream, new AutoClose(printStream));
+					}
+				}));
+				hostCaches.put(key, shared);
+			}
+			shared.users++;
+			// retire the least recently used beyond the bound; those in use are closed by their last user
+			final Iterator<SharedCache> eldest = hostCaches.values().iterator();
+			while (hostCaches.size() > MAX_HOST_CACHES) {
+				final SharedCache retired = eldest.next();
+				eldest.remove();
+				retired.retired = true;
+				if (retired.users == 0) {
+					retired.close();
+				}
+			}
+			return shared;
+		}
+	}
+
+	private static boolean failed(FutureTask<HostCache> built) {
+		try {
+			built.get();
+			return false;
+		} catch (InterruptedException | ExecutionException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Builds the cache if this job is the first to get it, or waits for the job which is building it.
+	 * A cache built for an earlier job catches up with the host files changed since.
+	 */
+	private static HostCache getHostCache(SharedCache shared) throws IOException {
+		final boolean warm = shared.built.isDone();
+		shared.built.run(); // a no-op once started
+		try {
+			final HostCache hostCache = shared.built.get();
+			if (warm) {
+				hostCache.refresh();
+			}
+			return hostCache;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private void releaseHostCache(SharedCache shared) {
+		synchronized (hostCaches) {
+			if (--shared.users == 0 && shared.retired) {
+				shared.close();
+			}
+		}
+	}
+}
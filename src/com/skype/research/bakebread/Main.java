@@ -6,15 +6,20 @@
 
 package com.skype.research.bakebread;
 
+import com.skype.research.bakebread.config.BatchItemConfiguration;
 import com.skype.research.bakebread.config.BitExactValidation;
 import com.skype.research.bakebread.config.Configuration;
 import com.skype.research.bakebread.config.Conversion;
 import com.skype.research.bakebread.config.DefaultConfiguration;
 import com.skype.research.bakebread.config.DisplaySection;
+import com.skype.research.bakebread.config.HostMode;
 import com.skype.research.bakebread.config.ModuleAnalysis;
+import com.skype.research.bakebread.config.WriteMode;
 import com.skype.research.bakebread.config.cmdline.CmdLineConfiguration;
 import com.skype.research.bakebread.coredump.ELF;
+import com.skype.research.bakebread.gdb.GdbServer;
 import com.skype.research.bakebread.io.AutoClose;
+import com.skype.research.bakebread.io.PrivateFiles;
 import com.skype.research.bakebread.minidump.DirectoryEntry;
 import com.skype.research.bakebread.minidump.Header;
 import com.skype.research.bakebread.minidump.MemoryStream;
@@ -28,8 +33,16 @@ import com.skype.research.bakebread.model.analysis.FragileValidator;
 import com.skype.research.bakebread.model.analysis.Splitter;
 import com.skype.research.bakebread.model.analysis.Validator;
 import com.skype.research.bakebread.model.arch.ElfAnalyzer;
+import com.skype.research.bakebread.model.host.ApkFileFinder;
+import com.skype.research.bakebread.model.host.BuildIdFileFinder;
+import com.skype.research.bakebread.model.host.BuildIdStore;
+import com.skype.research.bakebread.model.host.ChannelPool;
+import com.skype.research.bakebread.model.host.ElfCache;
+import com.skype.research.bakebread.model.host.FileFinder;
+import com.skype.research.bakebread.model.host.HostCache;
 import com.skype.research.bakebread.model.host.HostFileFinder;
 import com.skype.research.bakebread.model.host.HostFileMapper;
+import com.skype.research.bakebread.model.host.IndexedFileFinder;
 import com.skype.research.bakebread.model.memory.MapInfo;
 import com.skype.research.bakebread.model.memory.MemLoad;
 import com.skype.research.bakebread.nio.BufferAdapter;
@@ -46,13 +59,24 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 public class Main {
+	private static final String GZ_SUFFIX = ".gz";
 
     public static void main(String[] args) throws IOException {
 	    // we are the primary entry point. but we may want to introduce more symmetric routing.
@@ -72,6 +96,12 @@ public class Main {
 	    } else {
 		    try {
 			    Configuration configuration = new CmdLineConfiguration(args);
+			    if (configuration.getResidentPort() >= 0) {
+				    try (Daemon daemon = new Daemon(configuration.getResidentPort(), PrivateFiles.getUserFolder(), printStream)) {
+					    daemon.run();
+				    }
+				    return;
+			    }
 			    if (configuration.hasNothingToDo()) {
 				    final File dumpFile = configuration.getDumpFile();
 				    if (dumpFile == null) {
@@ -84,7 +114,13 @@ public class Main {
 					    configuration = new DefaultConfiguration(dumpFile);
 				    }
 			    }
-			    runTask(configuration, printStream);
+			    try (HostCache hostCache = newHostCache(configuration, printStream, new AutoClose())) {
+				    if (configuration.getBatchFiles().isEmpty()) {
+					    runTask(configuration, printStream, hostCache);
+				    } else if (!runBatch(configuration, printStream, hostCache)) {
+					    System.exit(2);
+				    }
+			    }
 		    } catch (Exception parseException) {
 			    parseException.printStackTrace(printStream);
 			    System.exit(3);
@@ -102,11 +138,107 @@ public class Main {
 		printStream.write(IOUtils.readFully(Main.class.getResourceAsStream(name), Short.MAX_VALUE, false));
 	}
 
-	private static void runTask(Configuration configuration, PrintStream printStream) throws IOException {
-		final AutoClose autoClose = new AutoClose();
+	/**
+	 * @return the configured cache folder, or else ~/.bakebread; created when first written to
+	 */
+	static File getCacheFolder(Configuration configuration) {
+		final File cacheFolder = configuration.getCacheFolder();
+		return cacheFolder == null ? new File(System.getProperty("user.home"), PrivateFiles.FOLDER_NAME) : cacheFolder;
+	}
+
+	/**
+	 * @param printStream where to warn of host state which could not be read or saved
+	 */
+	static HostCache newHostCache(Configuration configuration, PrintStream printStream, AutoClose autoClose)
+			throws IOException {
+		BuildIdStore buildIdStore = null;
+		if (configuration.getBuildIdStore() != null) {
+			buildIdStore = new BuildIdStore(configuration.getBuildIdStore());
+			buildIdStore.ingest(configuration.getModulePaths());
+		}
+		ElfCache elfCache = null;
+		if (configuration.isHostModeEnabled(HostMode.ELF_CACHE)) {
+			elfCache = autoClose.register(ElfCache.open(
+					new File(getCacheFolder(configuration), ElfCache.FILE_NAME), printStream));
+		}
+		final int openFiles = configuration.getOpenFileBudget();
+		return new HostCache(newFinder(configuration), buildIdStore, elfCache,
+				openFiles > 0 ? openFiles : ChannelPool.DEFAULT_BUDGET, autoClose);
+	}
+
+	static FileFinder newFinder(Configuration configuration) throws IOException {
+		if (configuration.isHostModeEnabled(HostMode.INDEXED)) {
+			return new IndexedFileFinder(configuration.getModulePaths(),
+					new File(getCacheFolder(configuration), IndexedFileFinder.FOLDER_NAME));
+		}
+		return new HostFileFinder(configuration.getModulePaths());
+	}
+
+	/**
+	 * Converts the dumps concurrently, sharing host files, each into a folder of its own.
+	 * @return whether all dumps have been converted
+	 */
+	static boolean runBatch(final Configuration configuration, PrintStream printStream,
+			final HostCache hostCache) throws IOException {
+		if (configuration.shouldConvertTo(Conversion.GDB_SERVER)) {
+			printStream.println("Error: a gdb server cannot be run in batch mode!");
+			return false;
+		}
+		final List<BatchItemConfiguration> items = BatchItemConfiguration.itemsOf(configuration);
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(items.size(), Runtime.getRuntime().availableProcessors())));
+		int converted = 0;
+		try {
+			final List<Future<File>> futures = new ArrayList<>(items.size());
+			for (final BatchItemConfiguration itemConfiguration : items) {
+				futures.add(executor.submit(new Callable<File>() {
+					@Override
+					public File call() throws Exception {
+						final File folder = itemConfiguration.getOutputFolder();
+						if (!folder.isDirectory() && !folder.mkdirs()) {
+							throw new FileNotFoundException(folder.getAbsolutePath());
+						}
+						final File log = new File(folder, itemConfiguration.getDumpFile().getName() + ".log");
+						try (PrintStream logStream = new PrintStream(new FileOutputStream(log))) {
+							runTask(itemConfiguration, logStream, hostCache);
+						}
+						return log;
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				final String dumpName = items.get(i).getName();
+				try {
+					printStream.println(dumpName + ": " + futures.get(i).get().getAbsolutePath());
+					converted++;
+				} catch (ExecutionException e) {
+					printStream.println(dumpName + ": failed, " + e.getCause());
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException(e.getMessage());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		printStream.println();
+		printStream.println(converted + " of " + items.size() + " dumps converted");
+		return converted == items.size();
+	}
+
+	static void runTask(Configuration configuration, PrintStream printStream, HostCache hostCache) throws IOException {
+		final AutoClose autoClose = new AutoClose(printStream);
+		try {
+			convert(configuration, printStream, hostCache, autoClose);
+		} finally {
+			autoClose.close();
+		}
+	}
+
+	private static void convert(Configuration configuration, PrintStream printStream, HostCache hostCache,
+			AutoClose autoClose) throws IOException {
 		final File dumpFile = configuration.getDumpFile();
 		final String fileName = dumpFile.getName();
-		MiniDumpFromFile miniDump = autoClose.register(new MiniDumpFromFile(dumpFile));
+		MiniDumpFromFile miniDump = autoClose.register(new MiniDumpFromFile(dumpFile, configuration));
 		miniDump.open();
 		if (configuration.isDisplaySectionEnabled(DisplaySection.STATS)) {
 			Header header = miniDump.getHeader();
@@ -114,7 +246,7 @@ public class Main {
 			printStream.println("directory_at = " + header.getStreamDirectoryRva().getVirtualAddress());
 			printStream.println("gmt_datetime = " + header.getDateTime().toGMTString());
 			printStream.println("crash_extras = " + Long.toBinaryString(header.getFlags()));
-			printStream.println("total_length = " + dumpFile.length());
+			printStream.println("total_length = " + miniDump.length());
 			printStream.println();
 		}
 		File targetFolder = null;
@@ -134,8 +266,7 @@ public class Main {
 		for (DirectoryEntry directoryEntry : miniDump.getDirectory()) {
 			final StreamType streamType = directoryEntry.getStreamType();
 			if (configuration.shouldConvertTo(Conversion.SPLIT_DIR)) {
-				directoryEntry.getLocationDescription().copyOut(
-						dumpFile,
+				miniDump.copyOut(directoryEntry.getLocationDescription(),
 						new File(targetFolder, fileName + "." + streamType)
 				);
 			}
@@ -150,8 +281,7 @@ public class Main {
 		if (configuration.shouldConvertTo(Conversion.SPLIT_DIR)) {
 			for (MemoryStream memoryStream : miniDump.getOtherStreams()) {
 				final String hexAddress = String.format("0x%08x", memoryStream.getStartAddress());
-				memoryStream.getLocationDescription().copyOut(
-						dumpFile,
+				miniDump.copyOut(memoryStream.getLocationDescription(),
 						new File(targetFolder, fileName + "." + Microsoft.MemoryListStream +
 								"." + hexAddress)
 				);
@@ -159,8 +289,7 @@ public class Main {
 			for (ThreadStream threadStream : miniDump.getThreadStreams()) {
 				final MemoryStream memoryStream = threadStream.getStack();
 				final String hexAddress = String.format("0x%08x", memoryStream.getStartAddress());
-				memoryStream.getLocationDescription().copyOut(
-						dumpFile,
+				miniDump.copyOut(memoryStream.getLocationDescription(),
 						new File(targetFolder, fileName + "." + Microsoft.ThreadListStream +
 								"." + threadStream.getThreadId() + "." + hexAddress)
 				);
@@ -192,23 +321,54 @@ public class Main {
 		// CPUInfo - google, SystemInfo - MSFT
 
 		// core dump
-		if (configuration.shouldConvertTo(Conversion.CORE_FILE)) {
+		final boolean toCore = configuration.shouldConvertTo(Conversion.CORE_FILE);
+		final boolean toGdb = configuration.shouldConvertTo(Conversion.GDB_SERVER);
+		if (toCore || toGdb) {
 			// TODO: add RelRo to module analysis or validation
 			
-			File coreFile = configuration.getConversionTarget(Conversion.CORE_FILE);
+			File coreFile = toCore ? configuration.getConversionTarget(Conversion.CORE_FILE) : null;
+			// pipes and devices cannot seek, write to them in file order
+			final boolean sequential = toCore && coreFile.exists() && !coreFile.isFile();
+			final boolean gzip = configuration.isWriteModeEnabled(WriteMode.GZIP);
+			// a compressed core is named as such, gdb is given the name to decompress it to
+			File outFile = coreFile;
+			if (toCore && gzip && !sequential) {
+				String name = coreFile.getName();
+				if (name.endsWith(GZ_SUFFIX)) {
+					coreFile = new File(coreFile.getParent(), name.substring(0, name.length() - GZ_SUFFIX.length()));
+				} else {
+					outFile = new File(coreFile.getParent(), name + GZ_SUFFIX);
+				}
+			}
 
-			printStream.println();
-			printStream.println("Writing corefile: " + coreFile.getCanonicalPath());
+			if (toCore) {
+				printStream.println();
+				printStream.println("Writing corefile: " + outFile.getCanonicalPath());
+			}
 
 			final ELF elf = new ELF(ELF.Preset.ANDROID_32, ELF.Type.CORE);
-			final ElfAnalyzer elfAn = new ElfAnalyzer(configuration, autoClose); // incoming
+			final ElfAnalyzer elfAn = new ElfAnalyzer(configuration, hostCache); // incoming
 
 			elf.addNotes(miniDump);
-			HostFileFinder finder = new HostFileFinder(configuration.getModulePaths());
-			HostFileMapper mapper = new HostFileMapper(configuration, autoClose);
+			FileFinder finder = hostCache.getFinder();
+			if (hostCache.getBuildIdStore() != null) {
+				final BuildIdFileFinder buildIdFinder = new BuildIdFileFinder(hostCache.getBuildIdStore(), finder);
+				for (Map.Entry<String, byte[]> buildId : miniDump.getBuildIds().entrySet()) {
+					buildIdFinder.putBuildId(buildId.getKey(), buildId.getValue());
+				}
+				finder = buildIdFinder;
+			}
+			if (configuration.isHostModeEnabled(HostMode.APK)) {
+				finder = new ApkFileFinder(finder, hostCache);
+			}
+			HostFileMapper mapper = new HostFileMapper(configuration, hostCache);
 			if (configuration.isModuleAnalysisEnabled(ModuleAnalysis.ELF)) {
 				mapper.addAnalyzer(elfAn);
 			}
+			if (configuration.isModuleAnalysisEnabled(ModuleAnalysis.PARALLEL)) {
+				// mostly waiting for the disk
+				mapper.setResolverCount(2 * Runtime.getRuntime().availableProcessors());
+			}
 			final Validator validator;
 			if (configuration.isValidationTypeEnabled(BitExactValidation.STRICT_CHECKS)) {
 				validator = new FragileValidator();
@@ -227,7 +387,7 @@ public class Main {
 				flexValidator.setSummarize(configuration.isDisplaySectionEnabled(DisplaySection.HAMMING));
 				flexValidator.setShowCosts(configuration.isDisplaySectionEnabled(DisplaySection.DEBUG));
 				flexValidator.setDiffplay(printStream);
-				flexValidator.setDiffFile(companionFile(coreFile, "diff"));
+				flexValidator.setDiffFile(companionFile(toCore ? coreFile : dumpFile, "diff"));
 				validator = flexValidator;
 			}
 			List<MemLoad> memLoads = Splitter.split(miniDump.getMemMap(), miniDump.getMemDmp(),
@@ -237,38 +397,85 @@ public class Main {
 					printStream.println(memLoad);
 				}
 			}
-			elf.addLoads(memLoads, configuration);
-			FileOutputStream fos = new FileOutputStream(coreFile);
-			DataOutputStream dos = autoClose.register(new DataOutputStream(fos));
-			elf.writeExternal(dos, fos.getChannel());
+			if (toCore) {
+				elf.addLoads(memLoads, configuration);
+				elf.setWrConfig(configuration);
+				FileOutputStream fos = new FileOutputStream(outFile);
+				DataOutputStream dos = autoClose.register(new DataOutputStream(fos));
+				if (gzip) {
+					GZIPOutputStream gzos = new GZIPOutputStream(fos, 1 << 16) {
+						{ def.setLevel(Deflater.BEST_SPEED); } // cores are large, and mostly compressible anyway
+					};
+					elf.writeTo(Channels.newChannel(gzos));
+					gzos.finish();
+				} else if (sequential) {
+					elf.writeTo(fos.getChannel());
+				} else {
+					elf.writeExternal(dos, fos.getChannel());
+				}
 			
-			if (configuration.isModuleAnalysisEnabled(ModuleAnalysis.ELF)) {
-				File gdbScript = companionFile(coreFile, "gdb");
-				printStream.println("Courtesy script: " + gdbScript.getCanonicalPath());
-				try (FileWriter fileWriter = new FileWriter(gdbScript)) {
-					PrintWriter printWriter = new PrintWriter(fileWriter, true);
-					// printWriter.println("set pagination off"); // not so helpful if backtrace infinitely loops
-					// printWriter.println("set print elements 0"); // similar warning
-					for (Map.Entry<File, Long> hostModel : elfAn.getTextOffsets().entrySet()) {
-						printWriter.println("add-symbol-file " + prettyFile(hostModel.getKey()) 
-								+ " 0x" + Long.toHexString(hostModel.getValue())); // MOREINFO -s other sections?
+				if (configuration.isModuleAnalysisEnabled(ModuleAnalysis.ELF)) {
+					File gdbScript = companionFile(coreFile, "gdb");
+					printStream.println("Courtesy script: " + gdbScript.getCanonicalPath());
+					try (FileWriter fileWriter = new FileWriter(gdbScript)) {
+						PrintWriter printWriter = new PrintWriter(fileWriter, true);
+						// printWriter.println("set pagination off"); // not so helpful if backtrace infinitely loops
+						// printWriter.println("set print elements 0"); // similar warning
+						for (String command : addSymbolFileCommands(elfAn)) {
+							printWriter.println(command);
+						}
+						int[] threadIds = miniDump.getThreadIds();
+						Arrays.sort(threadIds); // we copied out
+						int crashedPos = Arrays.binarySearch(threadIds, miniDump.getCrashedThreadId()) + 1;
+						printWriter.println("thread " + crashedPos);
+						printWriter.println("bt");
+						printWriter.flush();
+						printStream.println("Success! To analyze the dump, run");
+						printStream.println();
+						if (gzip && sequential) {
+							printStream.println("# decompress what was written to " + outFile.getCanonicalPath() + " first");
+						} else if (gzip) {
+							// gdb reads uncompressed cores only
+							printStream.println("gzip -dk " + outFile.getCanonicalPath());
+						}
+						printStream.println(
+								"gdb -c " + coreFile.getCanonicalPath() 
+								+ " -x " + gdbScript.getCanonicalPath());
+						printStream.println();
 					}
-					int[] threadIds = miniDump.getThreadIds();
-					Arrays.sort(threadIds); // we copied out
-					int crashedPos = Arrays.binarySearch(threadIds, miniDump.getCrashedThreadId()) + 1;
-					printWriter.println("thread " + crashedPos);
-					printWriter.println("bt");
-					printWriter.flush();
-					printStream.println("Success! To analyze the dump, run");
-					printStream.println();
-					printStream.println(
-							"gdb -c " + coreFile.getCanonicalPath() 
-							+ " -x " + gdbScript.getCanonicalPath());
-					printStream.println();
 				}
 			}
+			if (toGdb) {
+				// nothing is materialized, so even the loads a core would skip are served
+				serveGdb(printStream, miniDump, memLoads, elfAn, configuration.getConversionPort(Conversion.GDB_SERVER));
+			}
+		}
+	}
+
+	private static void serveGdb(PrintStream printStream, MiniDumpFromFile miniDump, List<MemLoad> memLoads,
+			ElfAnalyzer elfAn, int port) throws IOException {
+		try (GdbServer gdbServer = new GdbServer(miniDump, memLoads, port)) {
+			printStream.println();
+			printStream.println("Serving gdb on port " + gdbServer.getPort() + ". To analyze the dump, run gdb with");
+			printStream.println();
+			printStream.println("target remote localhost:" + gdbServer.getPort());
+			for (String command : addSymbolFileCommands(elfAn)) {
+				printStream.println(command);
+			}
+			printStream.println();
+			printStream.flush();
+			gdbServer.serve();
+		}
+	}
+
+	@SuppressWarnings("deprecation") // the only reader of the .text placement, until sections are placed generally
+	private static List<String> addSymbolFileCommands(ElfAnalyzer elfAn) {
+		List<String> commands = new ArrayList<>();
+		for (Map.Entry<File, Long> hostModel : elfAn.getTextOffsets().entrySet()) {
+			commands.add("add-symbol-file " + prettyFile(hostModel.getKey())
+					+ " 0x" + Long.toHexString(hostModel.getValue())); // MOREINFO -s other sections?
 		}
-		autoClose.close();
+		return commands;
 	}
 
 	private static File companionFile(File coreFile, String extension) {
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config;
+
+import com.skype.research.bakebread.model.memory.MemLoad;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Configuration of one dump of a batch: that of the batch, with conversion targets in a folder of its own.
+ * A target "out/core" becomes "out/DUMP.out/core", its companion files following.
+ */
+public class BatchItemConfiguration implements Configuration {
+	public static final String FOLDER_SUFFIX = ".out";
+
+	private final Configuration batch;
+	private final File dumpFile;
+	private final String name;
+
+	public BatchItemConfiguration(Configuration batch, File dumpFile) {
+		this(batch, dumpFile, dumpFile.getName());
+	}
+
+	/**
+	 * @param name the name of the folder of the dump, before {@link #FOLDER_SUFFIX}
+	 */
+	public BatchItemConfiguration(Configuration batch, File dumpFile, String name) {
+		this.batch = batch;
+		this.dumpFile = dumpFile;
+		this.name = name;
+	}
+
+	/**
+	 * @return the configurations of the dumps of the batch, in order. Dumps of the same name from
+	 * different folders (regardless of case) go to "DUMP.out", "DUMP-2.out" and so on.
+	 */
+	public static List<BatchItemConfiguration> itemsOf(Configuration batch) {
+		final List<BatchItemConfiguration> items = new ArrayList<>();
+		final Set<String> taken = new HashSet<>();
+		for (File dumpFile : batch.getBatchFiles()) {
+			String name = dumpFile.getName();
+			for (int i = 2; !taken.add(name.toLowerCase(Locale.ROOT)); i++) {
+				name = dumpFile.getName() + "-" + i;
+			}
+			items.add(new BatchItemConfiguration(batch, dumpFile, name));
+		}
+		return items;
+	}
+
+	/**
+	 * @return the name of the dump in the batch, unique in it
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the folder of the core file target, or else of the split target, or else the current one
+	 */
+	public File getOutputFolder() {
+		for (Conversion conversion : new Conversion[] {Conversion.CORE_FILE, Conversion.SPLIT_DIR}) {
+			if (batch.shouldConvertTo(conversion)) {
+				return getConversionTarget(conversion).getParentFile();
+			}
+		}
+		return new File(name + FOLDER_SUFFIX).getAbsoluteFile();
+	}
+
+	@Override
+	public File getDumpFile() {
+		return dumpFile;
+	}
+
+	@Override
+	public Collection<File> getBatchFiles() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public int getResidentPort() {
+		return -1;
+	}
+
+	@Override
+	public File getConversionTarget(Conversion conversionType) {
+		File target = batch.getConversionTarget(conversionType).getAbsoluteFile();
+		File folder = new File(target.getParentFile(), name + FOLDER_SUFFIX);
+		return new File(folder, target.getName());
+	}
+
+	@Override
+	public boolean shouldConvertTo(Conversion conversionType) {
+		return batch.shouldConvertTo(conversionType);
+	}
+
+	@Override
+	public int getConversionPort(Conversion conversionType) {
+		return batch.getConversionPort(conversionType);
+	}
+
+	@Override
+	public boolean hasNothingToDo() {
+		return batch.hasNothingToDo();
+	}
+
+	@Override
+	public boolean isDisplaySectionEnabled(DisplaySection section) {
+		return batch.isDisplaySectionEnabled(section);
+	}
+
+	@Override
+	public Collection<File> getModulePaths() {
+		return batch.getModulePaths();
+	}
+
+	@Override
+	public File getBuildIdStore() {
+		return batch.getBuildIdStore();
+	}
+
+	@Override
+	public int getOpenFileBudget() {
+		return batch.getOpenFileBudget();
+	}
+
+	@Override
+	public File getCacheFolder() {
+		return batch.getCacheFolder();
+	}
+
+	@Override
+	public Collection<String> getUndefinedPathElements() {
+		return batch.getUndefinedPathElements();
+	}
+
+	@Override
+	public boolean hasMemoryFillingPattern(MemoryFog fogType) {
+		return batch.hasMemoryFillingPattern(fogType);
+	}
+
+	@Override
+	public byte[] getMemoryFillingPattern(MemoryFog fogType) {
+		return batch.getMemoryFillingPattern(fogType);
+	}
+
+	@Override
+	public boolean isValidationTypeEnabled(BitExactValidation val) {
+		return batch.isValidationTypeEnabled(val);
+	}
+
+	@Override
+	public boolean isModuleAnalysisEnabled(ModuleAnalysis man) {
+		return batch.isModuleAnalysisEnabled(man);
+	}
+
+	@Override
+	public Collection<ModuleAnalysis> getModuleAnalysisTypes() {
+		return batch.getModuleAnalysisTypes();
+	}
+
+	@Override
+	public boolean shallWrite(MemLoad memLoad) {
+		return batch.shallWrite(memLoad);
+	}
+
+	@Override
+	public boolean isInputModeEnabled(InputMode mode) {
+		return batch.isInputModeEnabled(mode);
+	}
+
+	@Override
+	public boolean isWriteModeEnabled(WriteMode mode) {
+		return batch.isWriteModeEnabled(mode);
+	}
+
+	@Override
+	public boolean isHostModeEnabled(HostMode mode) {
+		return batch.isHostModeEnabled(mode);
+	}
+
+	@Override
+	public float getMaxOutlierRatio() {
+		return batch.getMaxOutlierRatio();
+	}
+
+	@Override
+	public float getMinOrderedRatio() {
+		return batch.getMinOrderedRatio();
+	}
+
+	@Override
+	public float getMaxHammingRatio() {
+		return batch.getMaxHammingRatio();
+	}
+
+	@Override
+	public float getBitHammingRatio() {
+		return batch.getBitHammingRatio();
+	}
+}
@@ -14,12 +14,18 @@ import java.util.Collection;
 /**
  * BakeBread task configuration.
  */
-public interface Configuration extends FogConfig, ValConfig, ManConfig, OutConfig, Thresholds {
+public interface Configuration extends FogConfig, ValConfig, ManConfig, OutConfig, InConfig, WrConfig, HoConfig, Thresholds {
 	boolean hasNothingToDo();
 	boolean isDisplaySectionEnabled(DisplaySection section);
 	boolean shouldConvertTo(Conversion conversionType);
 	File getConversionTarget(Conversion conversionType);
+	int getConversionPort(Conversion conversionType);
 	Collection<File> getModulePaths();
 	Collection<String> getUndefinedPathElements();
 	File getDumpFile();
+	Collection<File> getBatchFiles();
+	int getResidentPort(); // negative unless resident
+	File getBuildIdStore(); // null unless set
+	int getOpenFileBudget(); // negative unless set
+	File getCacheFolder(); // null unless set
 }
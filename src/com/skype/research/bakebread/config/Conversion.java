@@ -13,4 +13,5 @@ package com.skype.research.bakebread.config;
 public enum Conversion {
 	SPLIT_DIR,
 	CORE_FILE,
+	GDB_SERVER,
 }
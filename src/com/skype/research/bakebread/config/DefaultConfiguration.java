@@ -43,11 +43,46 @@ public class DefaultConfiguration extends MutableThresholds implements Configura
 		return null;
 	}
 
+	@Override
+	public int getConversionPort(Conversion conversionType) {
+		return 0;
+	}
+
 	@Override
 	public Collection<File> getModulePaths() {
 		return Collections.emptyList();
 	}
 
+	@Override
+	public Collection<File> getBatchFiles() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean isHostModeEnabled(HostMode mode) {
+		return false;
+	}
+
+	@Override
+	public int getResidentPort() {
+		return -1;
+	}
+
+	@Override
+	public File getBuildIdStore() {
+		return null;
+	}
+
+	@Override
+	public int getOpenFileBudget() {
+		return -1;
+	}
+
+	@Override
+	public File getCacheFolder() {
+		return null;
+	}
+
 	@Override
 	public Collection<String> getUndefinedPathElements() {
 		return Collections.emptyList();
@@ -79,6 +114,16 @@ public class DefaultConfiguration extends MutableThresholds implements Configura
 		return new byte[] { 0 };
 	}
 
+	@Override
+	public boolean isInputModeEnabled(InputMode mode) {
+		return false;
+	}
+
+	@Override
+	public boolean isWriteModeEnabled(WriteMode mode) {
+		return false;
+	}
+
 	@Override
 	public File getDumpFile() {
 		return file;
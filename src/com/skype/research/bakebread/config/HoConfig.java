@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config;
+
+/**
+ * Host file access configuration.
+ */
+public interface HoConfig {
+	boolean isHostModeEnabled(HostMode mode);
+}
@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config;
+
+/**
+ * Host file access mode.
+ */
+public enum HostMode {
+	INDEXED, // look host files up in a persistent index of each root
+	ELF_CACHE, // keep parsed host ELF headers between runs
+	APK, // read libraries mapped from APKs in place
+	;
+}
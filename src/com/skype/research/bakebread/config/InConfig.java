@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config;
+
+/**
+ * Minidump input configuration.
+ */
+public interface InConfig {
+	boolean isInputModeEnabled(InputMode mode);
+}
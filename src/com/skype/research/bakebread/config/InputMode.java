@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config;
+
+/**
+ * Minidump input parsing strategies.
+ */
+public enum InputMode {
+	LAZY,   // parse the directory up front, every stream on first access
+	PARALLEL, // decode independent streams concurrently, at private positions
+	INDEXED,  // keep the random access index of a gzipped dump next to it
+	;
+}
@@ -13,5 +13,6 @@ public enum ModuleAnalysis {
 	RAW,    // most dumb: use the ModuleStreamList information
 	ELF,    // executable and linkable format sections
 	ARM,    // "bleach" BL offsets from code before diffing
+	PARALLEL, // find and parse host files concurrently
 	;
 }
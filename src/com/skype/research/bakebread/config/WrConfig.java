@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config;
+
+/**
+ * Core dump output configuration.
+ */
+public interface WrConfig {
+	boolean isWriteModeEnabled(WriteMode mode);
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config;
+
+/**
+ * Core dump output strategies.
+ */
+public enum WriteMode {
+	PARALLEL, // write load payloads concurrently, each at its precomputed offset
+	HOLES,    // page-align loads, leave zero-filled ones unwritten
+	COALESCE, // merge adjacent loads of equal permissions
+	GZIP,     // compress on the fly, writing strictly sequentially
+	;
+}
@@ -26,6 +26,7 @@ public class AnalyzeOptions extends EnumListOptions<ModuleAnalysis> {
 			case 'r': return ModuleAnalysis.RAW;
 			case 'e': return ModuleAnalysis.ELF;
 			case 'a': return ModuleAnalysis.ARM;
+			case 'p': return ModuleAnalysis.PARALLEL;
 			default:
 				return null;
 		}
@@ -37,6 +38,7 @@ public class AnalyzeOptions extends EnumListOptions<ModuleAnalysis> {
 			case "raw": return ModuleAnalysis.RAW;
 			case "elf": return ModuleAnalysis.ELF;
 			case "arm": return ModuleAnalysis.ARM;
+			case "parallel": return ModuleAnalysis.PARALLEL;
 			default:
 				return null;
 		}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config.cmdline;
+
+import com.skype.research.bakebread.minidump.MiniDumpFromFile;
+import com.skype.util.cmdline.ValueOptions;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dumps to convert in one run, instead of the single trailing one.
+ * 
+ *  -B <DUMPS>, --batch=<DUMPS>   A folder of dumps, or a file listing one dump per line.
+ *  Files of the folder which are not dumps, such as logs or gzip seek indices, are skipped.
+ */
+public class BatchOptions extends ValueOptions {
+	public BatchOptions() {
+		super('B', "batch");
+	}
+
+	private final List<File> files = new ArrayList<>();
+
+	@Override
+	protected boolean recognizeValue(String path) {
+		File source = new File(path);
+		if (source.isDirectory()) {
+			File[] listed = source.listFiles();
+			if (listed != null) {
+				Arrays.sort(listed);
+				for (File file : listed) {
+					try {
+						if (file.isFile() && MiniDumpFromFile.isMiniDump(file)) {
+							files.add(file);
+						}
+					} catch (IOException unreadable) {
+						// not ours to convert
+					}
+				}
+			}
+			return true;
+		}
+		if (source.isFile()) {
+			try (BufferedReader reader = new BufferedReader(new FileReader(source))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (!line.isEmpty() && !line.startsWith("#")) {
+						File file = new File(line);
+						// relative to the list, like include paths
+						files.add(file.isAbsolute() ? file : new File(source.getAbsoluteFile().getParentFile(), line));
+					}
+				}
+			} catch (IOException e) {
+				return false;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	public List<File> getFiles() {
+		return files;
+	}
+}
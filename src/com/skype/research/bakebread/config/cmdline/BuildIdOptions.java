@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config.cmdline;
+
+import com.skype.util.cmdline.ValueOptions;
+
+import java.io.File;
+
+/**
+ * Host files by build-id, taking precedence over lookups by name.
+ * 
+ *  -K <STORE>, --build-id-store=<STORE>   Build-id store folder, created if missing.
+ */
+public class BuildIdOptions extends ValueOptions {
+	public BuildIdOptions() {
+		super('K', "build-id-store");
+	}
+
+	private File store;
+
+	@Override
+	protected boolean recognizeValue(String path) {
+		store = new File(path);
+		return !store.isFile();
+	}
+
+	public File getStore() {
+		return store;
+	}
+}
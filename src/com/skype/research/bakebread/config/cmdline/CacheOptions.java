@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config.cmdline;
+
+import com.skype.util.cmdline.ValueOptions;
+
+import java.io.File;
+
+/**
+ * Where to keep state between runs.
+ * 
+ *  -E <DIR>, --cache=<DIR>   Cache folder, created if missing; ~/.bakebread by default.
+ */
+public class CacheOptions extends ValueOptions {
+	public CacheOptions() {
+		super('E', "cache");
+	}
+
+	private File folder;
+
+	@Override
+	protected boolean recognizeValue(String path) {
+		folder = new File(path);
+		return !folder.isFile();
+	}
+
+	public File getFolder() {
+		return folder;
+	}
+}
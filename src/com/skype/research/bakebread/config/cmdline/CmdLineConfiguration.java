@@ -10,8 +10,11 @@ import com.skype.research.bakebread.config.BitExactValidation;
 import com.skype.research.bakebread.config.Configuration;
 import com.skype.research.bakebread.config.Conversion;
 import com.skype.research.bakebread.config.DisplaySection;
+import com.skype.research.bakebread.config.HostMode;
+import com.skype.research.bakebread.config.InputMode;
 import com.skype.research.bakebread.config.MemoryFog;
 import com.skype.research.bakebread.config.ModuleAnalysis;
+import com.skype.research.bakebread.config.WriteMode;
 import com.skype.research.bakebread.model.memory.MemLoad;
 import com.skype.research.exediff.config.cmdline.ExeDiffOptions;
 import com.skype.util.cmdline.ArgParser;
@@ -28,13 +31,21 @@ import java.util.NoSuchElementException;
 public class CmdLineConfiguration implements Configuration {
 
 	private final DisplayOptions display = new DisplayOptions();
+	private final InputOptions input = new InputOptions();
 	private final ExeFileOptions exeFile = new ExeFileOptions();
 	private final AnalyzeOptions mapping = new AnalyzeOptions();
 	private final FillingOptions filling = new FillingOptions();
 	private final CompareOptions compare = new CompareOptions();
 	private final CoreOutOptions outConf = new CoreOutOptions();
+	private final WriteOptions write = new WriteOptions();
+	private final HostOptions host = new HostOptions();
 	private final ConvertOptions convert = new ConvertOptions();
 	private final ExeDiffOptions exeDiff = new ExeDiffOptions();
+	private final BatchOptions batch = new BatchOptions();
+	private final ResidentOptions resident = new ResidentOptions();
+	private final BuildIdOptions buildId = new BuildIdOptions();
+	private final OpenFilesOptions openFiles = new OpenFilesOptions();
+	private final CacheOptions cache = new CacheOptions();
     private final DmpFileOptions dmpFile = new DmpFileOptions();
     
 	private static final UnknownOptions unknown = new UnknownOptions();
@@ -42,13 +53,21 @@ public class CmdLineConfiguration implements Configuration {
 	public CmdLineConfiguration(String[] cmdLine) throws RecognitionException, ConfigurationException {
 	    ArgParser.parseCommandLine(cmdLine,
 			    display,
+			    input,
 			    convert,
 			    exeFile,
 			    mapping,
 			    filling,
 			    compare,
 			    outConf,
+			    write,
+			    host,
 			    exeDiff,
+			    batch,
+			    resident,
+			    buildId,
+			    openFiles,
+			    cache,
 			    dmpFile, // must be second last
 			    unknown  // must be last
 	    );
@@ -60,9 +79,20 @@ public class CmdLineConfiguration implements Configuration {
         return dmpFile.getFile();
     }
 
+	@Override
+	public Collection<File> getBatchFiles() {
+		return batch.getFiles();
+	}
+
+	@Override
+	public int getResidentPort() {
+		return resident.getPort();
+	}
+
 	@Override
 	public boolean hasNothingToDo() {
-		return display.getOptions().isEmpty() && convert.getOptions().isEmpty() || dmpFile.getFile() == null;
+		return display.getOptions().isEmpty() && convert.getOptions().isEmpty()
+				|| dmpFile.getFile() == null && batch.getFiles().isEmpty();
 	}
 
 	@Override
@@ -70,6 +100,21 @@ public class CmdLineConfiguration implements Configuration {
 		return display.isOptionSet(section);
 	}
 	
+	@Override
+	public boolean isInputModeEnabled(InputMode mode) {
+		return input.isOptionSet(mode);
+	}
+
+	@Override
+	public boolean isWriteModeEnabled(WriteMode mode) {
+		return write.isOptionSet(mode);
+	}
+
+	@Override
+	public boolean isHostModeEnabled(HostMode mode) {
+		return host.isOptionSet(mode);
+	}
+
 	@Override
 	public boolean isModuleAnalysisEnabled(ModuleAnalysis manType) {
 		return mapping.isOptionSet(manType);
@@ -105,6 +150,21 @@ public class CmdLineConfiguration implements Configuration {
 		return exeFile.getFolderSet();
 	}
 	
+	@Override
+	public File getBuildIdStore() {
+		return buildId.getStore();
+	}
+	
+	@Override
+	public int getOpenFileBudget() {
+		return openFiles.getCount();
+	}
+	
+	@Override
+	public File getCacheFolder() {
+		return cache.getFolder();
+	}
+	
 	@Override
 	public Collection<String> getUndefinedPathElements() {
 		return exeFile.getUndefinedElements();
@@ -120,6 +180,11 @@ public class CmdLineConfiguration implements Configuration {
 		return convert.getTargetFile(conversionType);
 	}
 
+	@Override
+	public int getConversionPort(Conversion conversionType) {
+		return convert.getTargetPort(conversionType);
+	}
+
 	@Override
 	public boolean shallWrite(MemLoad memLoad) {
 		return outConf.shallWrite(memLoad);
@@ -7,6 +7,7 @@
 package com.skype.research.bakebread.config.cmdline;
 
 import com.skype.research.bakebread.config.Conversion;
+import com.skype.util.cmdline.ConfigurationException;
 import com.skype.util.cmdline.OpenEnumOptions;
 import com.skype.util.cmdline.RecognitionException;
 
@@ -16,6 +17,7 @@ import java.io.File;
  * Converter target config.
  *  -CS <DIR>, --convert-split=<DIR>   Split the dump into individual streams.
  *  -CC <FILE>, --convert-core=<FILE>  Produce a core dump file.
+ *  -CG <PORT>, --convert-gdb-server=<PORT>  Serve the dumped process to gdb on a loopback port.
  */
 public class ConvertOptions extends OpenEnumOptions<Conversion> {
 
@@ -27,11 +29,30 @@ public class ConvertOptions extends OpenEnumOptions<Conversion> {
 		return new File(getValue(target));
 	}
 
+	public int getTargetPort(Conversion target) {
+		return Integer.parseInt(getValue(target));
+	}
+
+	@Override
+	protected void onValueSet(Conversion key, String value) throws ConfigurationException {
+		if (key == Conversion.GDB_SERVER) {
+			try {
+				int port = Integer.parseInt(value);
+				if (port < 0 || port > 0xffff) {
+					throw new ConfigurationException("port", key, value);
+				}
+			} catch (NumberFormatException nfe) {
+				throw new ConfigurationException(nfe.getMessage(), key, value);
+			}
+		}
+	}
+
 	@Override
 	public Conversion recognizeAbbr(char abbrForm) throws RecognitionException {
 		switch (abbrForm) {
 			case 'C': return Conversion.CORE_FILE;
 			case 'S': return Conversion.SPLIT_DIR;
+			case 'G': return Conversion.GDB_SERVER;
 			default:
 				return null;
 		}
@@ -42,6 +63,7 @@ public class ConvertOptions extends OpenEnumOptions<Conversion> {
 		switch (longForm) {
 			case "core": return Conversion.CORE_FILE;
 			case "split": return Conversion.SPLIT_DIR;
+			case "gdb-server": return Conversion.GDB_SERVER;
 			default:
 				return null;
 		}
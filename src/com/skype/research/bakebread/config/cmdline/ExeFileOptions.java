@@ -32,7 +32,7 @@ public class ExeFileOptions extends ValueOptions {
 		String[] pathElements = path.split(File.pathSeparator);
 		for (String pathElement : pathElements) {
 			File folder = new File(pathElement);
-			if (folder.isDirectory()) {
+			if (folder.isDirectory() || folder.isFile()) { // a file may be a file system image
 				folderSet.add(folder);
 			} else {
 				undefinedElements.add(pathElement);
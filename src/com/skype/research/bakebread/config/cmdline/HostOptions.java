@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config.cmdline;
+
+import com.skype.research.bakebread.config.HostMode;
+import com.skype.util.cmdline.EnumListOptions;
+import com.skype.util.cmdline.RecognitionException;
+
+/**
+ * Host file access command line options.
+ */
+public class HostOptions extends EnumListOptions<HostMode> {
+	public HostOptions() {
+		super('H', "host", HostMode.class);
+	}
+
+	@Override
+	public HostMode recognizeAbbr(char abbrForm) throws RecognitionException {
+		switch (abbrForm) {
+			case 'i': return HostMode.INDEXED;
+			case 'e': return HostMode.ELF_CACHE;
+			case 'a': return HostMode.APK;
+			default:
+				return null;
+		}
+	}
+
+	@Override
+	public HostMode recognizeLong(String longForm) throws RecognitionException {
+		switch (longForm) {
+			case "indexed": return HostMode.INDEXED;
+			case "elf-cache": return HostMode.ELF_CACHE;
+			case "apk": return HostMode.APK;
+			default:
+				return null;
+		}
+	}
+}
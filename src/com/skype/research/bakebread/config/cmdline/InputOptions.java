@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config.cmdline;
+
+import com.skype.research.bakebread.config.InputMode;
+import com.skype.util.cmdline.EnumListOptions;
+import com.skype.util.cmdline.RecognitionException;
+
+/**
+ * Minidump parsing command line options.
+ */
+public class InputOptions extends EnumListOptions<InputMode> {
+	public InputOptions() {
+		super('I', "input", InputMode.class);
+	}
+
+	@Override
+	public InputMode recognizeAbbr(char abbrForm) throws RecognitionException {
+		switch (abbrForm) {
+			case 'l': return InputMode.LAZY;
+			case 'p': return InputMode.PARALLEL;
+			case 'i': return InputMode.INDEXED;
+			default:
+				return null;
+		}
+	}
+
+	@Override
+	public InputMode recognizeLong(String longForm) throws RecognitionException {
+		switch (longForm) {
+			case "lazy": return InputMode.LAZY;
+			case "parallel": return InputMode.PARALLEL;
+			case "indexed": return InputMode.INDEXED;
+			default:
+				return null;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config.cmdline;
+
+import com.skype.util.cmdline.ValueOptions;
+
+/**
+ * Host file descriptor budget.
+ * 
+ *  -N <COUNT>, --open-files=<COUNT>   Keep at most so many host files open at once.
+ */
+public class OpenFilesOptions extends ValueOptions {
+	public OpenFilesOptions() {
+		super('N', "open-files");
+	}
+
+	private int count = -1;
+
+	@Override
+	protected boolean recognizeValue(String value) {
+		try {
+			count = Integer.parseInt(value);
+		} catch (NumberFormatException nfe) {
+			return false;
+		}
+		return count > 0;
+	}
+
+	public int getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config.cmdline;
+
+import com.skype.util.cmdline.ValueOptions;
+
+/**
+ * Stay resident and take conversion jobs from a loopback port.
+ * 
+ *  -R <PORT>, --resident=<PORT>   Serve conversion jobs, keeping host files warm.
+ */
+public class ResidentOptions extends ValueOptions {
+	public ResidentOptions() {
+		super('R', "resident");
+	}
+
+	private int port = -1;
+
+	@Override
+	protected boolean recognizeValue(String value) {
+		try {
+			port = Integer.parseInt(value);
+		} catch (NumberFormatException nfe) {
+			return false;
+		}
+		return port >= 0 && port <= 0xffff;
+	}
+
+	public int getPort() {
+		return port;
+	}
+}
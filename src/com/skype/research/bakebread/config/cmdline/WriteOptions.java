@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.config.cmdline;
+
+import com.skype.research.bakebread.config.WriteMode;
+import com.skype.util.cmdline.EnumListOptions;
+import com.skype.util.cmdline.RecognitionException;
+
+/**
+ * Core dump writing command line options.
+ */
+public class WriteOptions extends EnumListOptions<WriteMode> {
+	public WriteOptions() {
+		super('W', "write", WriteMode.class);
+	}
+
+	@Override
+	public WriteMode recognizeAbbr(char abbrForm) throws RecognitionException {
+		switch (abbrForm) {
+			case 'p': return WriteMode.PARALLEL;
+			case 'h': return WriteMode.HOLES;
+			case 'c': return WriteMode.COALESCE;
+			case 'z': return WriteMode.GZIP;
+			default:
+				return null;
+		}
+	}
+
+	@Override
+	public WriteMode recognizeLong(String longForm) throws RecognitionException {
+		switch (longForm) {
+			case "parallel": return WriteMode.PARALLEL;
+			case "holes": return WriteMode.HOLES;
+			case "coalesce": return WriteMode.COALESCE;
+			case "gzip": return WriteMode.GZIP;
+			default:
+				return null;
+		}
+	}
+}
@@ -7,6 +7,8 @@
 package com.skype.research.bakebread.coredump;
 
 import com.skype.research.bakebread.config.OutConfig;
+import com.skype.research.bakebread.config.WrConfig;
+import com.skype.research.bakebread.config.WriteMode;
 import com.skype.research.bakebread.coredump.notes.AppInfoNote;
 import com.skype.research.bakebread.coredump.notes.AuxVecNote;
 import com.skype.research.bakebread.coredump.notes.FileMapNote;
@@ -14,9 +16,9 @@ import com.skype.research.bakebread.coredump.notes.MathRegNote;
 import com.skype.research.bakebread.coredump.notes.ReadableNote;
 import com.skype.research.bakebread.coredump.notes.SigInfoNote;
 import com.skype.research.bakebread.coredump.notes.StatInfoNote;
+import com.skype.research.bakebread.io.BufferDataOutput;
 import com.skype.research.bakebread.io.Marshaled;
 import com.skype.research.bakebread.io.PackedString;
-import com.skype.research.bakebread.io.ReverseEndianDataOutput;
 import com.skype.research.bakebread.model.AppInfo;
 import com.skype.research.bakebread.model.DmpInfo;
 import com.skype.research.bakebread.model.SigInfo;
@@ -24,18 +26,30 @@ import com.skype.research.bakebread.model.ThrInfo;
 import com.skype.research.bakebread.model.analysis.MemHeap;
 import com.skype.research.bakebread.model.memory.MapInfo;
 import com.skype.research.bakebread.model.memory.MemLoad;
+import com.skype.research.bakebread.nio.FileMemory;
+import com.skype.research.bakebread.nio.FillMemory;
+import com.skype.research.bakebread.nio.PositionalChannel;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Represents a writable core dump.
@@ -78,6 +92,9 @@ public class ELF implements Marshaled {
 	
 	// own
 	public final ElfHeader elfHeader = new ElfHeader();
+	private WrConfig wrConfig;
+
+	private static final int PAGE_SIZE = 4096;
 
 	public ELF(Preset arch, Type type) {
 		elfHeader.setType(type);
@@ -88,6 +105,10 @@ public class ELF implements Marshaled {
 		relProg = new Program(elfHeader.getPtrSize(), Program.Type.PT_NULL);
 	}
 	
+	public void setWrConfig(WrConfig wrConfig) {
+		this.wrConfig = wrConfig;
+	}
+
 	public boolean hasNotes() {
 		return !notes.isEmpty();
 	}
@@ -181,17 +202,27 @@ public class ELF implements Marshaled {
 		sects.clear();
 		named.clear();
 		elfHeader.readExternal(dataInput, fileChannel);
-		readProgramHeaders(dataInput, fileChannel);
+		readProgramHeaders(dataInput, fileChannel, readProgEntryCount(dataInput, fileChannel));
 		readNotes(dataInput, fileChannel);
 		// readLoads(dataInput, fileChannel); // no-op
 		readSections(dataInput, fileChannel);
 	}
 
-	private void readProgramHeaders(DataInput dataInput, FileChannel fileChannel) throws IOException {
+	private int readProgEntryCount(DataInput dataInput, FileChannel fileChannel) throws IOException {
+		if (!elfHeader.isProgEntryCountExtended()) {
+			return elfHeader.getProgEntryCount();
+		}
+		fileChannel.position(elfHeader.getSectHeaderOff());
+		Section extension = new Section(elfHeader.getPtrSize());
+		extension.readExternal(dataInput, fileChannel);
+		return extension.getInfo();
+	}
+
+	private void readProgramHeaders(DataInput dataInput, FileChannel fileChannel, int progCount) throws IOException {
 		long offset = elfHeader.getProgHeaderOff();
 		if (offset != 0) {
 			fileChannel.position(offset);
-			for (int i = 0; i < elfHeader.getProgEntryCount(); ++i) {
+			for (int i = 0; i < progCount; ++i) {
 				Program program = new Program(elfHeader.getPtrSize(), 0);
 				program.readExternal(dataInput, fileChannel);
 				if (program.getType() == Program.Type.PT_NOTE.ordinal()) {
@@ -225,7 +256,7 @@ public class ELF implements Marshaled {
 				Section section = new Section(elfHeader.getPtrSize());
 				section.readExternal(dataInput, fileChannel);
 				sects.add(section);
-				if (i == elfHeader.getStringTableIndex()) {
+				if (i == elfHeader.getStringTableIndex() && i != 0) { // SHN_UNDEF: no names
 					strTable = section;
 				}
 			}
@@ -241,9 +272,117 @@ public class ELF implements Marshaled {
 		}
 	}
 	
+	/**
+	 * Writes the file header, the section headers and names and the RELRO program: enough to
+	 * place the file in memory, without its notes or contents. Read back by {@link #readDigest}.
+	 */
+	public void writeDigest(DataOutput dataOutput) throws IOException {
+		elfHeader.writeExternal(dataOutput, null);
+		relProg.writeExternal(dataOutput, null);
+		dataOutput.writeInt(sects.size());
+		for (Section section : sects) {
+			section.writeExternal(dataOutput, null);
+		}
+		dataOutput.writeBoolean(!named.isEmpty());
+		if (!named.isEmpty()) {
+			final byte[] data = nameTable.toString().getBytes(StandardCharsets.US_ASCII);
+			dataOutput.writeInt(data.length);
+			dataOutput.write(data);
+		}
+	}
+
+	/**
+	 * @param channelSource channels to the file the digest was taken from, for section contents
+	 */
+	public void readDigest(DataInput dataInput, FileMemory.ChannelSource channelSource) throws IOException {
+		notes.clear();
+		loads.clear();
+		sects.clear();
+		named.clear();
+		elfHeader.readExternal(dataInput, null);
+		relProg.readExternal(dataInput, null);
+		for (int i = dataInput.readInt(); i > 0; --i) {
+			Section section = new Section(elfHeader.getPtrSize());
+			section.readExternal(dataInput, null);
+			sects.add(section);
+		}
+		setSource(channelSource);
+		if (dataInput.readBoolean()) {
+			byte[] data = new byte[dataInput.readInt()];
+			dataInput.readFully(data);
+			nameTable = new PackedString(data);
+			for (Section section : sects) {
+				named.put(section.resolveName(nameTable), section);
+			}
+		}
+	}
+	
+	/**
+	 * Reads section and program contents through the given channels rather than the one the headers were read from.
+	 */
+	public void setSource(FileMemory.ChannelSource channelSource) {
+		notePad.setSource(channelSource);
+		relProg.setSource(channelSource);
+		for (Program load : loads.values()) {
+			load.setSource(channelSource);
+		}
+		for (Section section : sects) {
+			section.setSource(channelSource);
+		}
+	}
+
 	@Override
 	public void writeExternal(DataOutput dataOutput, FileChannel fileChannel) throws IOException {
-		dataOutput = ReverseEndianDataOutput.ensureByteOrder(dataOutput, elfHeader.getByteOrder());
+		writeFully(fileChannel, encodeMetadata());
+		if (isWriteModeEnabled(WriteMode.PARALLEL)) {
+			writeLoadsConcurrently(fileChannel);
+		} else {
+			writeLoads(dataOutput, fileChannel);
+		}
+		seekPastLoads(fileChannel);
+		// TODO writeSections();
+	}
+
+	/**
+	 * Writes the core strictly sequentially, e.g. to a pipe or a compressor.
+	 * Alignment gaps and holes, if any, are written out as zeros.
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		final ByteBuffer metadata = encodeMetadata();
+		long position = metadata.remaining();
+		writeFully(channel, metadata);
+		for (Program memData : loads.values()) {
+			if (memData.getFileSize() > 0) {
+				position = padTo(channel, position, memData.getFileOffset());
+				final long written = memData.getData().writeTo(channel);
+				if (written != memData.getFileSize()) {
+					// the next load would be padded into place, shifted against its program header
+					throw new IOException(String.format("Short write of %d out of %d bytes at offset %d",
+							written, memData.getFileSize(), memData.getFileOffset()));
+				}
+				position += written;
+			}
+		}
+	}
+
+	/**
+	 * @return the bytes {@link #writeExternal} would write, read on demand from the load sources
+	 */
+	public FileChannel openVirtualCore() throws IOException {
+		final ByteBuffer metadata = encodeMetadata();
+		final List<Program> written = new ArrayList<>();
+		for (Program memData : loads.values()) {
+			if (memData.getFileSize() > 0) {
+				written.add(memData);
+			}
+		}
+		return new VirtualCore(metadata, written);
+	}
+
+	private ByteBuffer encodeMetadata() throws IOException {
+		if (isWriteModeEnabled(WriteMode.COALESCE)) {
+			coalesceLoads();
+		}
 		int progCount = loads.size();
 		if (hasNotes()) {
 			long size = 0;
@@ -254,23 +393,91 @@ public class ELF implements Marshaled {
 			progCount ++;
 		}
 		elfHeader.setProgEntryCount(progCount);
-		elfHeader.writeExternal(dataOutput, fileChannel);
-		writeProgramHeaders(dataOutput, fileChannel);
-		writeNotes(dataOutput, fileChannel);
-		writeLoads(dataOutput, fileChannel);
-		// TODO writeSections();
+		// WISDOM metadata is thousands of primitives; encode them in memory, then issue a single write
+		final ByteBuffer metadata = ByteBuffer.allocateDirect((int) layOut()).order(elfHeader.getByteOrder());
+		final DataOutput metaOutput = new BufferDataOutput(metadata);
+		elfHeader.writeExternal(metaOutput, null);
+		writeProgramHeaders(metaOutput, null);
+		writeNotes(metaOutput, null);
+		if (elfHeader.isProgEntryCountExtended()) {
+			// PN_XNUM: the real count goes to sh_info of an otherwise empty section 0
+			Section extension = new Section(elfHeader.getPtrSize());
+			extension.setInfo(progCount);
+			extension.writeExternal(metaOutput, null);
+		}
+		if (metadata.hasRemaining()) {
+			throw new IllegalStateException("Metadata short of layout by " + metadata.remaining());
+		}
+		metadata.flip();
+		return metadata;
 	}
 
-	private void writeProgramHeaders(DataOutput dataOutput, FileChannel fileChannel) throws IOException {
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static long padTo(WritableByteChannel channel, long position, long offset) throws IOException {
+		if (position > offset) {
+			throw new IllegalStateException("Written past " + offset + " up to " + position);
+		}
+		while (position < offset) {
+			final ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(PAGE_SIZE, offset - position));
+			writeFully(channel, zeros);
+			position += zeros.capacity();
+		}
+		return position;
+	}
+
+	private void coalesceLoads() {
+		final List<Program> coalesced = new ArrayList<>();
+		final List<Program> run = new ArrayList<>();
+		for (Program program : loads.values()) {
+			if (!run.isEmpty() && !(run.get(run.size() - 1).canAbsorb(program) && !isHole(program))) {
+				coalesced.add(run.size() == 1 ? run.get(0) : Program.coalesce(run));
+				run.clear();
+			}
+			run.add(program);
+			if (isHole(program)) {
+				// keep it apart, or it would not be a hole any more
+				coalesced.add(program);
+				run.clear();
+			}
+		}
+		if (!run.isEmpty()) {
+			coalesced.add(run.size() == 1 ? run.get(0) : Program.coalesce(run));
+		}
+		loads.clear();
+		loads.addAll(coalesced);
+	}
+
+	/**
+	 * Assigns file offsets to notes and loads.
+	 * @return the metadata length, i.e. where the first load may start
+	 */
+	private long layOut() {
 		long offset = elfHeader.getProgHeaderOff();
 			offset += elfHeader.getProgHeaderSize() * loads.size();
 		if (hasNotes()) {
 			offset += elfHeader.getProgHeaderSize();
 			offset = notePad.setAndAddOffset(offset);
 		}
+		if (elfHeader.isProgEntryCountExtended()) {
+			elfHeader.placeSectHeaders(offset, 1);
+			offset += elfHeader.getSectHeaderSize();
+		}
+		final long metadataLength = offset;
 		for (Program program : loads.values()) {
+			if (isWriteModeEnabled(WriteMode.HOLES) && program.getFileSize() > 0) {
+				offset = program.alignOffset(offset, PAGE_SIZE);
+			}
 			offset = program.setAndAddOffset(offset);
 		}
+		return metadataLength;
+	}
+
+	private void writeProgramHeaders(DataOutput dataOutput, FileChannel fileChannel) throws IOException {
 		if (hasNotes()) {
 			notePad.writeExternal(dataOutput, fileChannel);
 		}
@@ -288,14 +495,75 @@ public class ELF implements Marshaled {
 	private void writeLoads(DataOutput dataOutput, FileChannel fileChannel) throws IOException {
 		// FIXME progress indicator
 		for (Program memData : loads.values()) {
-			assert memData.getFileOffset() == fileChannel.position();
 			final long length = memData.getFileSize();
-			if (length > 0) { // implicit shallWrite() - make memData responsibility? 
+			if (length > 0 && !isHole(memData)) { // implicit shallWrite() - make memData responsibility? 
+				// alignment gaps and holes are seeked over, never written
+				fileChannel.position(memData.getFileOffset());
 				memData.getData().writeTo(fileChannel);
 			}
 		}
 	}
 	
+	private void writeLoadsConcurrently(final FileChannel fileChannel) throws IOException {
+		// WISDOM file offsets are final once the program headers are out, so loads may land in any order
+		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			final List<Future<Long>> written = new ArrayList<>();
+			for (final Program memData : loads.values()) {
+				assert memData.getFileOffset() >= fileChannel.position();
+				if (memData.getFileSize() > 0 && !isHole(memData)) {
+					written.add(executor.submit(new Callable<Long>() {
+						@Override
+						public Long call() throws IOException {
+							return memData.getData().writeTo(new PositionalChannel(fileChannel, memData.getFileOffset()));
+						}
+					}));
+				}
+			}
+			for (Future<Long> future : written) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException(e.getMessage());
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void seekPastLoads(FileChannel fileChannel) throws IOException {
+		long end = fileChannel.position();
+		for (Program memData : loads.values()) {
+			end = Math.max(end, memData.getFileOffset() + memData.getFileSize());
+		}
+		if (fileChannel.size() < end) {
+			// a trailing hole still counts towards the file length
+			fileChannel.write(ByteBuffer.allocate(1), end - 1);
+		}
+		fileChannel.position(end);
+	}
+
+	private boolean isWriteModeEnabled(WriteMode mode) {
+		return wrConfig != null && wrConfig.isWriteModeEnabled(mode);
+	}
+
+	private boolean isHole(Program memData) {
+		// WISDOM only zeros can be left out: a hole reads as zeros, whatever the fill pattern was
+		return isWriteModeEnabled(WriteMode.HOLES) && memData.getData() instanceof FillMemory
+				&& ((FillMemory) memData.getData()).isBlank();
+	}
+
+	public int getLoadCount() {
+		return loads.size();
+	}
+
 	public Program getRelocatedReadOnly() {
 		return relProg;
 	}
@@ -39,6 +39,7 @@ public class ElfHeader implements Marshaled {
 	public static final int VERSION = 1;
 	public static final char ARM = 0x28;
 	public static final char EABI = 'a';
+	public static final char PN_XNUM = 0xffff; // program entry count is in section header 0
 
 	public static final ByteOrder ARM_ORDER = ByteOrder.LITTLE_ENDIAN;
 
@@ -176,9 +177,18 @@ public class ElfHeader implements Marshaled {
 
 	// true on add, false on clear
 	public void setProgEntryCount(int count) {
-		boolean enable = fitInChar(count);
-		progHeaderOff = enable ? getFileHeaderSize() : 0;
-		progEntryCount = (char) count;
+		if (count < 0) throw new IllegalArgumentException();
+		progHeaderOff = count != 0 ? getFileHeaderSize() : 0;
+		progEntryCount = count < PN_XNUM ? (char) count : PN_XNUM;
+	}
+
+	public boolean isProgEntryCountExtended() {
+		return progEntryCount == PN_XNUM;
+	}
+
+	void placeSectHeaders(long offset, int count) {
+		sectHeaderOff = offset;
+		sectEntryCount = (char) count;
 	}
 	
 	// true on add, false on clear. MOREINFO compute total size
@@ -14,6 +14,7 @@ import com.skype.research.bakebread.model.memory.MemArea;
 import com.skype.research.bakebread.model.memory.MemData;
 import com.skype.research.bakebread.model.memory.MemLoad;
 import com.skype.research.bakebread.model.memory.MemPerm;
+import com.skype.research.bakebread.nio.CompositeMemory;
 import com.skype.research.bakebread.nio.FileMemory;
 import com.skype.research.bakebread.nio.Memory;
 
@@ -21,7 +22,9 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Represents an ELF file program record.
@@ -179,6 +182,13 @@ public class Program implements Marshaled, MemData {
 	public MemData asFileData() {
 		return new ResolvedMemData(fileOffset, fileOffset + fileSize, data);
 	}
+
+	/**
+	 * @param channelSource channels to the file the header was read from
+	 */
+	public void setSource(FileMemory.ChannelSource channelSource) {
+		data = new FileMemory(channelSource, fileOffset, fileSize);
+	}
 	
 	@Override
 	public void readExternal(DataInput dataInput, FileChannel fileChannel) throws IOException {
@@ -254,6 +264,35 @@ public class Program implements Marshaled, MemData {
 		return type;
 	}
 
+	boolean canAbsorb(Program next) {
+		return type == next.type && flags == next.flags && getEndAddress() == next.getStartAddress()
+				&& (fileSize == 0 ? next.fileSize == 0 : fileSize == virtSize && next.fileSize == next.virtSize);
+	}
+
+	/**
+	 * @param run programs such that each can absorb the next one
+	 * @return a single program spanning all of them
+	 */
+	static Program coalesce(List<Program> run) {
+		final Program head = run.get(0);
+		final Program coalesced = new Program(head);
+		coalesced.alignment = head.alignment;
+		final List<MemData> parts = new ArrayList<>(run.size());
+		for (Program program : run) {
+			parts.add(new ResolvedMemData(program, program.data));
+		}
+		final Program tail = run.get(run.size() - 1);
+		coalesced.virtSize = tail.getEndAddress() - head.getStartAddress();
+		coalesced.fileSize = head.fileSize == 0 ? 0 : coalesced.virtSize;
+		coalesced.data = coalesced.fileSize == 0 ? head.data : new CompositeMemory(parts);
+		return coalesced;
+	}
+
+	long alignOffset(long offset, int pageSize) {
+		// congruent to the address, so that whole memory pages are whole file pages
+		return offset + ((virtAddr - offset) & (pageSize - 1));
+	}
+
 	long setAndAddOffset(long offset) {
 		this.fileOffset = offset;
 		return offset + fileSize;
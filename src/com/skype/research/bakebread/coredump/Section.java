@@ -225,6 +225,13 @@ public class Section implements Marshaled, MemData {
 		return new ResolvedMemData(fileOffset, fileOffset + size, data);
 	}
 
+	/**
+	 * @param channelSource channels to the file the header was read from
+	 */
+	public void setSource(FileMemory.ChannelSource channelSource) {
+		data = new FileMemory(channelSource, fileOffset, size);
+	}
+
 	@Override
 	public String toString() {
 		return literalName + ":" + PrettyPrint.hexRangeSlim(this)
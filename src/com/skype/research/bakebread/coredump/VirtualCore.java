@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.coredump;
+
+import com.skype.research.bakebread.model.analysis.ResolvedMemArea;
+import com.skype.research.bakebread.nio.BufferSink;
+import com.skype.research.bakebread.nio.ReadOnlyChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * The bytes of a core file as {@link ELF#writeExternal} would write them, assembled on demand.
+ * Metadata is encoded up front; load contents are read from their sources when asked for.
+ */
+class VirtualCore extends ReadOnlyChannel {
+	private static final int CHUNK = 1 << 16;
+
+	private final ByteBuffer metadata;
+	private final Program[] programs; // written loads, by file offset
+	private final long[] offsets;
+	private final long size;
+
+	VirtualCore(ByteBuffer metadata, List<Program> written) {
+		this.metadata = metadata;
+		programs = written.toArray(new Program[written.size()]);
+		offsets = new long[programs.length];
+		long end = metadata.limit();
+		for (int i = 0; i < programs.length; i++) {
+			offsets[i] = programs[i].getFileOffset();
+			end = Math.max(end, offsets[i] + programs[i].getFileSize());
+		}
+		size = end;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		if (position >= size) {
+			return -1;
+		}
+		if (position < metadata.limit()) {
+			final ByteBuffer src = metadata.duplicate();
+			src.position((int) position);
+			src.limit((int) Math.min(src.limit(), position + dst.remaining()));
+			final int count = src.remaining();
+			dst.put(src);
+			return count;
+		}
+		// the last program starting at or before the position
+		int index = -1, lo = 0, hi = offsets.length - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (offsets[mid] <= position) {
+				index = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		if (index >= 0 && position < offsets[index] + programs[index].getFileSize()) {
+			final Program program = programs[index];
+			final long count = Math.min(dst.remaining(), offsets[index] + program.getFileSize() - position);
+			final long address = program.getStartAddress() + position - offsets[index];
+			final ByteBuffer slice = dst.slice();
+			slice.limit((int) count);
+			program.getData().transform(program, new ResolvedMemArea(address, address + count))
+					.writeTo(new BufferSink(slice));
+			dst.position(dst.position() + slice.position());
+			return slice.position();
+		}
+		// alignment gap or hole
+		final long next = index + 1 < offsets.length ? offsets[index + 1] : size;
+		final int count = (int) Math.min(dst.remaining(), next - position);
+		for (int i = 0; i < count; i++) {
+			dst.put((byte) 0);
+		}
+		return count;
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		final ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(CHUNK, Math.max(0, count)));
+		long transferred = 0;
+		while (transferred < count) {
+			chunk.clear().limit((int) Math.min(chunk.capacity(), count - transferred));
+			if (read(chunk, position + transferred) <= 0) {
+				break;
+			}
+			chunk.flip();
+			while (chunk.hasRemaining()) {
+				transferred += target.write(chunk);
+			}
+		}
+		return transferred;
+	}
+}
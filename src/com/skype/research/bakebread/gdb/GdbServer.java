@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.gdb;
+
+import com.skype.research.bakebread.model.DmpInfo;
+import com.skype.research.bakebread.model.RegBank;
+import com.skype.research.bakebread.model.SigInfo;
+import com.skype.research.bakebread.model.ThrInfo;
+import com.skype.research.bakebread.model.analysis.AddressSpace;
+import com.skype.research.bakebread.model.memory.MemData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A read-only GDB remote serial protocol target serving the dumped process: threads, registers and memory.
+ * Lets "target remote" debug the reconstructed address space without materializing a core file.
+ * MOREINFO https://sourceware.org/gdb/onlinedocs/gdb/Remote-Protocol.html
+ */
+public class GdbServer implements Closeable {
+	private static final int PACKET_SIZE = 0x4000;
+	private static final int MAX_READ = (PACKET_SIZE - 16) / 2;
+	private static final int MAIN_REGS = 16;
+	private static final int CPSR_REGNUM = 25; // after the legacy FPA registers
+	private static final int SIGTRAP = 5;
+	private static final int HANG_UP_TIMEOUT = 1000; // ms
+	private static final String TARGET_XML = "<?xml version=\"1.0\"?>"
+			+ "<!DOCTYPE target SYSTEM \"gdb-target.dtd\">"
+			+ "<target><architecture>arm</architecture>"
+			+ "<feature name=\"org.gnu.gdb.arm.core\">"
+			+ "<reg name=\"r0\" bitsize=\"32\"/><reg name=\"r1\" bitsize=\"32\"/>"
+			+ "<reg name=\"r2\" bitsize=\"32\"/><reg name=\"r3\" bitsize=\"32\"/>"
+			+ "<reg name=\"r4\" bitsize=\"32\"/><reg name=\"r5\" bitsize=\"32\"/>"
+			+ "<reg name=\"r6\" bitsize=\"32\"/><reg name=\"r7\" bitsize=\"32\"/>"
+			+ "<reg name=\"r8\" bitsize=\"32\"/><reg name=\"r9\" bitsize=\"32\"/>"
+			+ "<reg name=\"r10\" bitsize=\"32\"/><reg name=\"r11\" bitsize=\"32\"/>"
+			+ "<reg name=\"r12\" bitsize=\"32\"/>"
+			+ "<reg name=\"sp\" bitsize=\"32\" type=\"data_ptr\"/>"
+			+ "<reg name=\"lr\" bitsize=\"32\"/>"
+			+ "<reg name=\"pc\" bitsize=\"32\" type=\"code_ptr\"/>"
+			+ "<reg name=\"cpsr\" bitsize=\"32\" regnum=\"" + CPSR_REGNUM + "\"/>"
+			+ "</feature></target>";
+	// Linux signal numbers to GDB's portable ones; 143 is GDB_SIGNAL_UNKNOWN
+	private static final int[] GDB_SIGNALS = {
+			0, 1, 2, 3, 4, 5, 6, 10, 8, 9, 30, 11, 31, 13, 14, 15,
+			143, 20, 19, 17, 18, 21, 22, 16, 24, 25, 26, 27, 28, 23, 32, 12,
+	};
+
+	private final DmpInfo<?, ?, ?> dmpInfo;
+	private final AddressSpace memory;
+	private final ServerSocket serverSocket;
+	private int thread;
+
+	/**
+	 * @param memory reconstructed address space, e.g. loads chosen for a core file
+	 * @param port   loopback port to listen on, 0 for any free one
+	 */
+	public GdbServer(DmpInfo<?, ?, ?> dmpInfo, Collection<? extends MemData> memory, int port) throws IOException {
+		this.dmpInfo = dmpInfo;
+		this.memory = new AddressSpace(memory);
+		serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Serves one debugger connection until it kills or detaches from the target, or hangs up.
+	 */
+	public void serve() throws IOException {
+		try (Socket socket = serverSocket.accept()) {
+			socket.setTcpNoDelay(true);
+			final InputStream in = new BufferedInputStream(socket.getInputStream());
+			final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			thread = dmpInfo.getCrashedThreadId();
+			String packet;
+			while ((packet = receive(in, out)) != null) {
+				final String reply = handle(packet);
+				if (reply == null) {
+					break;
+				}
+				send(out, reply);
+				if (packet.startsWith("D")) {
+					hangUp(socket, in);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lets the debugger ack the last reply before the connection closes, so that it sees an end of stream
+	 * rather than a reset.
+	 */
+	private static void hangUp(Socket socket, InputStream in) throws IOException {
+		socket.shutdownOutput();
+		socket.setSoTimeout(HANG_UP_TIMEOUT);
+		try {
+			while (in.read() >= 0) {
+				// drain the acks
+			}
+		} catch (SocketTimeoutException e) {
+			// the debugger keeps the connection open; close it anyway
+		}
+	}
+
+	private static String receive(InputStream in, OutputStream out) throws IOException {
+		while (true) {
+			int c;
+			// acks and interrupts need no answer: nothing ever runs
+			while ((c = in.read()) != '$') {
+				if (c < 0) {
+					return null;
+				}
+			}
+			final StringBuilder packet = new StringBuilder();
+			int sum = 0;
+			while ((c = in.read()) != '#') {
+				if (c < 0) {
+					return null;
+				}
+				packet.append((char) c);
+				sum += c;
+			}
+			final int hi = Character.digit(in.read(), 16);
+			final int lo = Character.digit(in.read(), 16);
+			final boolean intact = (hi << 4 | lo) == (sum & 0xff);
+			out.write(intact ? '+' : '-');
+			out.flush();
+			if (intact) {
+				return packet.toString();
+			}
+		}
+	}
+
+	private static void send(OutputStream out, String reply) throws IOException {
+		int sum = 0;
+		for (int i = 0; i < reply.length(); i++) {
+			sum += reply.charAt(i);
+		}
+		out.write('$');
+		out.write(reply.getBytes(StandardCharsets.ISO_8859_1));
+		out.write(String.format("#%02x", sum & 0xff).getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+	}
+
+	String handle(String packet) {
+		if (packet.isEmpty()) {
+			return "";
+		}
+		try {
+			return dispatch(packet);
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			return "E01"; // malformed, e.g. bad hex or a missing separator
+		}
+	}
+
+	private String dispatch(String packet) {
+		switch (packet.charAt(0)) {
+			case '?':
+			case 'c':
+			case 'C':
+			case 's':
+			case 'S':
+				return stopReply(); // a dump never resumes
+			case 'g':
+				return registers();
+			case 'p':
+				return register(Integer.parseInt(packet.substring(1), 16));
+			case 'm':
+				return readMemory(packet.substring(1));
+			case 'H':
+				return selectThread(packet.substring(2));
+			case 'T':
+				return isThread(parseThreadId(packet.substring(1))) ? "OK" : "E01";
+			case 'q':
+				return query(packet);
+			case 'G':
+			case 'P':
+			case 'M':
+			case 'X':
+				return "E01"; // read only
+			case 'D':
+				return "OK";
+			case 'k':
+				return null;
+			default:
+				return ""; // unsupported
+		}
+	}
+
+	private String query(String packet) {
+		if (packet.startsWith("qSupported")) {
+			return "PacketSize=" + Integer.toHexString(PACKET_SIZE) + ";qXfer:features:read+";
+		}
+		if (packet.startsWith("qXfer:features:read:target.xml:")) {
+			final String[] range = packet.substring(packet.lastIndexOf(':') + 1).split(",");
+			final int offset = Math.min(Integer.parseInt(range[0], 16), TARGET_XML.length());
+			final int end = Math.min(offset + Integer.parseInt(range[1], 16), TARGET_XML.length());
+			return (end == TARGET_XML.length() ? "l" : "m") + TARGET_XML.substring(offset, end);
+		}
+		switch (packet) {
+			case "qAttached":
+				return "1";
+			case "qC":
+				return "QC" + Integer.toHexString(thread);
+			case "qfThreadInfo":
+				final StringBuilder threads = new StringBuilder("m");
+				for (int threadId : sortedThreadIds()) {
+					if (threads.length() > 1) {
+						threads.append(',');
+					}
+					threads.append(Integer.toHexString(threadId));
+				}
+				return threads.toString();
+			case "qsThreadInfo":
+				return "l";
+			default:
+				return "";
+		}
+	}
+
+	private String stopReply() {
+		final int crashedThreadId = dmpInfo.getCrashedThreadId();
+		final ThrInfo<?, ?> crashed = dmpInfo.getThread(crashedThreadId);
+		int sigNo = SIGTRAP;
+		if (crashed != null && crashed.hasSigInfo()) {
+			final SigInfo sigInfo = crashed.getSigInfo();
+			sigNo = sigInfo.getSigNo() < GDB_SIGNALS.length ? GDB_SIGNALS[sigInfo.getSigNo()] : sigInfo.getSigNo();
+		}
+		return String.format("T%02xthread:%x;", sigNo, crashedThreadId);
+	}
+
+	private int[] sortedThreadIds() {
+		final int[] threadIds = dmpInfo.getThreadIds().clone();
+		Arrays.sort(threadIds);
+		return threadIds;
+	}
+
+	private static int parseThreadId(String threadId) {
+		return (int) Long.parseLong(threadId, 16);
+	}
+
+	private boolean isThread(int threadId) {
+		return Arrays.binarySearch(sortedThreadIds(), threadId) >= 0;
+	}
+
+	private String selectThread(String threadId) {
+		final int selected = parseThreadId(threadId);
+		if (selected == 0 || selected == -1) {
+			return "OK"; // any thread: keep the current one
+		}
+		if (!isThread(selected)) {
+			return "E01";
+		}
+		thread = selected;
+		return "OK";
+	}
+
+	private RegBank<?> mainRegs() {
+		final ThrInfo<?, ?> thrInfo = dmpInfo.getThread(thread);
+		return thrInfo != null && thrInfo.hasMainRegs() ? thrInfo.getMainRegs() : null;
+	}
+
+	private String registers() {
+		final RegBank<?> regBank = mainRegs();
+		if (regBank == null) {
+			return "E01";
+		}
+		final StringBuilder hex = new StringBuilder();
+		for (int i = 0; i < MAIN_REGS; i++) {
+			appendWord(hex, regBank.getRegisterValue(i));
+		}
+		return hex.toString();
+	}
+
+	private String register(int regNum) {
+		final RegBank<?> regBank = mainRegs();
+		if (regBank == null || regNum < 0 || regNum >= MAIN_REGS && regNum != CPSR_REGNUM) {
+			return "E01";
+		}
+		final StringBuilder hex = new StringBuilder();
+		appendWord(hex, regNum == CPSR_REGNUM
+				? regBank.getSpecialValue(RegBank.Special.ProcessorState)
+				: regBank.getRegisterValue(regNum));
+		return hex.toString();
+	}
+
+	private static void appendWord(StringBuilder hex, long value) {
+		// target byte order, little endian
+		for (int i = 0; i < 4; i++) {
+			appendByte(hex, (int) (value >>> (i * 8)));
+		}
+	}
+
+	private static void appendByte(StringBuilder hex, int value) {
+		hex.append(Character.forDigit(value >> 4 & 0xf, 16)).append(Character.forDigit(value & 0xf, 16));
+	}
+
+	private String readMemory(String range) {
+		final int comma = range.indexOf(',');
+		final long address = Long.parseLong(range.substring(0, comma), 16);
+		final int length = Math.min(Integer.parseInt(range.substring(comma + 1), 16), MAX_READ);
+		final ByteBuffer dst = ByteBuffer.allocate(length);
+		try {
+			memory.read(address, dst);
+		} catch (IOException e) {
+			// MOREINFO a partial read is still a valid reply
+		}
+		if (dst.position() == 0 && length > 0) {
+			return "E14"; // EFAULT
+		}
+		final StringBuilder hex = new StringBuilder(dst.position() * 2);
+		for (int i = 0; i < dst.position(); i++) {
+			appendByte(hex, dst.get(i));
+		}
+		return hex.toString();
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+}
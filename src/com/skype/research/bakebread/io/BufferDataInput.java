@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.io;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes primitives straight from a (typically mapped) ByteBuffer, honoring its byte order.
+ */
+public class BufferDataInput implements DataInput {
+	private final ByteBuffer buffer;
+
+	public BufferDataInput(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	public ByteOrder byteOrder() {
+		return buffer.order();
+	}
+
+	private ByteBuffer require(int byteCount) throws EOFException {
+		if (buffer.remaining() < byteCount) {
+			throw new EOFException(String.format("%d byte(s) requested at %x, %d available",
+					byteCount, buffer.position(), buffer.remaining()));
+		}
+		return buffer;
+	}
+
+	@Override
+	public void readFully(byte[] bytes) throws IOException {
+		readFully(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public void readFully(byte[] bytes, int offset, int length) throws IOException {
+		require(length).get(bytes, offset, length);
+	}
+
+	@Override
+	public int skipBytes(int i) {
+		final int skipped = Math.max(0, Math.min(i, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return require(1).get();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xff;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return require(2).getShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readChar();
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return require(2).getChar();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return require(4).getInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return require(8).getLong();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return require(4).getFloat();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return require(8).getDouble();
+	}
+
+	@Override
+	public String readLine() {
+		if (!buffer.hasRemaining()) {
+			return null;
+		}
+		StringBuilder line = new StringBuilder();
+		while (buffer.hasRemaining()) {
+			char c = (char) (buffer.get() & 0xff);
+			if (c == '\n') {
+				break;
+			}
+			if (c == '\r') {
+				if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+					buffer.get();
+				}
+				break;
+			}
+			line.append(c);
+		}
+		return line.toString();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		// the length prefix is big-endian by definition
+		return DataInputStream.readUTF(ensureByteOrder(ByteOrder.BIG_ENDIAN));
+	}
+
+	private DataInput ensureByteOrder(ByteOrder target) {
+		return buffer.order() == target ? this : new ReverseEndianDataInput(this);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes primitives straight into a pre-sized ByteBuffer, honoring its byte order.
+ */
+public class BufferDataOutput implements DataOutput {
+	private final ByteBuffer buffer;
+
+	public BufferDataOutput(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	public ByteOrder byteOrder() {
+		return buffer.order();
+	}
+
+	@Override
+	public void write(int b) {
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] bytes) {
+		buffer.put(bytes);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		buffer.put(bytes, offset, length);
+	}
+
+	@Override
+	public void writeBoolean(boolean value) {
+		buffer.put((byte) (value ? 1 : 0));
+	}
+
+	@Override
+	public void writeByte(int value) {
+		buffer.put((byte) value);
+	}
+
+	@Override
+	public void writeShort(int value) {
+		buffer.putShort((short) value);
+	}
+
+	@Override
+	public void writeChar(int c) {
+		buffer.putChar((char) c);
+	}
+
+	@Override
+	public void writeInt(int value) {
+		buffer.putInt(value);
+	}
+
+	@Override
+	public void writeLong(long value) {
+		buffer.putLong(value);
+	}
+
+	@Override
+	public void writeFloat(float value) {
+		buffer.putFloat(value);
+	}
+
+	@Override
+	public void writeDouble(double value) {
+		buffer.putDouble(value);
+	}
+
+	@Override
+	public void writeBytes(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			buffer.put((byte) s.charAt(i)); // single-octet ASCII
+		}
+	}
+
+	@Override
+	public void writeChars(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			buffer.putChar(s.charAt(i));
+		}
+	}
+
+	@Override
+	public void writeUTF(String value) throws IOException {
+		// the length prefix is big-endian by definition
+		final ByteArrayOutputStream modifiedUtf8 = new ByteArrayOutputStream(value.length() + 2);
+		new DataOutputStream(modifiedUtf8).writeUTF(value);
+		buffer.put(modifiedUtf8.toByteArray());
+	}
+}
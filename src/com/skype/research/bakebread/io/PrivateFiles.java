@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * State kept between runs, accessible to its owner only: the per-user folder, and files replaced as a whole.
+ */
+public final class PrivateFiles {
+	public static final String FOLDER_NAME = ".bakebread";
+	private static final Set<PosixFilePermission> OWNER_FOLDER = PosixFilePermissions.fromString("rwx------");
+	private static final Set<PosixFilePermission> OWNER_FILE = PosixFilePermissions.fromString("rw-------");
+
+	private PrivateFiles() {}
+
+	/**
+	 * @return ~/.bakebread, created if missing
+	 */
+	public static File getUserFolder() throws IOException {
+		return mkdirs(new File(System.getProperty("user.home"), FOLDER_NAME));
+	}
+
+	/**
+	 * @return the folder; if missing, created accessible to its owner only
+	 */
+	public static File mkdirs(File folder) throws IOException {
+		if (!folder.isDirectory()) {
+			if (!folder.mkdirs() && !folder.isDirectory()) {
+				throw new FileNotFoundException(folder.getAbsolutePath());
+			}
+			restrict(folder);
+		}
+		return folder;
+	}
+
+	/**
+	 * Takes the permissions of the group and the others away, as far as the file system allows.
+	 */
+	public static void restrict(File file) throws IOException {
+		final PosixFileAttributeView view = Files.getFileAttributeView(file.toPath(), PosixFileAttributeView.class);
+		if (view != null) {
+			view.setPermissions(file.isDirectory() ? OWNER_FOLDER : OWNER_FILE);
+		} else {
+			//noinspection ResultOfMethodCallIgnored
+			file.setReadable(false, false);
+			//noinspection ResultOfMethodCallIgnored
+			file.setReadable(true, true);
+			//noinspection ResultOfMethodCallIgnored
+			file.setWritable(false, false);
+			//noinspection ResultOfMethodCallIgnored
+			file.setWritable(true, true);
+		}
+	}
+
+	/**
+	 * @return an empty file next to the target, accessible to its owner only, to {@link #replace} the target with
+	 */
+	public static File createTemp(File target) throws IOException {
+		final File temp = File.createTempFile(target.getName(), ".tmp", target.getAbsoluteFile().getParentFile());
+		restrict(temp);
+		return temp;
+	}
+
+	/**
+	 * Replaces the target with the file, atomically if the file system can: readers see either one or the other.
+	 */
+	public static void replace(File temp, File target) throws IOException {
+		try {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
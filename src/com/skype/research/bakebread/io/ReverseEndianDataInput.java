@@ -99,6 +99,8 @@ public class ReverseEndianDataInput implements DataInput {
 	public static ByteOrder byteOrder(DataInput source) {
 		if (source instanceof ReverseEndianDataInput) {
 			return ByteOrder.LITTLE_ENDIAN;
+		} else if (source instanceof BufferDataInput) {
+			return ((BufferDataInput) source).byteOrder();
 		} else {
 			return ByteOrder.BIG_ENDIAN; // network order?
 		}
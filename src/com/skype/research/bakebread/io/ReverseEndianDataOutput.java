@@ -97,6 +97,8 @@ public class ReverseEndianDataOutput implements DataOutput {
 	public static ByteOrder byteOrder(DataOutput source) {
 		if (source instanceof ReverseEndianDataOutput) {
 			return ByteOrder.LITTLE_ENDIAN;
+		} else if (source instanceof BufferDataOutput) {
+			return ((BufferDataOutput) source).byteOrder();
 		} else {
 			return ByteOrder.BIG_ENDIAN; // network order
 		}
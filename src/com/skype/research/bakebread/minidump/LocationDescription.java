@@ -12,6 +12,7 @@ import com.skype.research.bakebread.io.Marshaled;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
@@ -83,14 +84,29 @@ public class LocationDescription implements Marshaled {
 		return channel.map(FileChannel.MapMode.READ_ONLY, rva.getVirtualAddress(), dataSize);
 	}
 	
+	public ByteBuffer readOriginalChannel(FileChannel channel) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(dataSize);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, rva.getVirtualAddress() + buffer.position()) < 0) {
+				throw new EOFException(toString());
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+	
 	public void copyOut(File source, File target) throws IOException {
 		try (FileChannel readChannel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
-			//noinspection ResultOfMethodCallIgnored
-			target.delete();
-			try (FileChannel dumpChannel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE,
-					StandardOpenOption.CREATE_NEW)) {
-				readChannel.transferTo(rva.getVirtualAddress(), dataSize, dumpChannel);
-			}
+			copyOut(readChannel, target);
+		}
+	}
+
+	public void copyOut(FileChannel readChannel, File target) throws IOException {
+		//noinspection ResultOfMethodCallIgnored
+		target.delete();
+		try (FileChannel dumpChannel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE_NEW)) {
+			readChannel.transferTo(rva.getVirtualAddress(), dataSize, dumpChannel);
 		}
 	}
 
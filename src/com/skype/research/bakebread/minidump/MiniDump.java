@@ -10,6 +10,7 @@ import com.skype.research.bakebread.minidump.streams.StreamType;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Representation of a MiniDump file.
@@ -22,6 +23,10 @@ public interface MiniDump {
 	Collection<ThreadStream> getThreadStreams();
 	@Deprecated
 	Collection<ModuleStream> getModuleStreams();
+	/**
+	 * @return GNU build-ids recorded in the module list, by module name
+	 */
+	Map<String, byte[]> getBuildIds();
 	Collection<MemoryStream> getOtherStreams();
 	Collection<MemoryStream> getStackStreams();
 	Collection<MemoryMapping> getMappings();
@@ -6,7 +6,10 @@
 
 package com.skype.research.bakebread.minidump;
 
+import com.skype.research.bakebread.config.InConfig;
+import com.skype.research.bakebread.config.InputMode;
 import com.skype.research.bakebread.coredump.AuxInfo;
+import com.skype.research.bakebread.io.BufferDataInput;
 import com.skype.research.bakebread.io.Lifecycle;
 import com.skype.research.bakebread.io.PackedString;
 import com.skype.research.bakebread.io.ReverseEndianDataInput;
@@ -19,10 +22,16 @@ import com.skype.research.bakebread.model.ThrInfo;
 import com.skype.research.bakebread.model.banks.ProcFlag;
 import com.skype.research.bakebread.model.memory.MapInfo;
 import com.skype.research.bakebread.model.memory.MemData;
+import com.skype.research.bakebread.nio.BufferChannel;
+import com.skype.research.bakebread.nio.gzip.SeekableGzip;
 
 import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.LineNumberReader;
 import java.io.RandomAccessFile;
 import java.io.Reader;
@@ -30,16 +39,24 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * An implementation of MiniDump backed by a File.
@@ -48,11 +65,15 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 	
 	// specification
 	private final File file;
+	private final InConfig inConfig;
 	
 	// access implementation (streams/channels)
-	private RandomAccessFile connection; // todo push down, extract seek
-	private DataInput dataInput; // reversed bytes data input (logical)
-	private FileChannel channel;
+	private RandomAccessFile connection; // plain dumps
+	private SeekableGzip gzip; // compressed dumps
+	private FileChannel content; // uncompressed contents, not positioned
+	private DataInput dataInput; // little endian data input (logical)
+	private FileChannel channel; // logical position of dataInput
+	private ByteBuffer mapped; // whole file, unless too large
 	
 	// payload; candidate for pull
 	private final Header header = new Header();
@@ -86,15 +107,51 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 	private final AuxData<IntBuffer> auxData = new AuxData<>();
 	private final Map<String, String> stats = new LinkedHashMap<>();
 
+	// streams materialized so far
+	private enum Part {
+		// decoded from independent file regions
+		SIGNAL, THREAD_LIST, MEMORY_LIST, MODULE_LIST, PROC_MAPS, PROC_STATUS, AUXV,
+		// derived from the above
+		THREADS, STACKS, MAPPING,
+	}
+	private static final Set<Part> DECODED = EnumSet.range(Part.SIGNAL, Part.AUXV);
+	private final Set<Part> materialized = EnumSet.noneOf(Part.class);
+	private boolean procMapsFound;
+
 	public MiniDumpFromFile(File file) {
+		this(file, null);
+	}
+
+	/**
+	 * @return whether the file starts like a minidump, or is gzipped and possibly one
+	 */
+	public static boolean isMiniDump(File file) throws IOException {
+		final byte[] signature = new byte[Header.SIGNATURE.length];
+		try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+			dis.readFully(signature);
+		} catch (EOFException e) {
+			return false;
+		}
+		return Arrays.equals(Header.SIGNATURE, signature) || SeekableGzip.isGzip(file);
+	}
+
+	public MiniDumpFromFile(File file, InConfig inConfig) {
 		this.file = file;
+		this.inConfig = inConfig;
 	}
 	
 	@Override
 	public void open() throws IOException {
-		connection = new RandomAccessFile(file, "r");
-		dataInput = new ReverseEndianDataInput(connection);
-		channel = connection.getChannel();
+		if (SeekableGzip.isGzip(file)) {
+			// inflate on demand, from the closest deflate block boundary
+			final boolean indexed = inConfig != null && inConfig.isInputModeEnabled(InputMode.INDEXED);
+			gzip = SeekableGzip.open(file, indexed ? SeekableGzip.sidecarOf(file) : null);
+			content = gzip.newChannel();
+			channel = gzip.newChannel();
+			dataInput = littleEndian(channel);
+		} else {
+			openPlain();
+		}
 		// data initialization
 		header.readExternal(dataInput, channel);
 		directory.clear();
@@ -106,28 +163,168 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 			deMap.put(streamDef.getStreamType(), streamDef);
 		}
 		standalone.addAll(deMap.keySet());
+		standalone.remove(Microsoft.ThreadListStream);
+		standalone.remove(Microsoft.MemoryListStream);
+		standalone.remove(Microsoft.ModuleListStream);
 		
-		// signal
-		readSignalStream();
-		readThreadStreams();
-		readMemoryStreams();
-		for (MemoryStream memoryStream : memoryStreams) {
-			memoryStream.setChannel(connection.getChannel());
+		if (inConfig != null && inConfig.isInputModeEnabled(InputMode.LAZY)) {
+			return;
 		}
-		analyzeThreads();
-		
-		readModuleStreams();
-		if (!readMemoryMapping()) {
-			for (ModuleStream moduleStream : moduleStreams) {
-				// FIXME compare memory and file offsets (ReadElf!) and split mappings
-				mappings.add(new MemoryMapping(moduleStream));
+		if (inConfig != null && inConfig.isInputModeEnabled(InputMode.PARALLEL)) {
+			decodeConcurrently();
+		}
+		for (Part part : Part.values()) {
+			materialize(part);
+		}
+	}
+
+	private void openPlain() throws IOException {
+		connection = new RandomAccessFile(file, "r");
+		content = connection.getChannel();
+		if (content.size() <= Integer.MAX_VALUE) {
+			// decode straight from the page cache, no syscall per primitive
+			mapped = content.map(FileChannel.MapMode.READ_ONLY, 0, content.size());
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			dataInput = new BufferDataInput(mapped);
+			channel = new BufferChannel(mapped, content);
+		} else {
+			// MOREINFO a single buffer cannot address it; page mapped windows if these become common
+			dataInput = new ReverseEndianDataInput(connection);
+			channel = content;
+		}
+	}
+
+	private static DataInput littleEndian(FileChannel channel) {
+		return new ReverseEndianDataInput(new DataInputStream(Channels.newInputStream(channel)));
+	}
+
+	private synchronized void demand(Part part) {
+		try {
+			materialize(part);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private synchronized void materialize(Part part) throws IOException {
+		if (materialized.contains(part)) {
+			return;
+		}
+		switch (part) {
+			case THREADS:
+				materialize(Part.SIGNAL);
+				materialize(Part.THREAD_LIST);
+				orderThreads();
+				break;
+			case STACKS:
+				materialize(Part.THREADS);
+				materialize(Part.MEMORY_LIST);
+				analyzeThreads();
+				break;
+			case MAPPING:
+				materialize(Part.PROC_MAPS);
+				if (!procMapsFound) {
+					materialize(Part.MODULE_LIST);
+					for (ModuleStream moduleStream : moduleStreams) {
+						// FIXME compare memory and file offsets (ReadElf!) and split mappings
+						mappings.add(new MemoryMapping(moduleStream));
+					}
+				}
+				break;
+			default:
+				decode(part, dataInput, channel);
+		}
+		materialized.add(part);
+	}
+
+	/**
+	 * Decodes a part that only depends on its own file region, using the provided (possibly private) position.
+	 */
+	private void decode(Part part, DataInput dataInput, FileChannel channel) throws IOException {
+		switch (part) {
+			case SIGNAL:
+				readSignalStream(dataInput, channel);
+				break;
+			case THREAD_LIST:
+				readThreadStreams(dataInput, channel);
+				break;
+			case MEMORY_LIST:
+				readMemoryStreams(dataInput, channel);
+				for (MemoryStream memoryStream : memoryStreams) {
+					memoryStream.setChannel(content);
+				}
+				break;
+			case MODULE_LIST:
+				readModuleStreams(dataInput, channel);
+				break;
+			case PROC_MAPS:
+				procMapsFound = readMemoryMapping(dataInput, channel);
+				break;
+			case PROC_STATUS:
+				readProcessStats(dataInput, channel);
+				break;
+			case AUXV:
+				analyzeAuxV();
+				break;
+			default:
+				throw new IllegalArgumentException(part.name());
+		}
+	}
+
+	/**
+	 * Decodes all independent parts at once, each one at its own position, then joins.
+	 */
+	private void decodeConcurrently() throws IOException {
+		final int threadCount = Math.min(DECODED.size(), Runtime.getRuntime().availableProcessors());
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			final List<Future<Void>> decoded = new ArrayList<>();
+			for (final Part part : DECODED) {
+				decoded.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						decodePositionally(part);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : decoded) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException(e.getMessage());
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		synchronized (this) {
+			materialized.addAll(DECODED);
+		}
+	}
+
+	private void decodePositionally(Part part) throws IOException {
+		if (mapped != null) {
+			// a duplicate shares the mapping but not the position
+			final ByteBuffer view = mapped.duplicate().order(mapped.order());
+			decode(part, new BufferDataInput(view), new BufferChannel(view, content));
+		} else if (gzip != null) {
+			final FileChannel view = gzip.newChannel();
+			decode(part, littleEndian(view), view);
+		} else {
+			try (RandomAccessFile ownConnection = new RandomAccessFile(file, "r")) {
+				decode(part, new ReverseEndianDataInput(ownConnection), ownConnection.getChannel());
 			}
 		}
-		readProcessStats();
-		analyzeAuxV();
 	}
 
-	private boolean readProcessStats() throws IOException {
+	private boolean readProcessStats(DataInput dataInput, FileChannel channel) throws IOException {
 		DirectoryEntry entry = getDirectoryEntry(Google.ProcStatus);
 		if (entry != null) {
 			final Reader reader = entry.getLocationDescription().asAsciiReader(dataInput, channel);
@@ -139,7 +336,7 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 					stats.put(split[0].trim().toLowerCase(), split[1].trim());
 				}
 			}
-			assertConsumed(entry);
+			assertConsumed(entry, channel);
 			return true;
 		} else {
 			return false;
@@ -150,20 +347,19 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 		DirectoryEntry auxVStream = getDirectoryEntry(Google.ProcAuxV);
 		if (auxVStream != null) {
 			LocationDescription ld = auxVStream.getLocationDescription();
-			auxV = ld.mapOriginalChannel(connection.getChannel())
-					.order(targetByteOrder()).asIntBuffer();
+			auxV = slice(ld).order(targetByteOrder()).asIntBuffer();
 			auxData.setVector(auxV);
 		}
 	}
 
-	private void readSignalStream() throws IOException {
+	private void readSignalStream(DataInput dataInput, FileChannel channel) throws IOException {
 		DirectoryEntry signalEntry = getDirectoryEntry(Microsoft.ExceptionStream);
 		if (signalEntry == null) {
 			throw new MalformedMiniDumpException("No signal stream in input");
 		}
-		navigateTo(signalEntry);
+		navigateTo(signalEntry, channel);
 		signalStream.readExternal(dataInput, channel);
-		assertConsumed(signalEntry);
+		assertConsumed(signalEntry, channel);
 	}
 	
 	private void analyzeThreads() {
@@ -172,6 +368,11 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 			final MemoryStream stack = threadStream.getStack();
 			stackStreams.add(stack);
 			otherStreams.remove(stack);
+		}
+	}
+
+	private void orderThreads() {
+		for (ThreadStream threadStream : threadStreams) {
 			threadsById.put(threadStream.getThreadId(), threadStream);
 		}
 		ThreadStream crashed = threadsById.get(signalStream.getThreadId());
@@ -180,66 +381,60 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 		threadStreams.add(0, crashed);
 	}
 	
-	private void navigateTo(DirectoryEntry entry) throws IOException {
-		navigateTo(entry.getLocationDescription());
-	}
-	
-	private void navigateTo(LocationDescription ld) throws IOException {
-		ld.getRVA().navigate(channel);
+	private static void navigateTo(DirectoryEntry entry, FileChannel channel) throws IOException {
+		entry.getLocationDescription().getRVA().navigate(channel);
 	}
 	
-	private void assertConsumed(DirectoryEntry entry) throws IOException {
+	private static void assertConsumed(DirectoryEntry entry, FileChannel channel) throws IOException {
 		entry.getLocationDescription().assertConsumed(channel);
 	}
 
-	private void readMemoryStreams() throws IOException {
-		standalone.remove(Microsoft.MemoryListStream);
+	private void readMemoryStreams(DataInput dataInput, FileChannel channel) throws IOException {
 		DirectoryEntry entry = deMap.get(Microsoft.MemoryListStream);
-		navigateTo(entry);
+		navigateTo(entry, channel);
 		int streamCount = dataInput.readInt();
 		for (int i = 0; i < streamCount; ++i) {
 			final MemoryStream stream = new MemoryStream();
 			stream.readExternal(dataInput, channel);
 			memoryStreams.add(stream);
 		}
-		assertConsumed(entry);
+		assertConsumed(entry, channel);
 	}
 
-	private void readThreadStreams() throws IOException {
-		standalone.remove(Microsoft.ThreadListStream);
+	private void readThreadStreams(DataInput dataInput, FileChannel channel) throws IOException {
 		DirectoryEntry entry = deMap.get(Microsoft.ThreadListStream);
-		navigateTo(entry);
+		navigateTo(entry, channel);
 		int streamCount = dataInput.readInt();
 		for (int i = 0; i < streamCount; ++i) {
 			final ThreadStream stream = new ThreadStream();
 			stream.readExternal(dataInput, channel);
 			threadStreams.add(stream);
 		}
-		assertConsumed(entry);
+		assertConsumed(entry, channel);
 	}
 
-	private void readModuleStreams() throws IOException {
-		standalone.remove(Microsoft.ModuleListStream);
+	private void readModuleStreams(DataInput dataInput, FileChannel channel) throws IOException {
 		DirectoryEntry entry = deMap.get(Microsoft.ModuleListStream);
-		navigateTo(entry);
+		navigateTo(entry, channel);
 		int streamCount = dataInput.readInt();
 		for (int i = 0; i < streamCount; ++i) {
 			final ModuleStream stream = new ModuleStream();
 			stream.readExternal(dataInput, channel);
 			moduleStreams.add(stream);
 		}
-		assertConsumed(entry);
+		assertConsumed(entry, channel);
 		for (ModuleStream moduleStream : moduleStreams) {
 			moduleStream.readName(dataInput, channel);
+			moduleStream.readCvRecord(dataInput, channel);
 		}
 	}
 	
-	private boolean readMemoryMapping() throws IOException {
+	private boolean readMemoryMapping(DataInput dataInput, FileChannel channel) throws IOException {
 		DirectoryEntry entry = getDirectoryEntry(Google.ProcMaps);
 		if (entry != null) {
 			final Reader reader = entry.getLocationDescription().asAsciiReader(dataInput, channel);
 			MemoryMapping.parse(reader, mappings);
-			assertConsumed(entry);
+			assertConsumed(entry, channel);
 			return true;
 		} else {
 			return false;
@@ -248,7 +443,35 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 	
 	@Override
 	public void close() throws IOException {
-		connection.close();
+		if (gzip != null) {
+			gzip.close();
+		} else {
+			connection.close();
+		}
+	}
+
+	private ByteBuffer slice(LocationDescription ld) throws IOException {
+		if (mapped != null) {
+			final ByteBuffer view = mapped.duplicate();
+			final int start = (int) ld.getRVA().getVirtualAddress();
+			view.limit(start + ld.getDataSize()).position(start);
+			return view.slice();
+		}
+		return gzip != null ? ld.readOriginalChannel(content) : ld.mapOriginalChannel(content);
+	}
+
+	/**
+	 * @return the uncompressed dump length
+	 */
+	public long length() throws IOException {
+		return content.size();
+	}
+
+	/**
+	 * Copies a stream or a memory range out as is, inflating it if need be.
+	 */
+	public void copyOut(LocationDescription ld, File target) throws IOException {
+		ld.copyOut(content, target);
 	}
 	
 	@Override
@@ -268,37 +491,57 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 	
 	@Override
 	public Collection<MemoryStream> getMemoryStreams() {
+		demand(Part.MEMORY_LIST);
 		return roMemoryStreams;
 	}
 	
 	@Override
 	public Collection<ThreadStream> getThreadStreams() {
+		demand(Part.THREADS);
 		return roThreadStreams;
 	}
 	
 	@Override
 	@Deprecated
 	public Collection<ModuleStream> getModuleStreams() {
+		demand(Part.MODULE_LIST);
 		return roModuleStreams;
 	}
+
+	@Override
+	public Map<String, byte[]> getBuildIds() {
+		demand(Part.MODULE_LIST);
+		final Map<String, byte[]> buildIds = new LinkedHashMap<>();
+		for (ModuleStream moduleStream : moduleStreams) {
+			final byte[] buildId = moduleStream.getBuildId();
+			if (buildId != null) {
+				buildIds.put(moduleStream.getModuleName(), buildId);
+			}
+		}
+		return buildIds;
+	}
 	
 	@Override
 	public Collection<MemoryStream> getOtherStreams() {
+		demand(Part.STACKS);
 		return roOtherStreams;
 	}
 	
 	@Override
 	public Collection<MemoryStream> getStackStreams() {
+		demand(Part.STACKS);
 		return roStackStreams;
 	}
 	
 	@Override
 	public Collection<MemoryMapping> getMappings() {
+		demand(Part.MAPPING);
 		return roMappings;
 	}
 	
 	@Override
 	public SignalStream getSignalStream() {
+		demand(Part.SIGNAL);
 		return signalStream;
 	}
 
@@ -319,6 +562,7 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 
 	@Override
 	public int[] getThreadIds() {
+		demand(Part.THREADS);
 		Set<Integer> keySet = threadsById.keySet();
 		int[] thrIds = new int[keySet.size()];
 		int i = 0; for (Integer tid : keySet) {
@@ -329,25 +573,30 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 
 	@Override
 	public ThrInfo<IntBuffer, LongBuffer> getThread(int threadId) {
+		demand(Part.THREADS);
 		return threadsById.get(threadId);
 	}
 
 	@Override
 	public int getCrashedThreadId() {
+		demand(Part.SIGNAL);
 		return signalStream.getThreadId();
 	}
 
 	@Override
 	public Collection<? extends MapInfo> getMemMap() {
+		demand(Part.MAPPING);
 		return roMappings;
 	}
 
 	@Override
 	public Collection<? extends MemData> getMemDmp() {
+		demand(Part.MEMORY_LIST);
 		return roMemoryStreams;
 	}
 	
 	public String getProcStat(String psKey) {
+		demand(Part.PROC_STATUS);
 		return stats.get(psKey.toLowerCase());
 	}
 
@@ -364,11 +613,13 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 	
 	@Override
 	public IntBuffer getAuxV() {
+		demand(Part.AUXV);
 		return auxV;
 	}
 
 	@Override
 	public AuxData<IntBuffer> getAuxData() {
+		demand(Part.AUXV);
 		return auxData;
 	}
 
@@ -377,7 +628,7 @@ public class MiniDumpFromFile implements MiniDump, Lifecycle, DmpInfo<IntBuffer,
 		try {
 			LocationDescription ld = getDirectoryEntry(Google.ProcCmdLine).getLocationDescription();
 			// ByteOrder desiredOrder = targetByteOrder();
-			ByteBuffer bb = ld.mapOriginalChannel(connection.getChannel());
+			ByteBuffer bb = slice(ld);
 			byte[] packed = new byte[bb.capacity()];
 			bb.get(packed);
 			return new PackedString(packed);
@@ -12,12 +12,19 @@ import com.skype.research.bakebread.io.Marshaled;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 /**
  * POJO for https://msdn.microsoft.com/en-us/library/windows/desktop/ms680392(v=vs.85).aspx
  */
 public class ModuleStream implements Marshaled {
+	public static final int CV_SIGNATURE_ELF = 0x4270454c; // "BpEL", followed by the entire build-id
+	public static final int CV_SIGNATURE_PDB70 = 0x53445352; // "RSDS", the build-id prefix in place of the GUID
+	public static final int CV_GUID_LENGTH = 16;
+	
 	private long imageBase;
 	private int  imageSize;
 	private int  checkSum;
@@ -29,6 +36,7 @@ public class ModuleStream implements Marshaled {
 	private final long[] reserved = new long[2];
 	
 	private String moduleName;
+	private byte[] cvRecord = new byte[0];
 	
 	@Override
 	public void readExternal(DataInput dataInput, FileChannel fileChannel) throws IOException {
@@ -71,6 +79,12 @@ public class ModuleStream implements Marshaled {
 		moduleName = new String(chars);
 	}
 	
+	public void readCvRecord(DataInput dataInput, FileChannel connection) throws IOException {
+		if (cvRecordLd.getDataSize() > 0) {
+			cvRecord = cvRecordLd.asByteArray(dataInput, connection);
+		}
+	}
+	
 	public long getImageBase() {
 		return imageBase;
 	}
@@ -107,6 +121,25 @@ public class ModuleStream implements Marshaled {
 		return moduleName;
 	}
 	
+	/**
+	 * @return the GNU build-id of the module as recorded by Breakpad, or its leading
+	 * {@link #CV_GUID_LENGTH} bytes for older dumps; null if there is no CodeView record
+	 */
+	public byte[] getBuildId() {
+		if (cvRecord.length < 4) {
+			return null;
+		}
+		final int signature = ByteBuffer.wrap(cvRecord).order(ByteOrder.LITTLE_ENDIAN).getInt();
+		switch (signature) {
+			case CV_SIGNATURE_ELF:
+				return cvRecord.length > 4 ? Arrays.copyOfRange(cvRecord, 4, cvRecord.length) : null;
+			case CV_SIGNATURE_PDB70:
+				return cvRecord.length >= 4 + CV_GUID_LENGTH ? Arrays.copyOfRange(cvRecord, 4, 4 + CV_GUID_LENGTH) : null;
+			default:
+				return null;
+		}
+	}
+	
 	@Override
 	public String toString() {
 		return moduleName + ": " + 
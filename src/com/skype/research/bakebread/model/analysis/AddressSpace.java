@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.model.memory.MemData;
+import com.skype.research.bakebread.nio.BufferSink;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Random access to the reconstructed memory of a process, e.g. to the loads {@link Splitter} chooses,
+ * without writing a core file. Contents are read a page at a time and the recently read pages are kept.
+ * Safe to read from concurrently: a page is read once, outside of the lock, while the others wait for it.
+ */
+public class AddressSpace {
+	public static final int PAGE_SIZE = 0x1000;
+	public static final int DEFAULT_PAGES = 1024; // 4M
+	private static final long PAGE_MASK = PAGE_SIZE - 1;
+
+	private static final class Page {
+		final byte[] bytes = new byte[PAGE_SIZE];
+		int valid = PAGE_SIZE; // bytes past a short read are not to be served
+	}
+
+	private static final class RecentPages extends LinkedHashMap<Long, FutureTask<Page>> {
+		private static final long serialVersionUID = 1L;
+		private final int cachedPages;
+
+		RecentPages(int cachedPages) {
+			super(16, 0.75f, true);
+			this.cachedPages = cachedPages;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, FutureTask<Page>> eldest) {
+			return size() > cachedPages;
+		}
+	}
+
+	private final IntervalIndex<MemData> memory;
+	// guarded by itself; least recently used first
+	private final Map<Long, FutureTask<Page>> pages;
+
+	public AddressSpace(Collection<? extends MemData> memory) {
+		this(memory, DEFAULT_PAGES);
+	}
+
+	/**
+	 * @param memory      non-overlapping memory areas
+	 * @param cachedPages how many pages to keep
+	 */
+	public AddressSpace(Collection<? extends MemData> memory, int cachedPages) {
+		this.memory = IntervalIndex.of(memory);
+		this.pages = new RecentPages(cachedPages);
+	}
+
+	/**
+	 * @return the memory area containing the address, or null if it is not mapped
+	 */
+	public MemData find(long address) {
+		return memory.find(address);
+	}
+
+	/**
+	 * Reads the memory at the address into the buffer, up to its limit or to the first unmapped
+	 * or unreadable byte, whichever comes first.
+	 * @return the number of bytes read, or -1 if the address is not mapped
+	 * @throws IOException if the contents could not be read; the bytes read until then are in the buffer
+	 */
+	public int read(long address, ByteBuffer dst) throws IOException {
+		int index = memory.indexOf(address);
+		if (index < 0) {
+			return -1;
+		}
+		final int start = dst.position();
+		while (dst.hasRemaining()) {
+			final long pageAddress = address & ~PAGE_MASK;
+			final Page page = getPage(pageAddress);
+			final int offset = (int) (address - pageAddress);
+			final int count = (int) Math.min(Math.min(dst.remaining(), page.valid - offset), memory.getEnd(index) - address);
+			if (count <= 0) {
+				break; // a short read
+			}
+			dst.put(page.bytes, offset, count);
+			address += count;
+			if (dst.hasRemaining() && (index = memory.indexOf(address)) < 0) {
+				break;
+			}
+		}
+		return dst.position() - start;
+	}
+
+	private Page getPage(final long pageAddress) throws IOException {
+		FutureTask<Page> read;
+		boolean reading = false;
+		synchronized (pages) {
+			read = pages.get(pageAddress);
+			if (read == null) {
+				read = new FutureTask<>(new Callable<Page>() {
+					@Override
+					public Page call() throws IOException {
+						return readPage(pageAddress);
+					}
+				});
+				pages.put(pageAddress, read);
+				reading = true;
+			}
+		}
+		if (reading) {
+			read.run(); // the others wait below
+		}
+		try {
+			return read.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(Long.toHexString(pageAddress));
+		} catch (ExecutionException e) {
+			synchronized (pages) {
+				if (pages.get(pageAddress) == read) {
+					pages.remove(pageAddress); // try again next time
+				}
+			}
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private Page readPage(long pageAddress) throws IOException {
+		final Page page = new Page();
+		final long pageEnd = pageAddress + PAGE_SIZE < 0 ? Long.MAX_VALUE : pageAddress + PAGE_SIZE;
+		for (int i = memory.from(pageAddress), to = memory.to(pageEnd); i < to; i++) {
+			final MemData memData = memory.get(i);
+			final long start = Math.max(pageAddress, memData.getStartAddress());
+			final long end = Math.min(pageEnd, memData.getEndAddress());
+			final ByteBuffer slice = ByteBuffer.wrap(page.bytes, (int) (start - pageAddress), (int) (end - start));
+			memData.getData().transform(memData, new ResolvedMemArea(start, end)).writeTo(new BufferSink(slice));
+			if (slice.hasRemaining()) {
+				page.valid = slice.position();
+				break;
+			}
+		}
+		return page;
+	}
+}
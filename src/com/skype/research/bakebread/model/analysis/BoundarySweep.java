@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.model.memory.MemLoad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Picks the most credible of the overlapping loads at every address, sweeping over their boundaries.
+ * A boundary is packed into a long: the rank of its address among all boundary addresses, then
+ * the ordering of starts, ends and credibilities at one address, then the order of registration,
+ * so that a single primitive sort puts them in sweep order. The open loads are a bit mask by credibility.
+ */
+final class BoundarySweep {
+	private static final int CREDIBILITIES = Credibility.values().length;
+	private static final int INDEX_BITS = 31;
+	private static final int ORDER_BITS = 3; // start or end, then credibility
+	private static final int MAX_LOADS = 1 << (63 - INDEX_BITS - ORDER_BITS - 1); // two ranked addresses each
+	private static final long SAME_BOUNDARY = ~0L << INDEX_BITS;
+
+	private MemLoad[] loads = new MemLoad[64];
+	private byte[] credibilities = new byte[64];
+	private int count;
+
+	void add(MemLoad load, Credibility credibility) {
+		if (count == MAX_LOADS) {
+			throw new IllegalStateException("Too many loads to sweep: " + count);
+		}
+		if (count == loads.length) {
+			loads = Arrays.copyOf(loads, count * 2);
+			credibilities = Arrays.copyOf(credibilities, count * 2);
+		}
+		loads[count] = load;
+		credibilities[count] = (byte) credibility.ordinal();
+		count++;
+	}
+
+	/**
+	 * Weaker starts first, stronger ends first; ends come before starts at the same address.
+	 */
+	private static long order(boolean start, int credibility) {
+		return start ? 1 << 2 | (CREDIBILITIES - 1 - credibility) : credibility;
+	}
+
+	private long[] sortedBoundaries() {
+		final long[] addresses = new long[count * 2];
+		for (int i = 0; i < count; i++) {
+			addresses[2 * i] = loads[i].getStartAddress();
+			addresses[2 * i + 1] = loads[i].getEndAddress();
+		}
+		Arrays.sort(addresses);
+		int distinct = 0;
+		for (int i = 0; i < addresses.length; i++) {
+			if (distinct == 0 || addresses[i] != addresses[distinct - 1]) {
+				addresses[distinct++] = addresses[i];
+			}
+		}
+		final long[] boundaries = new long[count * 2];
+		for (int i = 0; i < count; i++) {
+			final long startRank = Arrays.binarySearch(addresses, 0, distinct, loads[i].getStartAddress());
+			final long endRank = Arrays.binarySearch(addresses, 0, distinct, loads[i].getEndAddress());
+			boundaries[2 * i] = startRank << (ORDER_BITS + INDEX_BITS)
+					| order(true, credibilities[i]) << INDEX_BITS | i;
+			boundaries[2 * i + 1] = endRank << (ORDER_BITS + INDEX_BITS)
+					| order(false, credibilities[i]) << INDEX_BITS | i;
+		}
+		Arrays.sort(boundaries);
+		return boundaries;
+	}
+
+	/**
+	 * @param validator compares a more credible reliable load with the less credible reliable one
+	 *                  it starts over, or null not to compare
+	 * @return the loads trimmed to the ranges where they are the most credible, in address order
+	 */
+	List<MemLoad> sweep(Validator validator) {
+		final List<MemLoad> result = new ArrayList<>(); // encourage RandomAccess
+		final MemLoad[] open = new MemLoad[CREDIBILITIES];
+		final MutableMemArea window = new MutableMemArea();
+		window.setStartAddress(0);
+		int mask = 0;
+		long last = -1;
+		for (long boundary : sortedBoundaries()) {
+			if ((boundary & SAME_BOUNDARY) == last) {
+				continue; // same address, side and credibility as the previous one: the first one counts
+			}
+			last = boundary & SAME_BOUNDARY;
+			final MemLoad chunk = loads[(int) (boundary & ~SAME_BOUNDARY)];
+			final int r = credibilities[(int) (boundary & ~SAME_BOUNDARY)];
+			final boolean start = (boundary >>> INDEX_BITS & 1 << 2) != 0;
+			final int prev = Integer.numberOfTrailingZeros(mask); // the most credible, or 32 if none
+			if (start) {
+				if ((mask & 1 << r) != 0) {
+					throw new IllegalStateException("Mappings " + open[r] + " and " + chunk + "overlap");
+				}
+				mask |= 1 << r;
+				open[r] = chunk;
+			} else {
+				if ((mask & 1 << r) == 0) {
+					throw new IllegalStateException("Closing a mapping that isn't open: " + chunk);
+				}
+				mask &= ~(1 << r);
+				open[r] = null;
+			}
+			final int next = Integer.numberOfTrailingZeros(mask);
+			if (prev != next) {
+				if (start) {
+					// added and changed; we are the most credible now
+					if (prev < CREDIBILITIES) {
+						// add the previous most credible one
+						window.setEndAddress(chunk.getStartAddress());
+						// -see- http://www.airs.com/blog/archives/189
+						if (validator != null && chunk.isReliable() && open[prev].isReliable()) {
+							validator.compare(chunk, open[prev]);
+						}
+						addLoad(result, open[prev], window);
+					}
+				} else {
+					// removed and changed; we were the most credible
+					window.setEndAddress(chunk.getEndAddress());
+					addLoad(result, chunk, window);
+				}
+			}
+		}
+		if (mask != 0) {
+			throw new IllegalStateException("Not all mappings closed: " + Arrays.toString(open));
+		}
+		return result;
+	}
+
+	private static void addLoad(List<MemLoad> result, MemLoad memLoad, MutableMemArea window) {
+		memLoad = memLoad.trimTo(window);
+		if (!Areas.isEmpty(memLoad)) {
+			result.add(memLoad);
+		}
+		window.setStartAddress(memLoad.getEndAddress());
+	}
+}
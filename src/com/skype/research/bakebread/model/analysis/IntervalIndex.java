@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.model.memory.MemArea;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only counterpart of {@link MemHeap}: non-overlapping ranges in sorted primitive arrays,
+ * each with a payload. Lookups and range scans do not allocate; a range is scanned by index:
+ * <pre>
+ *   for (int i = index.from(start), to = index.to(end); i < to; i++) { ... index.get(i) ... }
+ * </pre>
+ * @param <M> payload, usually the range itself
+ */
+public final class IntervalIndex<M> {
+	private final long[] starts;
+	private final long[] ends;
+	private final Object[] payloads;
+	private final List<M> values = new AbstractList<M>() {
+		@Override
+		public M get(int index) {
+			return IntervalIndex.this.get(index);
+		}
+
+		@Override
+		public int size() {
+			return starts.length;
+		}
+	};
+
+	private IntervalIndex(long[] starts, long[] ends, Object[] payloads) {
+		this.starts = starts;
+		this.ends = ends;
+		this.payloads = payloads;
+	}
+
+	/**
+	 * @param areas non-overlapping ranges, in any order; empty ones are skipped
+	 * @throws IllegalStateException if any two ranges overlap
+	 */
+	public static <M extends MemArea> IntervalIndex<M> of(Collection<? extends M> areas) {
+		final Builder<M> builder = new Builder<>(areas.size());
+		for (M area : areas) {
+			builder.add(area);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Collects ranges with their payloads; ranges added in order are not sorted again.
+	 */
+	public static final class Builder<M> {
+		private long[] starts;
+		private long[] ends;
+		private Object[] payloads;
+		private int size;
+		private boolean sorted = true;
+
+		public Builder() {
+			this(16);
+		}
+
+		public Builder(int capacity) {
+			capacity = Math.max(capacity, 1);
+			starts = new long[capacity];
+			ends = new long[capacity];
+			payloads = new Object[capacity];
+		}
+
+		public Builder<M> add(MemArea area) {
+			@SuppressWarnings("unchecked")
+			final M payload = (M) area;
+			return add(area.getStartAddress(), area.getEndAddress(), payload);
+		}
+
+		public Builder<M> add(long startAddress, long endAddress, M payload) {
+			if (startAddress >= endAddress) {
+				return this; // nothing to find
+			}
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				payloads = Arrays.copyOf(payloads, size * 2);
+			}
+			if (size > 0 && startAddress < starts[size - 1]) {
+				sorted = false;
+			}
+			starts[size] = startAddress;
+			ends[size] = endAddress;
+			payloads[size] = payload;
+			size++;
+			return this;
+		}
+
+		/**
+		 * @throws IllegalStateException if any two ranges overlap
+		 */
+		public IntervalIndex<M> build() {
+			final long[] starts = Arrays.copyOf(this.starts, size);
+			final long[] ends = Arrays.copyOf(this.ends, size);
+			final Object[] payloads = Arrays.copyOf(this.payloads, size);
+			if (!sorted) {
+				sortByStart(starts, ends, payloads);
+			}
+			for (int i = 1; i < size; i++) {
+				if (starts[i] < ends[i - 1]) {
+					throw new IllegalStateException("Mapping " + payloads[i] + " overlaps with older mapping " + payloads[i - 1]);
+				}
+			}
+			return new IntervalIndex<>(starts, ends, payloads);
+		}
+
+		private static void sortByStart(long[] starts, long[] ends, Object[] payloads) {
+			// as in BoundarySweep, a start is ranked among all starts and packed with its index,
+			// so that a single primitive sort yields the permutation, equal starts in their order
+			final long[] keys = starts.clone();
+			Arrays.sort(keys);
+			final long[] order = new long[starts.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = (long) Arrays.binarySearch(keys, starts[i]) << Integer.SIZE | i;
+			}
+			Arrays.sort(order);
+			final long[] oldEnds = ends.clone();
+			final Object[] oldPayloads = payloads.clone();
+			for (int i = 0; i < order.length; i++) {
+				final int index = (int) order[i];
+				starts[i] = keys[i];
+				ends[i] = oldEnds[index];
+				payloads[i] = oldPayloads[index];
+			}
+		}
+	}
+
+	public int size() {
+		return starts.length;
+	}
+
+	public boolean isEmpty() {
+		return starts.length == 0;
+	}
+
+	public long getStart(int index) {
+		return starts[index];
+	}
+
+	public long getEnd(int index) {
+		return ends[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public M get(int index) {
+		return (M) payloads[index];
+	}
+
+	/**
+	 * @return the payloads in address order, as a read-only view
+	 */
+	public List<M> values() {
+		return values;
+	}
+
+	/**
+	 * @return the index of the range containing the address, or -1 if there is none
+	 */
+	public int indexOf(long address) {
+		int low = 0, high = starts.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (starts[mid] <= address) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		final int index = low - 1; // the last range starting at or below the address
+		return index >= 0 && address < ends[index] ? index : -1;
+	}
+
+	/**
+	 * @return the payload of the range containing the address, or null if there is none
+	 */
+	public M find(long address) {
+		final int index = indexOf(address);
+		return index < 0 ? null : get(index);
+	}
+
+	/**
+	 * @return the payload of the range containing the address
+	 * @throws NoSuchElementException if the address is not mapped
+	 */
+	public M map(long address) {
+		final int index = indexOf(address);
+		if (index < 0) {
+			throw new NoSuchElementException("Address not mapped: " + Areas.longToHex(address));
+		}
+		return get(index);
+	}
+
+	/**
+	 * @return the index of the first range ending above the address, or {@link #size()} if there is none
+	 */
+	public int from(long startAddress) {
+		int low = 0, high = ends.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (ends[mid] <= startAddress) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the index of the first range starting at or above the address, or {@link #size()} if there is none
+	 */
+	public int to(long endAddress) {
+		int low = 0, high = starts.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (starts[mid] < endAddress) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return whether any range overlaps [startAddress, endAddress)
+	 */
+	public boolean overlaps(long startAddress, long endAddress) {
+		return startAddress < endAddress && from(startAddress) < to(endAddress);
+	}
+
+	/**
+	 * @return whether the ranges cover [startAddress, endAddress) without a gap
+	 */
+	public boolean covers(long startAddress, long endAddress) {
+		final int from = from(startAddress);
+		final int to = to(endAddress);
+		if (from >= to || starts[from] > startAddress || ends[to - 1] < endAddress) {
+			return false;
+		}
+		for (int i = from + 1; i < to; i++) {
+			if (starts[i] != ends[i - 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -9,11 +9,14 @@ package com.skype.research.bakebread.model.analysis;
 import com.skype.research.bakebread.model.host.FileLoad;
 import com.skype.research.bakebread.model.memory.MapInfo;
 
+import java.io.File;
+
 /**
  * Alter, suppress or defer processing of a proposed {@link FileLoad} within the provided session context.
  */
 public interface ModuleAnalyzer {
 	void start(MemHeap<MapInfo> memMap);
+	void prepare(File file); // may be called concurrently, before analyze(); registers nothing
 	boolean analyze(FileLoad fileLoad, LoadRegistrar registrar);
 	void flush(LoadRegistrar registrar);
 }
@@ -16,16 +16,13 @@ import com.skype.research.bakebread.model.memory.MemArea;
 import com.skype.research.bakebread.model.memory.MemData;
 import com.skype.research.bakebread.model.memory.MemLoad;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.EnumMap;
 import java.util.InputMismatchException;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
 import java.util.SortedMap;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 /**
  * Static analysis methods. We'll figure out where we host them.
@@ -33,6 +30,7 @@ import java.util.TreeSet;
 public class Splitter implements LoadRegistrar {
 
 	private final MemHeap<MapInfo> mapping;
+	private final IntervalIndex<MapInfo> mappingIndex; // for lookups
 	private final MemHeap<MemLoad> streams;
 	private final ValConfig valConfig;
 	private final Validator validator;
@@ -54,6 +52,7 @@ public class Splitter implements LoadRegistrar {
 		this.valConfig = valConfig;
 		this.validator = validator;
 		this.mapping = mapping;
+		this.mappingIndex = IntervalIndex.of(mapping.values());
 		this.streams = recordStreams(streams, valConfig);
 	}
 
@@ -75,7 +74,11 @@ public class Splitter implements LoadRegistrar {
 				}
 			}
 			for (MemData chunk : chain.values()) {
-				for (MapInfo mapInfo : this.mapping.subMap(chunk, false, false, true).values()) {
+				if (!mappingIndex.covers(chunk.getStartAddress(), chunk.getEndAddress())) {
+					throw new NoSuchElementException("Range is not mapped contiguously: " + chunk);
+				}
+				for (int i = mappingIndex.from(chunk.getStartAddress()), to = mappingIndex.to(chunk.getEndAddress()); i < to; i++) {
+					final MapInfo mapInfo = mappingIndex.get(i);
 					streams.add(new DumpLoad(mapInfo, chunk.trimTo(mapInfo)));
 				}
 			}
@@ -91,7 +94,8 @@ public class Splitter implements LoadRegistrar {
 	private void validateDumpData(MemHeap<MemData> chain, MemData stream) {
 		// exclude writable and shared areas as they may have changed
 		Collection<? extends MemArea> roRanges = Collections.<MemArea>singleton(stream);
-		for (MapInfo mapInfo : this.mapping.subMap(stream, true, true, false).values()) {
+		for (int i = mappingIndex.from(stream.getStartAddress()), to = mappingIndex.to(stream.getEndAddress()); i < to; i++) {
+			final MapInfo mapInfo = mappingIndex.get(i);
 			if (mapInfo.isWritable() || mapInfo.isShared()) {
 				roRanges = Areas.subtract(roRanges, mapInfo);
 			}
@@ -109,8 +113,7 @@ public class Splitter implements LoadRegistrar {
 	}
 
 	// preparatory
-	private final SortedSet<Boundary> bounds = new TreeSet<>();
-	private final List<MemLoad> result = new ArrayList<>(); // encourage RandomAccess
+	private final BoundarySweep bounds = new BoundarySweep();
 	
 	public static List<MemLoad> split(Collection<? extends MapInfo> mapping,
 	                                  Collection<? extends MemData> streams,
@@ -131,101 +134,20 @@ public class Splitter implements LoadRegistrar {
 			register(memLoad, Credibility.Dump);
 		}
 		fileMapper.start(mapping);
+		fileMapper.resolve(mapping.values(), fileFinder);
+		// registered in address order, whatever the order of resolution
 		for (MapInfo mapInfo : mapping.values()) {
 			fileMapper.mapRegion(mapInfo, fileFinder, this);
 		}
 		fileMapper.flush(this);
-		collectBounds();
-		return result;
+		return bounds.sweep(valConfig.isValidationTypeEnabled(BitExactValidation.HOST_AND_DUMP) ? validator : null);
 	}
 
 	@Override
 	public void register(MemLoad stream, Credibility credibility) {
 		Areas.validate(stream);
-		bounds.add(new Boundary(credibility, true, stream));
-		bounds.add(new Boundary(credibility, false, stream));
-	}
-
-	private void collectBounds() {
-		MutableMemArea window = new MutableMemArea();
-		window.setStartAddress(0);
-		final EnumMap<Credibility, Boundary> src = new EnumMap<>(Credibility.class);
-		for (Boundary boundary : bounds) {
-			Boundary prev = Credibility.mostCredibleOrNull(src);
-			if (boundary.start) {
-				Boundary existing = src.put(boundary.r, boundary);
-				if (existing != null) {
-					throw new IllegalStateException("Mappings "
-							+ existing + " and " + boundary.chunk + "overlap");
-				}
-			} else {
-				if (src.remove(boundary.r) == null) {
-					throw new IllegalStateException("Closing a mapping that isn't open: "
-							+ boundary.chunk);
-				}
-			}
-			Boundary next = Credibility.mostCredibleOrNull(src);
-			if (prev != next) {
-				if (boundary.start) {
-					// added and changed; we are the most credible now
-					if (prev != null) {
-						/// add the previous most credible one
-						window.setEndAddress(boundary.chunk.getStartAddress());
-						// -see- http://www.airs.com/blog/archives/189
-						if (valConfig.isValidationTypeEnabled(BitExactValidation.HOST_AND_DUMP)
-								&& boundary.chunk.isReliable() && prev.chunk.isReliable()) {
-							validator.compare(boundary.chunk, prev.chunk);
-						}
-						addLoad(prev.chunk, window);
-					}
-				} else {
-					// removed and changed; we were the most credible
-					window.setEndAddress(boundary.chunk.getEndAddress());
-					addLoad(boundary.chunk, window);
-				}
-			}
-		}
-		if (!src.isEmpty()) {
-			throw new IllegalStateException("Not all mappings closed: " + src);
-		}
-	}
-
-	private void addLoad(MemLoad memLoad, MutableMemArea window) {
-		memLoad = memLoad.trimTo(window);
-		if (!Areas.isEmpty(memLoad)) {
-			result.add(memLoad);
-		}
-		window.setStartAddress(memLoad.getEndAddress());
+		bounds.add(stream, credibility);
 	}
 
 	// MOREINFO is it possible to feed an arbitrary (e.g. minidump) file mapping to GDB/BFD? worth a try
-	
-	static class Boundary implements Comparable<Boundary> {
-		final Credibility r;
-		final boolean start;
-		final MemLoad chunk; // may be null; fill will be used
-
-		Boundary(Credibility credibility, boolean start, MemLoad chunk) {
-			this.r = credibility;
-			this.start = start;
-			this.chunk = chunk;
-		}
-		
-		public long getAddress() {
-			return start ? chunk.getStartAddress() : chunk.getEndAddress();
-		}
-
-		@Override
-		public int compareTo(Boundary other) {
-			int cmp = Long.compare(getAddress(), other.getAddress());
-			if (cmp != 0) return cmp;
-			cmp = Boolean.compare(start, other.start);
-			if (cmp != 0) return cmp;
-			if (start) {
-				return other.r.compareTo(r); // weaker starts first
-			} else {
-				return r.compareTo(other.r); // weaker lasts longer
-			}
-		}
-	}
 }
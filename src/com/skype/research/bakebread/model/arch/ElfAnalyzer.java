@@ -17,23 +17,30 @@ import com.skype.research.bakebread.io.ReverseEndianDataInput;
 import com.skype.research.bakebread.model.analysis.Areas;
 import com.skype.research.bakebread.model.analysis.Credibility;
 import com.skype.research.bakebread.model.analysis.FillLoad;
+import com.skype.research.bakebread.model.analysis.IntervalIndex;
 import com.skype.research.bakebread.model.analysis.LoadRegistrar;
 import com.skype.research.bakebread.model.analysis.MemHeap;
 import com.skype.research.bakebread.model.analysis.ModuleAnalyzer;
 import com.skype.research.bakebread.model.analysis.ResolvedMemArea;
+import com.skype.research.bakebread.model.host.ContainedFile;
+import com.skype.research.bakebread.model.host.ElfCache;
 import com.skype.research.bakebread.model.host.FileLoad;
+import com.skype.research.bakebread.model.host.HostCache;
 import com.skype.research.bakebread.model.memory.MapInfo;
 import com.skype.research.bakebread.model.memory.MemArea;
 import com.skype.research.bakebread.model.memory.MemLoad;
+import com.skype.research.bakebread.nio.FileMemory;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.Collections;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Elf analyzer
@@ -44,20 +51,29 @@ public class ElfAnalyzer implements ModuleAnalyzer {
 		private final ELF elf;
 		private final int elfSectionCount;
 		private final MapInfo[] placement;
-		private final MemHeap<Section> fileOrder = new MemHeap<>();
-		private final MemHeap<Section> virtOrder = new MemHeap<>();
+		private final IntervalIndex<Section> fileOrder;
+		private final IntervalIndex<Section> virtOrder;
 
 		public ElfDwelling(ELF elf) {
 			this.elf = elf;
 			elfSectionCount = elf.getSectionCount();
 			placement = new MapInfo[elfSectionCount];
+			final MemHeap<Section> virtHeap = new MemHeap<>();
+			final MemHeap<Section> fileHeap = new MemHeap<>();
 			for (int i = 0; i < elfSectionCount; ++i) {
 				Section section = elf.getSection(i);
 				if (!Areas.isEmpty(section)) { // skip meta
-					virtOrder.add(section);
-					fileOrder.put(section.asFileData(), section);
+					virtHeap.add(section);
+					fileHeap.put(section.asFileData(), section); // put, not add: NOBITS sections overlap in the file
 				}
 			}
+			// looked up for every mapping and relocation, never changed
+			virtOrder = IntervalIndex.of(virtHeap.values());
+			final IntervalIndex.Builder<Section> fileOrder = new IntervalIndex.Builder<>(fileHeap.size());
+			for (Map.Entry<MemArea, Section> entry : fileHeap.entrySet()) {
+				fileOrder.add(entry.getKey().getStartAddress(), entry.getKey().getEndAddress(), entry.getValue());
+			}
+			this.fileOrder = fileOrder.build();
 		}
 
 		public ELF getElf() {
@@ -68,8 +84,8 @@ public class ElfAnalyzer implements ModuleAnalyzer {
 			placement[index] = mapInfo;
 		}
 
-		public Section sectionForAddr(MemHeap<Section> memHeap, long relAddress) {
-			return memHeap.get(memHeap.pointMapping(relAddress));
+		public Section sectionForAddr(IntervalIndex<Section> index, long relAddress) {
+			return index.find(relAddress);
 		}
 
 		public Section sectionForFile(long fileOffset) {
@@ -92,86 +108,136 @@ public class ElfAnalyzer implements ModuleAnalyzer {
 	private final Map<File, ElfDwelling> elves = new LinkedHashMap<>();
 	private final Map<File, ElfDwelling> fossilElves = Collections.unmodifiableMap(elves);
 	
-	private final Set<File> humans = new LinkedHashSet<>();
-
 	private final Map<File, Long> textOffsets = new LinkedHashMap<>();
 
 	private final FogConfig fogConfig;
-	private final AutoClose autoClose;
+	private final HostCache hostCache; // parsed files, not their placement
 
 	public ElfAnalyzer(FogConfig fogConfig, AutoClose autoClose) {
+		this(fogConfig, new HostCache(null, autoClose));
+	}
+
+	public ElfAnalyzer(FogConfig fogConfig, HostCache hostCache) {
 		this.fogConfig = fogConfig;
-		this.autoClose = autoClose;
+		this.hostCache = hostCache;
 	}
 	
 	@Override
 	public void start(MemHeap<MapInfo> memMap) {
 		elves.clear();
-		humans.clear();
+	}
+
+	@Override
+	public void prepare(File file) {
+		try {
+			getElf(file);
+		} catch (IOException ignored) {
+			// analyze() will try again and report
+		}
+	}
+
+	private ELF getElf(final File file) throws IOException {
+		return hostCache.getElf(file, new Callable<ELF>() {
+			@Override
+			public ELF call() throws IOException {
+				return loadElf(file);
+			}
+		});
 	}
 
 	@Override
 	public boolean analyze(FileLoad fileLoad, LoadRegistrar registrar) {
-		File file = fileLoad.getFile();
-		if (!humans.contains(file)) {
-			MapInfo mapInfo = fileLoad.getMapInfo();
-			ElfDwelling placement = elves.get(file);
-			if (placement == null) {
-				try {
-					RandomAccessFile raf = autoClose.register(new RandomAccessFile(file, "r"));
-					ELF elf = new ELF(ELF.Preset.ANDROID_32, ELF.Type.DYN);
-					elf.readExternal(new ReverseEndianDataInput(raf), raf.getChannel());
-					placement = new ElfDwelling(elf);
-					elves.put(file, placement);
-					// call registrar#register()
-					// return true;
-				} catch (MalformedElfMagicException ignored) {
-					humans.add(file); // not an elf
-					return false;
-				} catch (IOException ignored) {
-					// System.err -> redirect!
-					ignored.printStackTrace();
-					return false;
-				}
+		final File file = fileLoad.getFile();
+		MapInfo mapInfo = fileLoad.getMapInfo();
+		ElfDwelling placement = elves.get(file);
+		if (placement == null) {
+			try {
+				placement = new ElfDwelling(getElf(file));
+				elves.put(file, placement);
+				// call registrar#register()
+				// return true;
+			} catch (MalformedElfMagicException ignored) {
+				return false; // not an elf
+			} catch (IOException ignored) {
+				// System.err -> redirect!
+				ignored.printStackTrace();
+				return false;
 			}
-			ELF elf = placement.getElf();
-			long infoFileOffset = mapInfo.getFileOffset();
-			long infoFileCutoff = infoFileOffset + Areas.length(mapInfo);
-			for (int index = 0; index < elf.getSectionCount(); ++index) {
-				Section section = elf.getSection(index);
-				MemArea fileData = section.asFileData();
-				// TODO extract as AreaGuide.isIn() condition
-				if (fileData.getStartAddress() >= infoFileOffset
-						&& fileData.getEndAddress() <= infoFileCutoff) {
-					placement.setMapInfo(index, mapInfo);
+		}
+		ELF elf = placement.getElf();
+		long infoFileOffset = mapInfo.getFileOffset();
+		long infoFileCutoff = infoFileOffset + Areas.length(mapInfo);
+		for (int index = 0; index < elf.getSectionCount(); ++index) {
+			Section section = elf.getSection(index);
+			MemArea fileData = section.asFileData();
+			// TODO extract as AreaGuide.isIn() condition
+			if (fileData.getStartAddress() >= infoFileOffset
+					&& fileData.getEndAddress() <= infoFileCutoff) {
+				placement.setMapInfo(index, mapInfo);
+			}
+		}
+		if (mapInfo.isRunnable()) {
+			Section text = elf.getSection(".text");
+			if (text != null) {
+				// TODO make this logic reusable
+				textOffsets.put(file, mapInfo.getStartAddress() - mapInfo.getFileOffset() + text.getFileOffset());
+			}
+		} else if (!mapInfo.isWritable() && fogConfig.hasMemoryFillingPattern(MemoryFog.MAPPED_WRITABLE)) {
+			MemArea relRo = placement.getRelocatedReadOnly().asFileData();
+			if (!Areas.isEmpty(relRo)) {
+				MemArea relArea = new ResolvedMemArea(
+						placement.relocateFromFile(relRo.getStartAddress()),
+						placement.relocateFromFile(relRo.getEndAddress())
+				);
+				MemLoad relLoad = new FillLoad(relArea, 
+						fogConfig.getMemoryFillingPattern(MemoryFog.MAPPED_WRITABLE), 
+						mapInfo);
+				for (MemLoad memLoad : Areas.sliceInto(fileLoad,
+						Areas.subtract(Collections.<MemArea>singleton(fileLoad), relLoad))) {
+					registrar.register(memLoad, Credibility.Host);
 				}
+				registrar.register(relLoad, Credibility.Desc);
+				return true;
 			}
-			if (mapInfo.isRunnable()) {
-				Section text = elf.getSection(".text");
-				if (text != null) {
-					// TODO make this logic reusable
-					textOffsets.put(file, mapInfo.getStartAddress() - mapInfo.getFileOffset() + text.getFileOffset());
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the headers from the persistent cache if any, or else from the file.
+	 * Section contents are read through the channel shared by the host cache.
+	 */
+	private ELF loadElf(File file) throws IOException {
+		final ElfCache elfCache = hostCache.getElfCache();
+		final FileMemory.ChannelSource channelSource = hostCache.getChannelSource(file);
+		ELF elf = elfCache == null ? null : elfCache.get(file, channelSource);
+		if (elf != null) {
+			return elf;
+		}
+		elf = new ELF(ELF.Preset.ANDROID_32, ELF.Type.DYN);
+		try {
+			if (file instanceof ContainedFile) {
+				// a lease of its own, positioned independently of any other reader of the container
+				try (FileChannel slice = channelSource.open()) {
+					elf.readExternal(new ReverseEndianDataInput(
+							new DataInputStream(Channels.newInputStream(slice))), slice);
 				}
-			} else if (!mapInfo.isWritable() && fogConfig.hasMemoryFillingPattern(MemoryFog.MAPPED_WRITABLE)) {
-				MemArea relRo = placement.getRelocatedReadOnly().asFileData();
-				if (!Areas.isEmpty(relRo)) {
-					MemArea relArea = new ResolvedMemArea(
-							placement.relocateFromFile(relRo.getStartAddress()),
-							placement.relocateFromFile(relRo.getEndAddress())
-					);
-					MemLoad relLoad = new FillLoad(relArea, 
-							fogConfig.getMemoryFillingPattern(MemoryFog.MAPPED_WRITABLE), 
-							mapInfo);
-					for (MemLoad memLoad : Areas.sliceInto(fileLoad,
-							Areas.subtract(Collections.<MemArea>singleton(fileLoad), relLoad))) {
-						registrar.register(memLoad, Credibility.Host);
-					}
-					registrar.register(relLoad, Credibility.Desc);
-					return true;
+			} else {
+				try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+					elf.readExternal(new ReverseEndianDataInput(raf), raf.getChannel());
 				}
 			}
+		} catch (MalformedElfMagicException notElf) {
+			if (elfCache != null) {
+				elfCache.putNotElf(file);
+			}
+			throw notElf;
 		}
-		return false;
+		elf.setSource(channelSource);
+		if (elfCache != null) {
+			elfCache.put(file, elf);
+		}
+		return elf;
 	}
 
 	@Override
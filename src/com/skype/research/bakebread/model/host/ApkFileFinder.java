@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.model.memory.MapInfo;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * File finder for a single dump: a mapped APK is served as the library stored uncompressed
+ * at the mapped offset, read in place. Other mappings, and APK ranges not covered by a stored
+ * entry (resources, deflated entries), come as they are.
+ */
+public class ApkFileFinder implements FileFinder {
+	public static final String APK_SUFFIX = ".apk";
+
+	private final FileFinder byName;
+	private final HostCache hostCache;
+
+	/**
+	 * @param byName    lookup by mapped file name
+	 * @param hostCache owner of the archive directories, read once
+	 */
+	public ApkFileFinder(FileFinder byName, HostCache hostCache) {
+		this.byName = byName;
+		this.hostCache = hostCache;
+	}
+
+	@Override
+	public File find(MapInfo info) {
+		final File file = byName.find(info);
+		if (file == null || file instanceof ContainedFile || !file.getName().endsWith(APK_SUFFIX)) {
+			return file;
+		}
+		final ZipDirectory zipDirectory;
+		try {
+			zipDirectory = hostCache.getZipDirectory(file);
+		} catch (IOException e) {
+			return file; // still a file
+		}
+		if (zipDirectory == null) {
+			return file;
+		}
+		final ZipEntryFile entry = zipDirectory.find(info.getFileOffset());
+		return entry == null ? file : entry;
+	}
+}
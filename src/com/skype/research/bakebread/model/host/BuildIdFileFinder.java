@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.model.memory.MapInfo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File finder for a single dump: modules with a known build-id come from the store,
+ * the others (and those the store has not seen) by name.
+ */
+public class BuildIdFileFinder implements FileFinder {
+	private final BuildIdStore store;
+	private final FileFinder byName;
+	private final Map<String, byte[]> buildIds = new HashMap<>();
+
+	public BuildIdFileFinder(BuildIdStore store, FileFinder byName) {
+		this.store = store;
+		this.byName = byName;
+	}
+
+	public void putBuildId(String moduleName, byte[] buildId) {
+		buildIds.put(moduleName, buildId);
+	}
+
+	@Override
+	public File find(MapInfo info) {
+		final byte[] buildId = buildIds.get(info.getName());
+		if (buildId != null) {
+			final File file = store.find(buildId);
+			if (file != null) {
+				return file;
+			}
+		}
+		return byName.find(info);
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.coredump.ELF;
+import com.skype.research.bakebread.coredump.MalformedElfMagicException;
+import com.skype.research.bakebread.coredump.Section;
+import com.skype.research.bakebread.io.ReverseEndianDataInput;
+import com.skype.research.bakebread.minidump.ModuleStream;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Host ELF files by GNU build-id, in the debuginfod layout: STORE/BUILD-ID/executable.
+ * Entries link to the host files, so a lookup is a single path resolution.
+ * Build-ids longer than a CodeView GUID are also entered by their prefix, for dumps which only keep that much.
+ */
+public class BuildIdStore {
+	public static final String EXECUTABLE = "executable";
+	static final String INGESTED = "ingested";
+	static final String BUILD_ID_SECTION = ".note.gnu.build-id";
+	static final String GNU = "GNU";
+	static final int NT_GNU_BUILD_ID = 3;
+
+	private final File store;
+
+	public BuildIdStore(File store) throws IOException {
+		this.store = store;
+		if (!store.isDirectory() && !store.mkdirs()) {
+			throw new FileNotFoundException(store.getPath());
+		}
+	}
+
+	/**
+	 * Enters every ELF file under the roots which have not been ingested before.
+	 * MOREINFO a root is only walked once; remove its line from STORE/ingested to walk it again
+	 * @return the number of files entered
+	 */
+	public synchronized int ingest(Collection<? extends File> roots) throws IOException {
+		final File ingested = new File(store, INGESTED);
+		final Set<String> known = new HashSet<>();
+		if (ingested.isFile()) {
+			known.addAll(Files.readAllLines(ingested.toPath(), StandardCharsets.UTF_8));
+		}
+		int count = 0;
+		for (File root : roots) {
+			final String canonical = root.getCanonicalPath();
+			if (known.add(canonical)) {
+				count += ingest(root);
+				Files.write(ingested.toPath(), Arrays.asList(canonical), StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+		}
+		return count;
+	}
+
+	private int ingest(File root) throws IOException {
+		final int[] count = new int[1];
+		Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				try {
+					if (attrs.isRegularFile() && add(file.toFile())) {
+						count[0]++;
+					}
+				} catch (IOException truncated) {
+					// an ELF magic and not much else
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exc) {
+				return FileVisitResult.CONTINUE; // unreadable, not ours to report
+			}
+		});
+		return count[0];
+	}
+
+	/**
+	 * @return true if the file is an ELF file with a build-id, now in the store
+	 */
+	public boolean add(File file) throws IOException {
+		final byte[] buildId = readBuildId(file);
+		if (buildId == null) {
+			return false;
+		}
+		final Path target = file.toPath().toRealPath();
+		enter(buildId, target);
+		if (buildId.length > ModuleStream.CV_GUID_LENGTH) {
+			enter(Arrays.copyOf(buildId, ModuleStream.CV_GUID_LENGTH), target);
+		}
+		return true;
+	}
+
+	private void enter(byte[] buildId, Path target) throws IOException {
+		final File folder = new File(store, toHex(buildId));
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new FileNotFoundException(folder.getPath());
+		}
+		final Path link = new File(folder, EXECUTABLE).toPath();
+		Files.deleteIfExists(link); // the same build, a later copy
+		try {
+			Files.createSymbolicLink(link, target);
+		} catch (UnsupportedOperationException | IOException e) {
+			// WISDOM no links without privileges on some hosts; a copy is as good
+			Files.copy(target, link);
+		}
+	}
+
+	/**
+	 * @param buildId an entire build-id, or the CodeView prefix of one
+	 * @return the host file with that build-id, or null
+	 */
+	public File find(byte[] buildId) {
+		final File executable = new File(new File(store, toHex(buildId)), EXECUTABLE);
+		try {
+			return executable.toPath().toRealPath().toFile();
+		} catch (IOException e) {
+			return null; // not in the store, or a dangling link
+		}
+	}
+
+	/**
+	 * @return the build-id from the GNU note section, or null if the file has none or is not an ELF file
+	 */
+	public static byte[] readBuildId(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			final ELF elf = new ELF(ELF.Preset.ANDROID_32, ELF.Type.DYN);
+			try {
+				elf.readExternal(new ReverseEndianDataInput(raf), raf.getChannel());
+			} catch (MalformedElfMagicException e) {
+				return null;
+			}
+			final Section section = elf.getSection(BUILD_ID_SECTION);
+			if (section == null || section.getSize() < 12 || section.getSize() > 0x1000) {
+				return null;
+			}
+			final byte[] data = new byte[(int) section.getSize()];
+			raf.seek(section.getFileOffset());
+			raf.readFully(data);
+			return parseBuildIdNote(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+		}
+	}
+
+	static byte[] parseBuildIdNote(ByteBuffer note) {
+		while (note.remaining() >= 12) {
+			final int nameSize = note.getInt();
+			final int descSize = note.getInt();
+			final int type = note.getInt();
+			final int namePadded = (nameSize + 3) & ~3;
+			final int descPadded = (descSize + 3) & ~3;
+			if (nameSize < 0 || descSize < 0 || namePadded + descPadded > note.remaining()) {
+				return null;
+			}
+			final byte[] name = new byte[nameSize];
+			note.get(name);
+			note.position(note.position() - nameSize + namePadded);
+			if (type == NT_GNU_BUILD_ID && new String(name, StandardCharsets.US_ASCII).equals(GNU + '\0')) {
+				final byte[] desc = new byte[descSize];
+				note.get(desc);
+				return descSize > 0 ? desc : null;
+			}
+			note.position(note.position() + descPadded);
+		}
+		return null;
+	}
+
+	public static String toHex(byte[] bytes) {
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	@Override
+	public String toString() {
+		return store.getPath();
+	}
+}
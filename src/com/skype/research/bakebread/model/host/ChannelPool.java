@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.nio.ChannelLease;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Read channels to host files, one per file however many loads and conversions read it.
+ * Beyond the budget, the least recently used idle channels are closed, to be reopened on demand.
+ * Channels being read are never closed, so the budget is exceeded while that many files are in use.
+ */
+public class ChannelPool implements Closeable {
+	public static final int DEFAULT_BUDGET = 256; // well under the customary ulimit -n of 1024
+
+	private static final class Pooled {
+		final FileChannel channel;
+		int leases;
+
+		Pooled(FileChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	private final int budget;
+	private final ConcurrentMap<File, File> canonical = new ConcurrentHashMap<>();
+	// guarded by itself; least recently used first
+	private final Map<File, Pooled> open = new LinkedHashMap<>(16, 0.75f, true);
+	private int openedCount;
+
+	/**
+	 * @param budget how many channels may stay open at once
+	 */
+	public ChannelPool(int budget) {
+		if (budget < 1) {
+			throw new IllegalArgumentException(Integer.toString(budget));
+		}
+		this.budget = budget;
+	}
+
+	/**
+	 * @return a lease on the channel to the file, opened if need be; close it when done
+	 */
+	public FileChannel acquire(File file) throws IOException {
+		final File key = canonicalize(file);
+		Pooled pooled = lease(key, null);
+		if (pooled == null) {
+			// opened outside of the lock: a slow file system holds up the readers of this file only
+			pooled = lease(key, new FileInputStream(key).getChannel());
+		}
+		final Pooled leased = pooled;
+		return new ChannelLease(leased.channel, new Closeable() {
+			@Override
+			public void close() {
+				release(leased);
+			}
+		});
+	}
+
+	/**
+	 * Leases the pooled channel to the file, unless it has been closed, e.g. by an interrupted reader.
+	 * @param opened a channel just opened to the file, pooled unless another one has been meanwhile
+	 * @return the pooled channel, or null if there is none and none has been opened
+	 */
+	private Pooled lease(File key, FileChannel opened) {
+		synchronized (open) {
+			Pooled existing = open.get(key);
+			if (existing != null && !existing.channel.isOpen()) {
+				open.remove(key); // its leases fail on their own; later ones get a new channel
+				existing = null;
+			}
+			if (existing == null) {
+				if (opened == null) {
+					return null;
+				}
+				existing = new Pooled(opened);
+				open.put(key, existing);
+				openedCount++;
+			} else if (opened != null) {
+				closeQuietly(opened);
+			}
+			existing.leases++;
+			trim();
+			return existing;
+		}
+	}
+
+	private File canonicalize(File file) throws IOException {
+		File key = canonical.get(file);
+		if (key == null) {
+			key = file.getCanonicalFile();
+			canonical.putIfAbsent(file, key);
+		}
+		return key;
+	}
+
+	private void release(Pooled pooled) {
+		synchronized (open) {
+			pooled.leases--;
+			trim();
+		}
+	}
+
+	// called with the lock held
+	private void trim() {
+		final Iterator<Pooled> iterator = open.values().iterator();
+		while (open.size() > budget && iterator.hasNext()) {
+			final Pooled pooled = iterator.next();
+			if (pooled.leases == 0) {
+				iterator.remove();
+				closeQuietly(pooled.channel);
+			}
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+			// read only, nothing is lost
+		}
+	}
+
+	/**
+	 * Closes the channels not leased now, so that replaced files are read anew.
+	 */
+	public void closeIdle() {
+		synchronized (open) {
+			final Iterator<Pooled> iterator = open.values().iterator();
+			while (iterator.hasNext()) {
+				final Pooled pooled = iterator.next();
+				if (pooled.leases == 0) {
+					iterator.remove();
+					closeQuietly(pooled.channel);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return how many channels are open now
+	 */
+	public int getOpenCount() {
+		synchronized (open) {
+			return open.size();
+		}
+	}
+
+	/**
+	 * @return how many times a channel has been opened, reopening included
+	 */
+	public int getOpenedCount() {
+		synchronized (open) {
+			return openedCount;
+		}
+	}
+
+	/**
+	 * Closes every channel, leased or not.
+	 */
+	@Override
+	public void close() {
+		synchronized (open) {
+			for (Pooled pooled : open.values()) {
+				closeQuietly(pooled.channel);
+			}
+			open.clear();
+		}
+	}
+}
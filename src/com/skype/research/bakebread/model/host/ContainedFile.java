@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file read in place out of a container file, such as an archive or a file system image.
+ * It changes whenever its container does.
+ */
+public interface ContainedFile {
+	File getContainer();
+
+	/**
+	 * @param containerChannel a channel to the container
+	 * @return a channel to the contained file, with a position of its own
+	 */
+	FileChannel slice(FileChannel containerChannel);
+}
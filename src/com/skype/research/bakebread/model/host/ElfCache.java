@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.coredump.ELF;
+import com.skype.research.bakebread.coredump.MalformedElfMagicException;
+import com.skype.research.bakebread.io.BufferDataInput;
+import com.skype.research.bakebread.io.PrivateFiles;
+import com.skype.research.bakebread.nio.FileMemory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Parsed host ELF headers which outlive a run: digests (see {@link ELF#writeDigest}) by path, size
+ * and modification time, kept in a file mapped on start-up. Files found not to be ELF are kept too.
+ * New digests are written back on flush or close, or once {@link #MAX_ADDED} have been added;
+ * the file is replaced, never updated in place. A cache which cannot be read or written is merely
+ * a slower run: failures are warned of, not thrown.
+ * MOREINFO entries of files gone from the host are kept, a firmware release leaves only a few behind
+ */
+public class ElfCache implements Closeable {
+	public static final String FILE_NAME = "elves.cache";
+	public static final int MAX_ADDED = 1024; // new digests held in memory until written back
+	private static final int MAGIC = 0x4242454c; // "BBEL"
+	private static final int VERSION = 1;
+	private static final int NOT_ELF = -1; // digest length of a file known not to be ELF
+
+	private static final class Entry {
+		final long length;
+		final long lastModified;
+		final int offset; // digest offset in the mapping, or in the bytes of a new entry
+		final int size;
+		final byte[] bytes; // null for mapped entries
+
+		Entry(long length, long lastModified, int offset, int size, byte[] bytes) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.offset = offset;
+			this.size = size;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * The entries of the cache file, with the mapping their digests are in.
+	 */
+	private static final class Stored {
+		final ByteBuffer mapped;
+		final Map<String, Entry> entries = new HashMap<>();
+
+		Stored(ByteBuffer mapped) {
+			this.mapped = mapped;
+		}
+	}
+
+	private final File cacheFile;
+	private final PrintStream warnings;
+	private volatile Stored stored = new Stored(null);
+	private final ConcurrentMap<String, Entry> added = new ConcurrentHashMap<>();
+
+	private ElfCache(File cacheFile, PrintStream warnings) {
+		this.cacheFile = cacheFile;
+		this.warnings = warnings;
+	}
+
+	public static ElfCache open(File cacheFile) {
+		return open(cacheFile, System.err);
+	}
+
+	/**
+	 * @param warnings where to tell that the cache could not be read or written
+	 * @return the cache kept in the given file, empty if there is no such file, or it is foreign or unreadable
+	 */
+	public static ElfCache open(File cacheFile, PrintStream warnings) {
+		final ElfCache elfCache = new ElfCache(cacheFile, warnings);
+		try {
+			elfCache.stored = read(cacheFile);
+		} catch (IOException e) {
+			elfCache.warn("read", e);
+		}
+		return elfCache;
+	}
+
+	private static Stored read(File cacheFile) throws IOException {
+		if (!cacheFile.isFile()) {
+			return new Stored(null);
+		}
+		final MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		final Stored stored = new Stored(mapped);
+		final BufferDataInput dataInput = new BufferDataInput(mapped.duplicate());
+		try {
+			if (dataInput.readInt() == MAGIC && dataInput.readInt() == VERSION) {
+				for (int i = dataInput.readInt(); i > 0; i--) {
+					final String path = dataInput.readUTF();
+					final long length = dataInput.readLong();
+					final long lastModified = dataInput.readLong();
+					final int size = dataInput.readInt();
+					final int offset = dataInput.getBuffer().position();
+					dataInput.skipBytes(Math.max(size, 0));
+					stored.entries.put(path, new Entry(length, lastModified, offset, size, null));
+				}
+			}
+		} catch (IOException truncated) {
+			stored.entries.clear(); // parse anew
+		}
+		return stored;
+	}
+
+	private void warn(String action, IOException e) {
+		warnings.println("Warning: cannot " + action + " the ELF cache " + cacheFile.getAbsolutePath() + ", " + e);
+	}
+
+	private static String key(File file) {
+		return file.getAbsolutePath();
+	}
+
+	private static long lastModified(File file) throws IOException {
+		if (file instanceof ContainedFile) {
+			file = ((ContainedFile) file).getContainer();
+		}
+		return Files.getLastModifiedTime(file.toPath()).toMillis();
+	}
+
+	/**
+	 * @param channelSource channels to the file, for section contents
+	 * @return the ELF file header digest, or null if the file is not in the cache or has changed since
+	 * @throws MalformedElfMagicException if the file is known not to be an ELF file
+	 */
+	public ELF get(File file, FileMemory.ChannelSource channelSource) throws IOException {
+		final String key = key(file);
+		final Stored stored = this.stored;
+		Entry entry = added.get(key);
+		if (entry == null) {
+			entry = stored.entries.get(key);
+		}
+		if (entry == null || entry.length != file.length() || entry.lastModified != lastModified(file)) {
+			return null;
+		}
+		if (entry.size == NOT_ELF) {
+			throw new MalformedElfMagicException("cached");
+		}
+		final ByteBuffer digest;
+		if (entry.bytes == null) {
+			digest = stored.mapped.duplicate();
+			digest.position(entry.offset).limit(entry.offset + entry.size);
+		} else {
+			digest = ByteBuffer.wrap(entry.bytes);
+		}
+		final ELF elf = new ELF(ELF.Preset.ANDROID_32, ELF.Type.DYN);
+		elf.readDigest(new BufferDataInput(digest), channelSource);
+		return elf;
+	}
+
+	public void put(File file, ELF elf) throws IOException {
+		final ByteArrayOutputStream digest = new ByteArrayOutputStream();
+		elf.writeDigest(new DataOutputStream(digest));
+		final byte[] bytes = digest.toByteArray();
+		add(key(file), new Entry(file.length(), lastModified(file), 0, bytes.length, bytes));
+	}
+
+	public void putNotElf(File file) throws IOException {
+		add(key(file), new Entry(file.length(), lastModified(file), 0, NOT_ELF, null));
+	}
+
+	private void add(String key, Entry entry) {
+		if (added.size() >= MAX_ADDED) {
+			save();
+			if (added.size() >= MAX_ADDED) {
+				return; // not written back, not kept either
+			}
+		}
+		added.put(key, entry);
+	}
+
+	/**
+	 * Writes the cache back if anything was added, and maps it anew. Another run may have written it
+	 * meanwhile; last one wins.
+	 */
+	public synchronized void flush() throws IOException {
+		if (added.isEmpty()) {
+			return;
+		}
+		final Stored stored = this.stored;
+		final Map<String, Entry> written = new HashMap<>(added);
+		final Map<String, Entry> entries = new LinkedHashMap<>(stored.entries);
+		entries.putAll(written);
+		PrivateFiles.mkdirs(cacheFile.getAbsoluteFile().getParentFile());
+		final File temp = PrivateFiles.createTemp(cacheFile);
+		try {
+			try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				dos.writeInt(MAGIC);
+				dos.writeInt(VERSION);
+				dos.writeInt(entries.size());
+				for (Map.Entry<String, Entry> keyed : entries.entrySet()) {
+					final Entry entry = keyed.getValue();
+					dos.writeUTF(keyed.getKey());
+					dos.writeLong(entry.length);
+					dos.writeLong(entry.lastModified);
+					dos.writeInt(entry.size);
+					if (entry.bytes != null) {
+						dos.write(entry.bytes);
+					} else if (entry.size > 0) {
+						final byte[] bytes = new byte[entry.size];
+						final ByteBuffer digest = stored.mapped.duplicate();
+						digest.position(entry.offset);
+						digest.get(bytes);
+						dos.write(bytes);
+					}
+				}
+			}
+			PrivateFiles.replace(temp, cacheFile);
+		} finally {
+			//noinspection ResultOfMethodCallIgnored
+			temp.delete(); // moved unless failed
+		}
+		this.stored = read(cacheFile);
+		for (Map.Entry<String, Entry> keyed : written.entrySet()) {
+			added.remove(keyed.getKey(), keyed.getValue()); // unless added again meanwhile
+		}
+	}
+
+	/**
+	 * Flushes, warning of a failure instead of throwing it.
+	 */
+	public void save() {
+		try {
+			flush();
+		} catch (IOException e) {
+			warn("write", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		save();
+	}
+}
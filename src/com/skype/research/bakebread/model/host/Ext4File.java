@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.nio.ExtentChannel;
+import com.skype.research.bakebread.nio.ExtentMap;
+import com.skype.research.sparse.SparseImage;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+
+/**
+ * A regular file in an ext4 file system image, named "IMAGE!/PATH".
+ * Its contents are the extents of the image it occupies, read in place.
+ */
+public class Ext4File extends File implements ContainedFile {
+	private static final long serialVersionUID = 1L;
+
+	private final File image;
+	private final SparseImage sparseImage;
+	private final ExtentMap extents;
+	private final long size;
+
+	Ext4File(File image, SparseImage sparseImage, String path, ExtentMap extents, long size) {
+		super(image.getPath() + ZipEntryFile.SEPARATOR + path);
+		this.image = image;
+		this.sparseImage = sparseImage;
+		this.extents = extents;
+		this.size = size;
+	}
+
+	@Override
+	public File getContainer() {
+		return image;
+	}
+
+	@Override
+	public FileChannel slice(FileChannel containerChannel) {
+		final FileChannel imageChannel = sparseImage == null ? containerChannel : sparseImage.expand(containerChannel);
+		return new ExtentChannel(imageChannel, extents, size);
+	}
+
+	@Override
+	public long length() {
+		return size;
+	}
+
+	@Override
+	public long lastModified() {
+		return image.lastModified();
+	}
+
+	@Override
+	public boolean exists() {
+		return image.exists();
+	}
+
+	@Override
+	public boolean isFile() {
+		return image.isFile();
+	}
+
+	@Override
+	public boolean isDirectory() {
+		return false;
+	}
+
+	@Override
+	public boolean canRead() {
+		return image.canRead();
+	}
+}
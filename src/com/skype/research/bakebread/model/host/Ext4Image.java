@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.nio.ExtentChannel;
+import com.skype.research.bakebread.nio.ExtentMap;
+import com.skype.research.sparse.SparseImage;
+import com.skype.research.sparse.scanner.Ext4Scanner;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Regular files of an ext4 (or ext2/ext3) file system image, plain or sparse, looked up without mounting it.
+ * https://ext4.wiki.kernel.org/index.php/Ext4_Disk_Layout
+ * The image stays open until closed and may be looked into concurrently.
+ * MOREINFO inline data (small files and folders) is not supported; libraries never have it
+ */
+public class Ext4Image implements Closeable {
+	private static final int SUPERBLOCK_OFFSET = 0x400;
+	private static final int SUPERBLOCK_SIZE = 0x400;
+	private static final int INCOMPAT_64BIT = 0x80;
+	private static final int GOOD_OLD_INODE_SIZE = 128;
+	private static final long ROOT_INODE = 2;
+
+	private static final int S_IFMT = 0xf000;
+	private static final int S_IFREG = 0x8000;
+	private static final int S_IFDIR = 0x4000;
+	private static final int S_IFLNK = 0xa000;
+	private static final int EXTENTS_FL = 0x80000;
+	private static final int INLINE_DATA_FL = 0x10000000;
+
+	private static final int EXTENT_MAGIC = 0xf30a;
+	private static final int EXTENT_HEADER = 12;
+	private static final int EXTENT_ENTRY = 12;
+	private static final int EXTENT_UNINIT = 0x8000;
+	private static final int DIRECT_BLOCKS = 12;
+	private static final int MAX_LINKS = 8; // as in the kernel, roughly
+
+	private final File image;
+	private final SparseImage sparseImage;
+	private final FileChannel channel;
+	private final FileChannel view; // the expanded contents, read positionally
+	private final long blockSize;
+	private final long inodesPerGroup;
+	private final int inodeSize;
+	private final int descSize;
+	private final long descTable;
+
+	private final ConcurrentMap<Long, Map<String, Long>> directories = new ConcurrentHashMap<>();
+
+	private Ext4Image(File image, SparseImage sparseImage, FileChannel channel, FileChannel view, ByteBuffer superblock) {
+		this.image = image;
+		this.sparseImage = sparseImage;
+		this.channel = channel;
+		this.view = view;
+		blockSize = 1024L << superblock.getInt(0x18);
+		inodesPerGroup = superblock.getInt(0x28) & 0xffffffffL;
+		inodeSize = superblock.getInt(0x4c) == 0 ? GOOD_OLD_INODE_SIZE : superblock.getShort(0x58) & 0xffff;
+		descSize = (superblock.getInt(0x60) & INCOMPAT_64BIT) == 0 ? 32 : superblock.getShort(0xfe) & 0xffff;
+		descTable = ((superblock.getInt(0x14) & 0xffffffffL) + 1) * blockSize;
+	}
+
+	/**
+	 * @return the file system in the image, or null if the image is not an ext4 image
+	 */
+	public static Ext4Image open(File image) throws IOException {
+		final FileChannel channel = FileChannel.open(image.toPath(), StandardOpenOption.READ);
+		Ext4Image ext4Image = null;
+		try {
+			final SparseImage sparseImage = SparseImage.read(channel);
+			final FileChannel view = sparseImage == null ? channel : sparseImage.expand(channel);
+			if (view.size() >= SUPERBLOCK_OFFSET + SUPERBLOCK_SIZE) {
+				final ByteBuffer superblock = readFully(view, SUPERBLOCK_OFFSET, SUPERBLOCK_SIZE);
+				if (superblock.getShort(Ext4Scanner.EXT4_OFFSET - SUPERBLOCK_OFFSET) == Ext4Scanner.EXT4MAGIC) {
+					ext4Image = new Ext4Image(image, sparseImage, channel, view, superblock);
+				}
+			}
+		} finally {
+			if (ext4Image == null) {
+				channel.close();
+			}
+		}
+		return ext4Image;
+	}
+
+	public File getImage() {
+		return image;
+	}
+
+	/**
+	 * Looks a target path up as if the image were mounted at any of the folders on the path,
+	 * e.g. /system/lib/libc.so is looked up as /system/lib/libc.so, /lib/libc.so and /libc.so.
+	 * @param targetPath a path with '/' separators
+	 * @return the regular file found, or null if there is none
+	 */
+	public File find(String targetPath) throws IOException {
+		final List<String> names = new ArrayList<>();
+		for (String name : targetPath.split("/")) {
+			if (!name.isEmpty() && !".".equals(name)) {
+				names.add(name);
+			}
+		}
+		for (int i = 0; i < names.size(); i++) {
+			final List<String> mounted = names.subList(i, names.size());
+			final long number = resolve(view, ROOT_INODE, new ArrayList<>(mounted), 0);
+			if (number != 0) {
+				final Inode inode = readInode(view, number);
+				if (inode.getType() == S_IFREG) {
+					return new Ext4File(image, sparseImage, join(mounted), extents(view, inode), inode.size);
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static String join(List<String> names) {
+		final StringBuilder path = new StringBuilder();
+		for (String name : names) {
+			path.append('/').append(name);
+		}
+		return path.substring(1);
+	}
+
+	/**
+	 * @param names the path from the folder, consumed
+	 * @return the inode number, or 0 if there is no such file
+	 */
+	private long resolve(FileChannel view, long folder, List<String> names, int links) throws IOException {
+		long number = folder;
+		while (!names.isEmpty()) {
+			final Inode inode = readInode(view, number);
+			if (inode.getType() != S_IFDIR) {
+				return 0;
+			}
+			final Long child = list(view, number, inode).get(names.remove(0));
+			if (child == null) {
+				return 0;
+			}
+			final Inode childInode = readInode(view, child);
+			if (childInode.getType() == S_IFLNK) {
+				if (links == MAX_LINKS) {
+					return 0;
+				}
+				final String target = readLink(view, childInode);
+				final List<String> rest = new ArrayList<>();
+				for (String name : target.split("/")) {
+					if (!name.isEmpty() && !".".equals(name)) {
+						rest.add(name);
+					}
+				}
+				rest.addAll(names);
+				return resolve(view, target.startsWith("/") ? ROOT_INODE : number, rest, links + 1);
+			}
+			number = child;
+		}
+		return number;
+	}
+
+	private Map<String, Long> list(FileChannel view, long number, Inode inode) throws IOException {
+		Map<String, Long> entries = directories.get(number);
+		if (entries == null) {
+			entries = new HashMap<>(); // a folder listed twice at once is listed alike
+			final ByteBuffer data = readFully(new ExtentChannel(view, extents(view, inode), inode.size), 0, (int) inode.size);
+			int offset = 0;
+			while (offset + 8 <= data.limit()) {
+				final long child = data.getInt(offset) & 0xffffffffL;
+				final int recordLength = data.getShort(offset + 4) & 0xffff;
+				final int nameLength = data.get(offset + 6) & 0xff;
+				if (recordLength < 8) {
+					break; // corrupt
+				}
+				if (child != 0 && offset + 8 + nameLength <= data.limit()) {
+					final byte[] name = new byte[nameLength];
+					data.position(offset + 8);
+					data.get(name);
+					entries.put(new String(name, StandardCharsets.UTF_8), child);
+				}
+				offset += recordLength;
+			}
+			directories.put(number, entries);
+		}
+		return entries;
+	}
+
+	private String readLink(FileChannel view, Inode inode) throws IOException {
+		final byte[] target = new byte[(int) inode.size];
+		if (inode.size < inode.block.length && (inode.flags & EXTENTS_FL) == 0) {
+			System.arraycopy(inode.block, 0, target, 0, target.length); // a fast symlink
+		} else {
+			readFully(new ExtentChannel(view, extents(view, inode), inode.size), 0, target.length).get(target);
+		}
+		return new String(target, StandardCharsets.UTF_8);
+	}
+
+	private static final class Inode {
+		int mode;
+		int flags;
+		long size;
+		final byte[] block = new byte[60];
+
+		int getType() {
+			return mode & S_IFMT;
+		}
+	}
+
+	private Inode readInode(FileChannel view, long number) throws IOException {
+		final long group = (number - 1) / inodesPerGroup;
+		final long index = (number - 1) % inodesPerGroup;
+		final ByteBuffer desc = readFully(view, descTable + group * descSize, descSize);
+		long table = desc.getInt(0x8) & 0xffffffffL;
+		if (descSize >= 64) {
+			table |= (desc.getInt(0x28) & 0xffffffffL) << 32;
+		}
+		final ByteBuffer raw = readFully(view, table * blockSize + index * inodeSize, GOOD_OLD_INODE_SIZE);
+		final Inode inode = new Inode();
+		inode.mode = raw.getShort(0x0) & 0xffff;
+		inode.size = (raw.getInt(0x4) & 0xffffffffL) | (raw.getInt(0x6c) & 0xffffffffL) << 32;
+		inode.flags = raw.getInt(0x20);
+		raw.position(0x28);
+		raw.get(inode.block);
+		return inode;
+	}
+
+	private ExtentMap extents(FileChannel view, Inode inode) throws IOException {
+		if ((inode.flags & INLINE_DATA_FL) != 0) {
+			throw new IOException("Inline data in " + image);
+		}
+		final ExtentMap extents = new ExtentMap();
+		final ByteBuffer block = ByteBuffer.wrap(inode.block).order(ByteOrder.LITTLE_ENDIAN);
+		if ((inode.flags & EXTENTS_FL) != 0) {
+			walkExtents(view, block, extents);
+		} else {
+			final long blocks = (inode.size + blockSize - 1) / blockSize;
+			long logical = 0;
+			for (int i = 0; i < DIRECT_BLOCKS && logical < blocks; i++, logical++) {
+				final long direct = block.getInt(i * 4) & 0xffffffffL;
+				if (direct != 0) {
+					extents.add(logical * blockSize, direct * blockSize, blockSize);
+				}
+			}
+			for (int level = 1; level <= 3 && logical < blocks; level++) {
+				logical = walkIndirect(view, block.getInt((DIRECT_BLOCKS + level - 1) * 4) & 0xffffffffL,
+						level, logical, blocks, extents);
+			}
+		}
+		return extents;
+	}
+
+	private void walkExtents(FileChannel view, ByteBuffer node, ExtentMap extents) throws IOException {
+		if ((node.getShort(0) & 0xffff) != EXTENT_MAGIC) {
+			throw new IOException("Corrupt extent tree in " + image);
+		}
+		final int entries = node.getShort(2) & 0xffff;
+		final int depth = node.getShort(6) & 0xffff;
+		for (int i = 0; i < entries; i++) {
+			final int entry = EXTENT_HEADER + i * EXTENT_ENTRY;
+			final long logical = node.getInt(entry) & 0xffffffffL;
+			if (depth == 0) {
+				final int length = node.getShort(entry + 4) & 0xffff;
+				final long physical = (node.getShort(entry + 6) & 0xffffL) << 32 | node.getInt(entry + 8) & 0xffffffffL;
+				if (length <= EXTENT_UNINIT) { // preallocated extents read as zeroes
+					extents.add(logical * blockSize, physical * blockSize, length * blockSize);
+				}
+			} else {
+				final long leaf = node.getInt(entry + 4) & 0xffffffffL | (node.getShort(entry + 8) & 0xffffL) << 32;
+				walkExtents(view, readFully(view, leaf * blockSize, (int) blockSize), extents);
+			}
+		}
+	}
+
+	/**
+	 * @return the logical block past those mapped through the indirect block
+	 */
+	private long walkIndirect(FileChannel view, long pointer, int level, long logical, long blocks, ExtentMap extents) throws IOException {
+		final long pointers = blockSize / 4;
+		long span = 1;
+		for (int i = 1; i < level; i++) {
+			span *= pointers;
+		}
+		if (pointer == 0) {
+			return logical + span * pointers; // a hole
+		}
+		final ByteBuffer indirect = readFully(view, pointer * blockSize, (int) blockSize);
+		for (int i = 0; i < pointers && logical < blocks; i++) {
+			final long next = indirect.getInt(i * 4) & 0xffffffffL;
+			if (level == 1) {
+				if (next != 0) {
+					extents.add(logical * blockSize, next * blockSize, blockSize);
+				}
+				logical++;
+			} else {
+				logical = walkIndirect(view, next, level - 1, logical, blocks, extents);
+			}
+		}
+		return logical;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Truncated image at " + position);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
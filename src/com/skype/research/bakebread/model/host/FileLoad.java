@@ -6,7 +6,6 @@
 
 package com.skype.research.bakebread.model.host;
 
-import com.skype.research.bakebread.io.AutoClose;
 import com.skype.research.bakebread.model.analysis.Areas;
 import com.skype.research.bakebread.model.analysis.ResolvedMemData;
 import com.skype.research.bakebread.model.analysis.ResolvedMemLoad;
@@ -24,12 +23,12 @@ public class FileLoad extends ResolvedMemData implements MemLoad {
 	private final File file;
 	private final MapInfo mapInfo;
 	
-	public FileLoad(MapInfo mapInfo, File file, AutoClose autoClose) {
-		this(Areas.trim(mapInfo, file.length() - mapInfo.getFileOffset()), file, mapInfo, autoClose);
+	public FileLoad(MapInfo mapInfo, File file, FileMemory.ChannelSource channelSource) {
+		this(Areas.trim(mapInfo, file.length() - mapInfo.getFileOffset()), file, mapInfo, channelSource);
 	}
-	
-	public FileLoad(MemArea memArea, File file, MapInfo mapInfo, AutoClose autoClose) {
-		super(memArea, new FileMemory(file, mapInfo.getFileOffset(), Areas.length(memArea), autoClose));
+
+	public FileLoad(MemArea memArea, File file, MapInfo mapInfo, FileMemory.ChannelSource channelSource) {
+		super(memArea, new FileMemory(channelSource, mapInfo.getFileOffset(), Areas.length(memArea)));
 		this.mapInfo = mapInfo;
 		this.file = file;
 	}
@@ -10,10 +10,16 @@ import com.skype.research.bakebread.model.analysis.LoadRegistrar;
 import com.skype.research.bakebread.model.analysis.ModuleAnalyzer;
 import com.skype.research.bakebread.model.memory.MapInfo;
 
+import java.util.Collection;
+
 /**
  * Retrieves mapped ranges according to a file and mapping information.
  * Reports failures as "memory fog".
  */
 public interface FileMapper extends ModuleAnalyzer {
+	/**
+	 * Finds and prepares the files of the mappings ahead of {@link #mapRegion}, possibly concurrently.
+	 */
+	void resolve(Collection<? extends MapInfo> mapping, FileFinder fileFinder);
 	void mapRegion(MapInfo mapInfo, FileFinder fileFinder, LoadRegistrar registrar);
 }
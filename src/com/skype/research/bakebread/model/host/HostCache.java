@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.coredump.ELF;
+import com.skype.research.bakebread.coredump.MalformedElfMagicException;
+import com.skype.research.bakebread.io.AutoClose;
+import com.skype.research.bakebread.model.memory.MapInfo;
+import com.skype.research.bakebread.nio.ChannelLease;
+import com.skype.research.bakebread.nio.FileMemory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Host side state which outlives a single dump: file lookups, parsed ELF files and open channels.
+ * Safe to share between concurrent conversions against the same module paths.
+ */
+public class HostCache implements Closeable {
+	public static final int MAX_ELVES = 2048; // parsed headers: a sysroot or two
+	private static final File NOT_FOUND = new File("");
+
+	private final FileFinder finder;
+	private final BuildIdStore buildIdStore;
+	private final ElfCache elfCache;
+	private final ChannelPool channelPool;
+	private final AutoClose autoClose;
+
+	// lookups, found or not, until the next refresh(); archives and headers until their files change
+	private final ConcurrentMap<String, File> found = new ConcurrentHashMap<>();
+	private final ConcurrentMap<File, Stamped<ZipDirectory>> archives = new ConcurrentHashMap<>();
+	// guarded by itself; least recently used first. a failed parse stays if the file is not an ELF file
+	private final Map<File, Stamped<FutureTask<ELF>>> elves = new RecentElves();
+
+	private final FileFinder cachingFinder = new FileFinder() {
+		@Override
+		public File find(MapInfo info) {
+			final String name = info.getName();
+			if (name == null) {
+				return finder.find(info);
+			}
+			File file = found.get(name);
+			if (file == null) {
+				file = finder.find(info);
+				found.putIfAbsent(name, file == null ? NOT_FOUND : file);
+			}
+			return file == NOT_FOUND ? null : file;
+		}
+	};
+
+	/**
+	 * @param finder    lookup by mapped file name
+	 * @param autoClose owner of host files opened on behalf of any conversion
+	 */
+	public HostCache(FileFinder finder, AutoClose autoClose) {
+		this(finder, null, null, autoClose);
+	}
+
+	/**
+	 * @param finder       lookup by mapped file name
+	 * @param buildIdStore lookup by build-id, or null
+	 * @param elfCache     parsed ELF headers from earlier runs, or null
+	 * @param autoClose    owner of host files opened on behalf of any conversion
+	 */
+	public HostCache(FileFinder finder, BuildIdStore buildIdStore, ElfCache elfCache, AutoClose autoClose) {
+		this(finder, buildIdStore, elfCache, ChannelPool.DEFAULT_BUDGET, autoClose);
+	}
+
+	/**
+	 * @param finder       lookup by mapped file name
+	 * @param buildIdStore lookup by build-id, or null
+	 * @param elfCache     parsed ELF headers from earlier runs, or null
+	 * @param openFiles    how many host files may stay open at once
+	 * @param autoClose    owner of host files opened on behalf of any conversion
+	 */
+	public HostCache(FileFinder finder, BuildIdStore buildIdStore, ElfCache elfCache, int openFiles, AutoClose autoClose) {
+		this.finder = finder;
+		this.buildIdStore = buildIdStore;
+		this.elfCache = elfCache;
+		this.channelPool = new ChannelPool(openFiles);
+		this.autoClose = autoClose;
+	}
+
+	/**
+	 * @return a finder which looks every name up once
+	 */
+	public FileFinder getFinder() {
+		return cachingFinder;
+	}
+
+	/**
+	 * @return the build-id store, or null if there is none
+	 */
+	public BuildIdStore getBuildIdStore() {
+		return buildIdStore;
+	}
+
+	/**
+	 * @return the persistent ELF header cache, or null if there is none
+	 */
+	public ElfCache getElfCache() {
+		return elfCache;
+	}
+
+	public AutoClose getAutoClose() {
+		return autoClose;
+	}
+
+	/**
+	 * @return the channels to host files, within the open file budget
+	 */
+	public ChannelPool getChannelPool() {
+		return channelPool;
+	}
+
+	/**
+	 * @return a source of leases on the single pooled channel to the file, (re)opened on demand.
+	 * A contained file is read through the channel to its container.
+	 */
+	public FileMemory.ChannelSource getChannelSource(final File file) {
+		return new FileMemory.ChannelSource() {
+			@Override
+			public FileChannel open() throws IOException {
+				if (file instanceof ContainedFile) {
+					final ContainedFile contained = (ContainedFile) file;
+					final FileChannel container = getChannelSource(contained.getContainer()).open();
+					return new ChannelLease(contained.slice(container), container);
+				}
+				return channelPool.acquire(file);
+			}
+
+			@Override
+			public String toString() {
+				return file.getName();
+			}
+		};
+	}
+
+	/**
+	 * @return the stored entries of the archive, read once, or null if it is not a ZIP archive
+	 */
+	ZipDirectory getZipDirectory(File archive) throws IOException {
+		final Stamped<ZipDirectory> read = archives.get(archive);
+		if (read != null && read.isCurrent(archive)) {
+			return read.value;
+		}
+		final Stamped<ZipDirectory> reread = new Stamped<>(archive, ZipDirectory.read(archive));
+		if (reread.value == null) {
+			archives.remove(archive);
+		} else {
+			archives.put(archive, reread); // the latest read wins
+		}
+		return reread.value;
+	}
+
+	/**
+	 * Parses the file once however many conversions ask for it at the same time. The headers
+	 * (or the verdict that the file is not an ELF file) are kept among the recently used ones,
+	 * and parsed again once the file changes.
+	 * @param parser reads the headers of the file
+	 * @throws MalformedElfMagicException if the file is not an ELF file
+	 */
+	public ELF getElf(File file, Callable<ELF> parser) throws IOException {
+		Stamped<FutureTask<ELF>> stamped;
+		boolean parsing = false;
+		synchronized (elves) {
+			stamped = elves.get(file);
+			if (stamped == null || !stamped.isCurrent(file)) {
+				stamped = new Stamped<>(file, new FutureTask<>(parser));
+				elves.put(file, stamped);
+				parsing = true;
+			}
+		}
+		final FutureTask<ELF> parsed = stamped.value;
+		if (parsing) {
+			parsed.run(); // the others wait below
+		}
+		try {
+			return parsed.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(file.getPath());
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof MalformedElfMagicException) {
+				throw (MalformedElfMagicException) cause;
+			}
+			synchronized (elves) {
+				if (elves.get(file) == stamped) {
+					elves.remove(file); // try again next time
+				}
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Forgets the lookups and the idle channels, and refreshes the finder, e.g. before another job:
+	 * host files may have been added, removed or replaced since.
+	 */
+	public void refresh() {
+		found.clear();
+		channelPool.closeIdle();
+		if (finder instanceof Refreshable) {
+			((Refreshable) finder).refresh();
+		}
+	}
+
+	@Override
+	public void close() {
+		autoClose.close();
+		channelPool.close();
+		if (finder instanceof Closeable) {
+			try {
+				((Closeable) finder).close();
+			} catch (IOException e) {
+				// the finder is not written to
+			}
+		}
+		archives.clear();
+		synchronized (elves) {
+			elves.clear();
+		}
+	}
+
+	private static class RecentElves extends LinkedHashMap<File, Stamped<FutureTask<ELF>>> {
+		private static final long serialVersionUID = 1L;
+
+		RecentElves() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<File, Stamped<FutureTask<ELF>>> eldest) {
+			return size() > MAX_ELVES;
+		}
+	}
+}
@@ -8,19 +8,22 @@ package com.skype.research.bakebread.model.host;
 
 import com.skype.research.bakebread.model.memory.MapInfo;
 
+import java.io.Closeable;
 import java.io.File;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
  * File finder from a path string.
  */
-public class HostFileFinder implements FileFinder {
+public class HostFileFinder implements Closeable, FileFinder, Refreshable {
 	public static final String TARGET_PATH_SEP = "/";
 
 	public interface Rule {
@@ -151,8 +154,10 @@ public class HostFileFinder implements FileFinder {
 		return new RuleSpec();
 	}
 
-	private final Collection<File> hostRoots = new HashSet<>();
+	private final Collection<File> hostRoots = new LinkedHashSet<>(); // in -P order
+	private final Set<File> imageFiles = new HashSet<>(); // roots which are files, told apart once
 	private final Rule preFilter;
+	private final ImageRoots imageRoots = new ImageRoots();
 
 	public HostFileFinder(File... hostRoots) {
 		this(Arrays.asList(hostRoots));
@@ -169,6 +174,11 @@ public class HostFileFinder implements FileFinder {
 	public HostFileFinder(RuleSpec ruleSpec, Collection<? extends File> hostRoots) {
 		this.preFilter = ruleSpec.build();
 		this.hostRoots.addAll(hostRoots);
+		for (File root : this.hostRoots) {
+			if (root.isFile()) {
+				imageFiles.add(root);
+			}
+		}
 	}
 	
 	@Override
@@ -176,6 +186,13 @@ public class HostFileFinder implements FileFinder {
 		String name = preFilter.apply(info.getName());
 		if (name != null) {
 			for (File root : hostRoots) {
+				if (imageFiles.contains(root)) {
+					final File contained = imageRoots.find(root, name);
+					if (contained != null) {
+						return contained;
+					}
+					continue;
+				}
 				File candidate = new File(root, name);
 				if (candidate.isFile()) {
 					return candidate;
@@ -188,4 +205,20 @@ public class HostFileFinder implements FileFinder {
 		}
 		return null;
 	}
+
+	/**
+	 * Reopens the images replaced since they were opened; folders are probed on every lookup anyway.
+	 */
+	@Override
+	public void refresh() {
+		imageRoots.refresh();
+	}
+
+	/**
+	 * Closes the images among the host roots.
+	 */
+	@Override
+	public void close() {
+		imageRoots.close();
+	}
 }
@@ -21,17 +21,42 @@ import com.skype.research.bakebread.model.memory.MemArea;
 
 import java.io.Closeable;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class HostFileMapper implements Closeable, FileMapper, ModuleAnalyzer {
 	private final FogConfig fogConfig;
+	private final HostCache hostCache;
 	private final AutoClose autoClose;
 
 	private final Deque<ModuleAnalyzer> analyzers = new LinkedList<>();
+	private int resolverCount = 1;
 
 	public HostFileMapper(FogConfig fogConfig, AutoClose autoClose) {
+		this(fogConfig, new HostCache(null, autoClose), autoClose);
+		autoClose.register(hostCache.getChannelPool());
+	}
+
+	/**
+	 * @param hostCache shared with other conversions, and left open
+	 */
+	public HostFileMapper(FogConfig fogConfig, HostCache hostCache) {
+		this(fogConfig, hostCache, new AutoClose());
+	}
+
+	private HostFileMapper(FogConfig fogConfig, HostCache hostCache, AutoClose autoClose) {
 		this.fogConfig = fogConfig;
+		this.hostCache = hostCache;
 		this.autoClose = autoClose;
 	}
 
@@ -42,6 +67,79 @@ public class HostFileMapper implements Closeable, FileMapper, ModuleAnalyzer {
 		}
 	}
 
+	/**
+	 * @param resolverCount how many files to find and prepare at once; 1 to leave it all to {@link #mapRegion}
+	 */
+	public void setResolverCount(int resolverCount) {
+		this.resolverCount = resolverCount;
+	}
+
+	private boolean isHostMapped(MapInfo mapInfo) {
+		return mapInfo.getFd() != 0 && mapInfo.isReadable()
+				&& !(mapInfo.isWritable() && fogConfig.hasMemoryFillingPattern(MemoryFog.MAPPED_WRITABLE));
+	}
+
+	/**
+	 * Finds the files of distinct mapped names on a pool and lets the analyzers prepare them (e.g. parse
+	 * ELF headers), so that the host cache has them at hand when the regions are mapped, in address order.
+	 */
+	@Override
+	public void resolve(Collection<? extends MapInfo> mapping, final FileFinder fileFinder) {
+		if (resolverCount <= 1) {
+			return;
+		}
+		final Set<String> names = new LinkedHashSet<>();
+		final List<MapInfo> distinct = new ArrayList<>();
+		for (MapInfo mapInfo : mapping) {
+			if (!isHostMapped(mapInfo)) {
+				continue;
+			}
+			String name = mapInfo.getName();
+			// a mapped APK may resolve to a different file at every offset, other files to one file
+			if (name.endsWith(ApkFileFinder.APK_SUFFIX)) {
+				name += '@' + Long.toHexString(mapInfo.getFileOffset());
+			}
+			if (names.add(name)) {
+				distinct.add(mapInfo);
+			}
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(resolverCount, Math.max(1, distinct.size())));
+		try {
+			final List<Future<Void>> prepared = new ArrayList<>();
+			for (final MapInfo mapInfo : distinct) {
+				prepared.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						final File file = fileFinder.find(mapInfo);
+						if (file != null) {
+							prepare(file);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : prepared) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return; // mapRegion() will do what is left
+				} catch (ExecutionException e) {
+					// mapRegion() will try again and report
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public void prepare(File file) {
+		for (ModuleAnalyzer analyzer : analyzers) {
+			analyzer.prepare(file);
+		}
+	}
+
 	@Override
 	public void mapRegion(MapInfo mapInfo, FileFinder fileFinder, LoadRegistrar registrar) {
 		MemoryFog memoryFog;
@@ -54,18 +152,21 @@ public class HostFileMapper implements Closeable, FileMapper, ModuleAnalyzer {
 			} else {
 				return; // don't map anything
 			}
-		} else if (mapInfo.isWritable() && fogConfig.hasMemoryFillingPattern(MemoryFog.MAPPED_WRITABLE)) {
+		} else if (!isHostMapped(mapInfo)) {
 			memoryFog = MemoryFog.MAPPED_WRITABLE;
 		} else {
 			File file = fileFinder.find(mapInfo);
 			if (file == null) {
 				memoryFog = MemoryFog.FILE_NOT_FOUND;
 			} else {
+				if (file instanceof ZipEntryFile) {
+					mapInfo = ((ZipEntryFile) file).rebase(mapInfo); // the archive is mapped
+				}
 				if (mapInfo.getFileOffset() > file.length()) {
 					memoryFog = MemoryFog.FILE_END_REACHED;
 					// TODO if host validation is enabled, this is a good reason to throw
 				} else {
-					FileLoad fileLoad = new FileLoad(mapInfo, file, autoClose);
+					FileLoad fileLoad = new FileLoad(mapInfo, file, hostCache.getChannelSource(file));
 					// we'll figure out how to organize a responsibility chain
 					analyze(fileLoad, registrar);
 					memArea = new ResolvedMemArea(fileLoad.getEndAddress(), mapInfo.getEndAddress());
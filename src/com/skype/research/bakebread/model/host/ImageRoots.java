@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Host roots which are file system images rather than folders, opened on first use and kept open until closed.
+ */
+final class ImageRoots implements Closeable {
+	// guarded by itself; null values for files which are not images
+	private final Map<File, Stamped<Ext4Image>> images = new HashMap<>();
+
+	/**
+	 * @param root a path entry which is a file
+	 * @param name a root relative host path
+	 * @return the file found in the image, or null if there is none or the root is not an image
+	 */
+	File find(File root, String name) {
+		final Ext4Image image;
+		synchronized (images) {
+			Stamped<Ext4Image> opened = images.get(root);
+			if (opened == null) {
+				Ext4Image ext4Image;
+				try {
+					ext4Image = Ext4Image.open(root);
+				} catch (IOException e) {
+					ext4Image = null; // neither found nor ever to be, until the file changes
+				}
+				opened = new Stamped<>(root, ext4Image);
+				images.put(root, opened);
+			}
+			image = opened.value;
+		}
+		try {
+			return image == null ? null : image.find(name.replace(File.separatorChar, '/'));
+		} catch (IOException e) {
+			return null; // a corrupt folder on the way
+		}
+	}
+
+	/**
+	 * Closes and forgets the images which have changed since they were opened, to be opened again on demand.
+	 */
+	void refresh() {
+		synchronized (images) {
+			final Iterator<Map.Entry<File, Stamped<Ext4Image>>> iterator = images.entrySet().iterator();
+			while (iterator.hasNext()) {
+				final Map.Entry<File, Stamped<Ext4Image>> entry = iterator.next();
+				if (!entry.getValue().isCurrent(entry.getKey())) {
+					iterator.remove();
+					closeQuietly(entry.getValue().value);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (images) {
+			for (Stamped<Ext4Image> image : images.values()) {
+				closeQuietly(image.value);
+			}
+			images.clear();
+		}
+	}
+
+	private static void closeQuietly(Ext4Image image) {
+		if (image != null) {
+			try {
+				image.close();
+			} catch (IOException e) {
+				// read only, nothing lost
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.model.memory.MapInfo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * File finder answering from an index of every host root instead of probing the file system.
+ * Finds what {@link HostFileFinder} would find, trying the roots in the given order.
+ */
+public class IndexedFileFinder implements Closeable, FileFinder, Refreshable {
+	public static final String FOLDER_NAME = "indices";
+
+	private final HostFileFinder.Rule preFilter;
+	private final List<File> hostRoots = new ArrayList<>();
+	private final List<RootIndex> indices = new ArrayList<>(); // null for images
+	private final ImageRoots imageRoots = new ImageRoots();
+
+	/**
+	 * @param indexFolder where to keep the indices between runs, e.g. {@link #FOLDER_NAME} in the cache folder
+	 */
+	public IndexedFileFinder(Collection<? extends File> hostRoots, File indexFolder) throws IOException {
+		this(HostFileFinder.rules(), hostRoots, indexFolder);
+	}
+
+	public IndexedFileFinder(HostFileFinder.RuleSpec ruleSpec, Collection<? extends File> hostRoots,
+			File indexFolder) throws IOException {
+		this.preFilter = ruleSpec.build();
+		for (File root : hostRoots) {
+			this.hostRoots.add(root);
+			indices.add(root.isFile() ? null : RootIndex.open(root, indexFolder));
+		}
+	}
+
+	@Override
+	public File find(MapInfo info) {
+		String name = preFilter.apply(info.getName());
+		if (name != null) {
+			final String leafName = new File(name).getName();
+			for (int i = 0; i < indices.size(); i++) {
+				final File root = hostRoots.get(i);
+				final RootIndex index = indices.get(i);
+				if (index == null) {
+					final File contained = imageRoots.find(root, name);
+					if (contained != null) {
+						return contained;
+					}
+					continue;
+				}
+				if (index.find(name) != null) {
+					return new File(root, name);
+				}
+				if (index.find(leafName) != null) {
+					return new File(root, leafName);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Catches up with the folders modified since the indices were loaded, and with replaced images.
+	 */
+	@Override
+	public void refresh() {
+		for (RootIndex index : indices) {
+			if (index != null) {
+				try {
+					index.update();
+				} catch (IOException e) {
+					// MOREINFO a root gone unreadable answers from its last listing
+				}
+			}
+		}
+		imageRoots.refresh();
+	}
+
+	/**
+	 * Closes the images among the host roots.
+	 */
+	@Override
+	public void close() {
+		imageRoots.close();
+	}
+}
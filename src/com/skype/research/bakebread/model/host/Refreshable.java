@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+/**
+ * State taken from host files, which catches up with their changes on demand.
+ */
+public interface Refreshable {
+	void refresh();
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.io.PrivateFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Regular files under a host root, by folder, with sizes and modification times.
+ * Kept in a sidecar file in a per-user folder, outside of the root, and refreshed by folder:
+ * only folders modified since are listed again.
+ * MOREINFO a folder modified within the timestamp granularity of its last listing is not noticed
+ */
+final class RootIndex {
+	static final String SUFFIX = ".idx";
+	private static final int MAGIC = 0x42424958; // "BBIX"
+	private static final int VERSION = 1;
+	private static final String SEP = "/"; // folder keys, regardless of the host
+
+	static final class Entry {
+		final long length;
+		final long lastModified;
+
+		Entry(long length, long lastModified) {
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private static final class Folder {
+		long lastModified;
+		final Map<String, Entry> files = new TreeMap<>();
+		final Set<String> folders = new TreeSet<>();
+	}
+
+	private final File root;
+	private final File sidecar;
+	// guarded by this
+	private final Map<String, Folder> folders = new HashMap<>();
+	private boolean modified;
+
+	private RootIndex(File root, File sidecar) {
+		this.root = root;
+		this.sidecar = sidecar;
+	}
+
+	/**
+	 * Loads the index of the root from its sidecar, refreshes it and saves it back if it changed.
+	 * A sidecar which cannot be saved is merely missed: the root is listed in full next time.
+	 * @param indexFolder where the sidecars of all roots go, created accessible to its owner only
+	 */
+	static RootIndex open(File root, File indexFolder) throws IOException {
+		final RootIndex index = new RootIndex(root, new File(indexFolder, sidecarName(root.getCanonicalPath())));
+		synchronized (index) {
+			if (index.load()) {
+				index.refresh();
+			} else {
+				index.list("", new HashSet<Path>());
+			}
+			index.saveIfModified();
+		}
+		return index;
+	}
+
+	/**
+	 * Lists the folders modified since the last time again, and saves the sidecar if anything changed.
+	 */
+	synchronized void update() throws IOException {
+		refresh();
+		saveIfModified();
+	}
+
+	private void saveIfModified() {
+		if (modified && save()) {
+			modified = false;
+		}
+	}
+
+	/**
+	 * @return a name which tells the roots apart; the full path is checked on {@link #load}
+	 */
+	static String sidecarName(String canonicalPath) {
+		try {
+			final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			return BuildIdStore.toHex(sha1.digest(canonicalPath.getBytes(StandardCharsets.UTF_8))) + SUFFIX;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JRE has it
+		}
+	}
+
+	/**
+	 * @param relative a relative path in host form
+	 */
+	synchronized Entry find(String relative) {
+		final Path path = Paths.get(relative).normalize();
+		if (path.isAbsolute() || path.getFileName() == null) {
+			return null;
+		}
+		final Path parent = path.getParent();
+		final StringBuilder key = new StringBuilder();
+		if (parent != null) {
+			for (Path element : parent) {
+				if (key.length() > 0) {
+					key.append(SEP);
+				}
+				key.append(element.toString());
+			}
+		}
+		final Folder folder = folders.get(key.toString());
+		return folder == null ? null : folder.files.get(path.getFileName().toString());
+	}
+
+	synchronized int getFileCount() {
+		int count = 0;
+		for (Folder folder : folders.values()) {
+			count += folder.files.size();
+		}
+		return count;
+	}
+
+	private File toFile(String key) {
+		return key.isEmpty() ? root : new File(root, key.replace(SEP, File.separator));
+	}
+
+	private static String child(String key, String name) {
+		return key.isEmpty() ? name : key + SEP + name;
+	}
+
+	/**
+	 * Lists a folder and the subfolders not yet indexed, following links except into cycles.
+	 */
+	private void list(String key, Set<Path> visiting) throws IOException {
+		final Path path = toFile(key).toPath();
+		final Path real = path.toRealPath();
+		if (!visiting.add(real)) {
+			return; // linked back into itself
+		}
+		final Folder folder = new Folder();
+		folder.lastModified = Files.getLastModifiedTime(path).toMillis();
+		final Folder older = folders.put(key, folder);
+		modified = true;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+			for (Path entry : entries) {
+				final String name = entry.getFileName().toString();
+				final BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+				} catch (IOException dangling) {
+					continue;
+				}
+				if (attributes.isDirectory()) {
+					folder.folders.add(name);
+					if (older == null || !older.folders.contains(name) || !folders.containsKey(child(key, name))) {
+						list(child(key, name), visiting);
+					}
+				} else if (attributes.isRegularFile()) {
+					folder.files.put(name, new Entry(attributes.size(), attributes.lastModifiedTime().toMillis()));
+				}
+			}
+		}
+		if (older != null) {
+			for (String name : older.folders) {
+				if (!folder.folders.contains(name)) {
+					forget(child(key, name));
+				}
+			}
+		}
+		visiting.remove(real);
+	}
+
+	private void forget(String key) {
+		final Folder folder = folders.remove(key);
+		if (folder != null) {
+			for (String name : folder.folders) {
+				forget(child(key, name));
+			}
+		}
+	}
+
+	private void refresh() throws IOException {
+		for (String key : new ArrayList<>(folders.keySet())) {
+			final Folder folder = folders.get(key);
+			if (folder == null) {
+				continue; // forgotten along with its parent
+			}
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(toFile(key).toPath(), BasicFileAttributes.class);
+			} catch (IOException gone) {
+				attributes = null;
+			}
+			if (attributes == null || !attributes.isDirectory()) {
+				forget(key);
+				modified = true;
+			} else if (attributes.lastModifiedTime().toMillis() != folder.lastModified) {
+				list(key, new HashSet<Path>());
+			}
+		}
+	}
+
+	private boolean load() throws IOException {
+		if (!sidecar.isFile()) {
+			return false;
+		}
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+			if (dis.readInt() != MAGIC || dis.readInt() != VERSION
+					|| !dis.readUTF().equals(root.getCanonicalPath())) {
+				return false; // foreign
+			}
+			for (int i = dis.readInt(); i > 0; i--) {
+				final String key = dis.readUTF();
+				final Folder folder = new Folder();
+				folder.lastModified = dis.readLong();
+				for (int j = dis.readInt(); j > 0; j--) {
+					final String name = dis.readUTF();
+					folder.files.put(name, new Entry(dis.readLong(), dis.readLong()));
+				}
+				for (int j = dis.readInt(); j > 0; j--) {
+					folder.folders.add(dis.readUTF());
+				}
+				folders.put(key, folder);
+			}
+			return true;
+		} catch (IOException e) {
+			folders.clear(); // truncated, index anew
+			return false;
+		}
+	}
+
+	private boolean save() {
+		File temp = null;
+		try {
+			final File indexFolder = sidecar.getAbsoluteFile().getParentFile();
+			PrivateFiles.mkdirs(indexFolder.getParentFile());
+			PrivateFiles.mkdirs(indexFolder);
+			temp = PrivateFiles.createTemp(sidecar);
+			write(temp);
+			PrivateFiles.replace(temp, sidecar);
+			return true;
+		} catch (IOException e) {
+			if (temp != null) {
+				//noinspection ResultOfMethodCallIgnored
+				temp.delete();
+			}
+			return false;
+		}
+	}
+
+	private void write(File temp) throws IOException {
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeUTF(root.getCanonicalPath());
+			dos.writeInt(folders.size());
+			for (Map.Entry<String, Folder> keyed : folders.entrySet()) {
+				final Folder folder = keyed.getValue();
+				dos.writeUTF(keyed.getKey());
+				dos.writeLong(folder.lastModified);
+				dos.writeInt(folder.files.size());
+				for (Map.Entry<String, Entry> file : folder.files.entrySet()) {
+					dos.writeUTF(file.getKey());
+					dos.writeLong(file.getValue().length);
+					dos.writeLong(file.getValue().lastModified);
+				}
+				dos.writeInt(folder.folders.size());
+				for (String name : folder.folders) {
+					dos.writeUTF(name);
+				}
+			}
+		}
+	}
+}
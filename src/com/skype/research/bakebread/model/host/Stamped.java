@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import java.io.File;
+
+/**
+ * A value derived from a host file, along with the length and time of the file it was derived from,
+ * as {@link ElfCache} keeps them. A file contained in an archive or an image goes by its container's time.
+ */
+final class Stamped<T> {
+	final T value;
+	private final long length;
+	private final long lastModified;
+
+	/**
+	 * @param file stamped now, i.e. before the value is derived, so that a change meanwhile is noticed later
+	 */
+	Stamped(File file, T value) {
+		this.value = value;
+		this.length = file.length();
+		this.lastModified = file.lastModified();
+	}
+
+	/**
+	 * @return whether the file is as it was when stamped
+	 */
+	boolean isCurrent(File file) {
+		return file.length() == length && file.lastModified() == lastModified;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Files stored uncompressed in a ZIP archive, by their place in it, as read from its central directory.
+ * MOREINFO ZIP64 archives are not supported; APKs stay well below 4GB
+ */
+final class ZipDirectory {
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int END_LENGTH = 22;
+	private static final int MAX_COMMENT = 0xffff;
+	private static final int ENTRY_SIGNATURE = 0x02014b50;
+	private static final int ENTRY_LENGTH = 46;
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+	private static final int LOCAL_LENGTH = 30;
+	private static final int STORED = 0;
+
+	private final NavigableMap<Long, ZipEntryFile> stored = new TreeMap<>(); // by data offset
+
+	private ZipDirectory() {
+	}
+
+	/**
+	 * @return the stored entries of the archive, or null if it is not a ZIP archive
+	 */
+	static ZipDirectory read(File archive) throws IOException {
+		try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+			final long length = channel.size();
+			if (length < END_LENGTH) {
+				return null;
+			}
+			final int tailLength = (int) Math.min(length, END_LENGTH + MAX_COMMENT);
+			final ByteBuffer tail = readFully(channel, length - tailLength, tailLength);
+			int end = tailLength - END_LENGTH;
+			while (end >= 0 && tail.getInt(end) != END_SIGNATURE) {
+				end--;
+			}
+			if (end < 0) {
+				return null;
+			}
+			final int entryCount = tail.getShort(end + 10) & 0xffff;
+			final long directoryLength = tail.getInt(end + 12) & 0xffffffffL;
+			final long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+			final ByteBuffer directory = readFully(channel, directoryOffset, (int) directoryLength);
+			final ZipDirectory zipDirectory = new ZipDirectory();
+			for (int i = 0; i < entryCount && directory.remaining() >= ENTRY_LENGTH; i++) {
+				final int entry = directory.position();
+				if (directory.getInt(entry) != ENTRY_SIGNATURE) {
+					break;
+				}
+				final int method = directory.getShort(entry + 10) & 0xffff;
+				final long compressedSize = directory.getInt(entry + 20) & 0xffffffffL;
+				final long size = directory.getInt(entry + 24) & 0xffffffffL;
+				final int nameLength = directory.getShort(entry + 28) & 0xffff;
+				final int extraLength = directory.getShort(entry + 30) & 0xffff;
+				final int commentLength = directory.getShort(entry + 32) & 0xffff;
+				final long localOffset = directory.getInt(entry + 42) & 0xffffffffL;
+				final byte[] name = new byte[nameLength];
+				directory.position(entry + ENTRY_LENGTH);
+				directory.get(name);
+				directory.position(directory.position() + extraLength + commentLength);
+				// deflated entries cannot be read in place
+				if (method == STORED && compressedSize == size) {
+					final String entryName = new String(name, StandardCharsets.UTF_8);
+					// the data follows a local header, whose extra field may differ from the central one
+					final ByteBuffer local = readFully(channel, localOffset, LOCAL_LENGTH);
+					if (local.getInt(0) == LOCAL_SIGNATURE) {
+						final long dataOffset = localOffset + LOCAL_LENGTH
+								+ (local.getShort(26) & 0xffff) + (local.getShort(28) & 0xffff);
+						zipDirectory.stored.put(dataOffset, new ZipEntryFile(archive, entryName, dataOffset, size));
+					}
+				}
+			}
+			return zipDirectory;
+		}
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Truncated archive");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * @param archiveOffset an offset into the archive
+	 * @return the stored entry whose data contains the offset, or null if there is none
+	 */
+	ZipEntryFile find(long archiveOffset) {
+		final Map.Entry<Long, ZipEntryFile> floor = stored.floorEntry(archiveOffset);
+		if (floor == null || archiveOffset >= floor.getKey() + floor.getValue().length()) {
+			return null;
+		}
+		return floor.getValue();
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.host;
+
+import com.skype.research.bakebread.model.memory.MapInfo;
+import com.skype.research.bakebread.nio.SliceChannel;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file stored uncompressed in a ZIP archive, such as a native library in an APK, named "ARCHIVE!/ENTRY".
+ * Its contents are a range of the archive, read in place.
+ */
+public class ZipEntryFile extends File implements ContainedFile {
+	public static final String SEPARATOR = "!/";
+	private static final long serialVersionUID = 1L;
+
+	private final File archive;
+	private final String entryName;
+	private final long dataOffset;
+	private final long size;
+
+	public ZipEntryFile(File archive, String entryName, long dataOffset, long size) {
+		super(archive.getPath() + SEPARATOR + entryName);
+		this.archive = archive;
+		this.entryName = entryName;
+		this.dataOffset = dataOffset;
+		this.size = size;
+	}
+
+	public File getArchive() {
+		return archive;
+	}
+
+	@Override
+	public File getContainer() {
+		return archive;
+	}
+
+	public String getEntryName() {
+		return entryName;
+	}
+
+	public long getDataOffset() {
+		return dataOffset;
+	}
+
+	@Override
+	public FileChannel slice(FileChannel containerChannel) {
+		return new SliceChannel(containerChannel, dataOffset, size);
+	}
+
+	/**
+	 * @param archiveInfo a mapping of the archive, at an offset in this entry
+	 * @return the same mapping of this entry, at an offset in the entry
+	 */
+	public MapInfo rebase(final MapInfo archiveInfo) {
+		return new MapInfo() {
+			@Override
+			public long getFileOffset() {
+				return archiveInfo.getFileOffset() - dataOffset;
+			}
+
+			@Override
+			public short[] getPartition() {
+				return archiveInfo.getPartition();
+			}
+
+			@Override
+			public long getFd() {
+				return archiveInfo.getFd();
+			}
+
+			@Override
+			public String getName() {
+				return archiveInfo.getName();
+			}
+
+			@Override
+			public long getStartAddress() {
+				return archiveInfo.getStartAddress();
+			}
+
+			@Override
+			public long getEndAddress() {
+				return archiveInfo.getEndAddress();
+			}
+
+			@Override
+			public boolean isReadable() {
+				return archiveInfo.isReadable();
+			}
+
+			@Override
+			public boolean isWritable() {
+				return archiveInfo.isWritable();
+			}
+
+			@Override
+			public boolean isRunnable() {
+				return archiveInfo.isRunnable();
+			}
+
+			@Override
+			public boolean isShared() {
+				return archiveInfo.isShared();
+			}
+
+			@Override
+			public String toString() {
+				return archiveInfo.toString();
+			}
+		};
+	}
+
+	@Override
+	public long length() {
+		return size;
+	}
+
+	@Override
+	public long lastModified() {
+		return archive.lastModified();
+	}
+
+	@Override
+	public boolean exists() {
+		return archive.exists();
+	}
+
+	@Override
+	public boolean isFile() {
+		return archive.isFile();
+	}
+
+	@Override
+	public boolean isDirectory() {
+		return false;
+	}
+
+	@Override
+	public boolean canRead() {
+		return archive.canRead();
+	}
+}
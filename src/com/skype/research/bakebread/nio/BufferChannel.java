@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only FileChannel whose position is that of a ByteBuffer mapping the whole file.
+ * Lets Marshaled POJOs navigate a mapped file exactly as they would navigate the file.
+ */
+public class BufferChannel extends ReadOnlyChannel {
+	private final ByteBuffer buffer;
+	private final FileChannel backing;
+
+	/**
+	 * @param buffer  file contents starting at offset 0; shared, not duplicated
+	 * @param backing the mapped file, for mapping and zero-copy transfer; may be null
+	 */
+	public BufferChannel(ByteBuffer buffer, FileChannel backing) {
+		this.buffer = buffer;
+		this.backing = backing;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		int read = read(dst, buffer.position());
+		if (read > 0) {
+			buffer.position(buffer.position() + read);
+		}
+		return read;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		if (position >= buffer.limit()) {
+			return -1;
+		}
+		final ByteBuffer src = buffer.duplicate();
+		src.position((int) position);
+		final int count = Math.min(src.remaining(), dst.remaining());
+		src.limit(src.position() + count);
+		dst.put(src);
+		return count;
+	}
+
+	@Override
+	public long position() {
+		return buffer.position();
+	}
+
+	@Override
+	public FileChannel position(long newPosition) throws IOException {
+		if (newPosition < 0 || newPosition > buffer.limit()) {
+			throw new EOFException(String.format("Position %x outside of %x", newPosition, buffer.limit()));
+		}
+		buffer.position((int) newPosition);
+		return this;
+	}
+
+	@Override
+	public long size() {
+		return buffer.limit();
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		if (backing != null) {
+			return backing.transferTo(position, count, target);
+		}
+		if (position >= buffer.limit()) {
+			return 0;
+		}
+		final ByteBuffer src = buffer.duplicate();
+		src.position((int) position);
+		src.limit((int) Math.min(src.limit(), position + count));
+		long transferred = 0;
+		while (src.hasRemaining()) {
+			transferred += target.write(src);
+		}
+		return transferred;
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		return backing == null ? super.map(mode, position, size) : backing.map(mode, position, size);
+	}
+
+	@Override
+	public FileLock lock(long position, long size, boolean shared) throws IOException {
+		return backing == null ? super.lock(position, size, shared) : backing.lock(position, size, shared);
+	}
+
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+		return backing == null ? super.tryLock(position, size, shared) : backing.tryLock(position, size, shared);
+	}
+}
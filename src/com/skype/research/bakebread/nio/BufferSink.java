@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A channel filling a caller's buffer, to read {@link Memory} contents in place.
+ */
+public class BufferSink implements WritableByteChannel {
+	private final ByteBuffer dst;
+
+	public BufferSink(ByteBuffer dst) {
+		this.dst = dst;
+	}
+
+	@Override
+	public int write(ByteBuffer src) {
+		final int count = src.remaining();
+		dst.put(src);
+		return count;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return true;
+	}
+
+	@Override
+	public void close() {
+	}
+}
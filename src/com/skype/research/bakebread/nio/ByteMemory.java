@@ -41,8 +41,11 @@ public class ByteMemory implements Memory {
 
 	@Override
 	public long writeTo(WritableByteChannel channel) throws IOException {
-		int all = buf.capacity(), cum = 0;
-		do cum += channel.write(buf); while (cum < all);
+		// own position, so that the same memory can be written again
+		final ByteBuffer src = buf.duplicate();
+		src.clear();
+		int all = src.capacity(), cum = 0;
+		do cum += channel.write(src); while (cum < all);
 		return all;
 	}
 
@@ -51,8 +54,10 @@ public class ByteMemory implements Memory {
 		if (Areas.length(from) != buf.capacity()) {
 			throw new IllegalArgumentException("Original length mismatch");
 		}
-		buf.position((int) (to.getStartAddress() - from.getStartAddress()));
-		buf.limit((int) (to.getEndAddress() - from.getStartAddress()));
-		return new ByteMemory(buf.slice());
+		final ByteBuffer src = buf.duplicate();
+		src.clear();
+		src.position((int) (to.getStartAddress() - from.getStartAddress()));
+		src.limit((int) (to.getEndAddress() - from.getStartAddress()));
+		return new ByteMemory(src.slice());
 	}
 }
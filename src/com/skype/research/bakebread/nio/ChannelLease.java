@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only view of a shared channel, with a position of its own.
+ * Closing the view hands the channel back to its owner instead of closing it.
+ */
+public class ChannelLease extends ReadOnlyChannel {
+	private final FileChannel channel;
+	private final Closeable release;
+
+	/**
+	 * @param channel the shared channel, only read positionally
+	 * @param release called once the view is closed, or null if nobody keeps count
+	 */
+	public ChannelLease(FileChannel channel, Closeable release) {
+		this.channel = channel;
+		this.release = release;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		return channel.read(dst, position);
+	}
+
+	@Override
+	public long size() throws IOException {
+		return channel.size();
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		return channel.transferTo(position, count, target);
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		return channel.map(mode, position, size);
+	}
+
+	@Override
+	protected void implCloseChannel() throws IOException {
+		if (release != null) {
+			release.close();
+		}
+	}
+}
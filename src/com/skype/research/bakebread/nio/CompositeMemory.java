@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import com.skype.research.bakebread.model.analysis.Areas;
+import com.skype.research.bakebread.model.memory.MemArea;
+import com.skype.research.bakebread.model.memory.MemData;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Address-contiguous memory areas written as one.
+ */
+public class CompositeMemory implements Memory {
+	private final List<MemData> parts;
+
+	/**
+	 * @param parts contiguous, in address order
+	 */
+	public CompositeMemory(List<? extends MemData> parts) {
+		this.parts = new ArrayList<>(parts);
+	}
+
+	@Override
+	public long writeTo(OutputStream outputStream) throws IOException {
+		long written = 0;
+		for (MemData part : parts) {
+			written += part.getData().writeTo(outputStream);
+		}
+		return written;
+	}
+
+	@Override
+	public long writeTo(WritableByteChannel channel) throws IOException {
+		long written = 0;
+		for (MemData part : parts) {
+			written += part.getData().writeTo(channel);
+		}
+		return written;
+	}
+
+	@Override
+	public Memory transform(MemArea from, MemArea to) {
+		if (from.getStartAddress() != parts.get(0).getStartAddress()
+				|| from.getEndAddress() != parts.get(parts.size() - 1).getEndAddress()) {
+			throw new IllegalArgumentException("Original bounds mismatch");
+		}
+		final List<MemData> trimmed = new ArrayList<>();
+		for (MemData part : parts) {
+			final MemArea common = Areas.trim(part, to);
+			if (!Areas.isEmpty(common)) {
+				trimmed.add(part.trimTo(common));
+			}
+		}
+		return trimmed.size() == 1 ? trimmed.get(0).getData() : new CompositeMemory(trimmed);
+	}
+
+	@Override
+	public String toString() {
+		return "composite:" + parts.size();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only FileChannel view of a file scattered over another one, e.g. of a file in a
+ * file system image. The backing channel is only read positionally, and is neither moved nor closed.
+ */
+public class ExtentChannel extends ReadOnlyChannel {
+	private static final int FILL_BUFFER = 1 << 16; // holes and fills are copied through it
+	private final FileChannel backing;
+	private final ExtentMap extents;
+	private final long size;
+
+	public ExtentChannel(FileChannel backing, ExtentMap extents, long size) {
+		this.backing = backing;
+		this.extents = extents;
+		this.size = size;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		if (position >= size) {
+			return -1;
+		}
+		final int start = dst.position();
+		final int limit = dst.limit();
+		try {
+			while (dst.hasRemaining() && position < size) {
+				final int index = extents.floor(position);
+				final long end;
+				if (index >= 0 && position < extents.getEnd(index)) {
+					end = Math.min(size, extents.getEnd(index));
+				} else {
+					end = index + 1 < extents.getCount() ? Math.min(size, extents.getStart(index + 1)) : size;
+				}
+				final int count = (int) Math.min(dst.remaining(), end - position);
+				dst.limit(dst.position() + count);
+				if (index < 0 || position >= extents.getEnd(index)) {
+					while (dst.hasRemaining()) {
+						dst.put((byte) 0); // a hole
+					}
+				} else if (extents.isFill(index)) {
+					final int pattern = extents.getPattern(index);
+					for (long offset = position - extents.getStart(index); dst.hasRemaining(); offset++) {
+						dst.put((byte) (pattern >>> ((offset & 3) << 3)));
+					}
+				} else {
+					final long physical = extents.getPhysical(index) + position - extents.getStart(index);
+					while (dst.hasRemaining()) {
+						if (backing.read(dst, physical + count - dst.remaining()) < 0) {
+							throw new IOException("Extent beyond the end of the backing file");
+						}
+					}
+				}
+				dst.limit(limit);
+				position += count;
+			}
+		} finally {
+			dst.limit(limit);
+		}
+		return dst.position() - start;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		final long cutoff = Math.min(size, position + count);
+		final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(FILL_BUFFER, Math.max(0, cutoff - position)));
+		long transferred = 0;
+		while (position + transferred < cutoff) {
+			final long at = position + transferred;
+			final int index = extents.floor(at);
+			if (index >= 0 && at < extents.getEnd(index) && !extents.isFill(index)) {
+				// backed data go directly
+				final long length = Math.min(cutoff, extents.getEnd(index)) - at;
+				final long sent = backing.transferTo(extents.getPhysical(index) + at - extents.getStart(index), length, target);
+				if (sent <= 0) {
+					break;
+				}
+				transferred += sent;
+			} else {
+				buffer.clear().limit((int) Math.min(buffer.capacity(), cutoff - at));
+				read(buffer, at);
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					transferred += target.write(buffer);
+				}
+			}
+		}
+		return transferred;
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		final int index = extents.floor(position);
+		if (index >= 0 && !extents.isFill(index) && position + size <= extents.getEnd(index)) {
+			return backing.map(mode, extents.getPhysical(index) + position - extents.getStart(index), size);
+		}
+		return super.map(mode, position, size); // holes and fills are not mappable
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import java.util.Arrays;
+
+/**
+ * Ranges of a logical file, in ascending order, each stored at a physical offset of a backing
+ * file or filled with a repeated 32-bit pattern. Whatever is not covered reads as zeroes.
+ */
+public class ExtentMap {
+	private static final long FILL = -1;
+
+	private long[] logical = new long[8];
+	private long[] physical = new long[8];
+	private long[] length = new long[8];
+	private int[] pattern = new int[8];
+	private int count;
+
+	/**
+	 * @param logical  offset in the logical file, past the extents added so far
+	 * @param physical offset in the backing file
+	 * @param length   extent length
+	 */
+	public void add(long logical, long physical, long length) {
+		if (length <= 0) {
+			return;
+		}
+		if (count > 0 && this.physical[count - 1] != FILL
+				&& getEnd(count - 1) == logical
+				&& this.physical[count - 1] + this.length[count - 1] == physical) {
+			this.length[count - 1] += length; // contiguous
+			return;
+		}
+		append(logical, physical, length, 0);
+	}
+
+	/**
+	 * @param logical offset in the logical file, past the extents added so far
+	 * @param length  extent length
+	 * @param pattern little endian value to repeat from the start of the extent
+	 */
+	public void addFill(long logical, long length, int pattern) {
+		if (length > 0 && pattern != 0) {
+			append(logical, FILL, length, pattern);
+		}
+	}
+
+	private void append(long logical, long physical, long length, int pattern) {
+		if (count > 0 && logical < getEnd(count - 1)) {
+			throw new IllegalArgumentException("Extents out of order at " + logical);
+		}
+		if (count == this.logical.length) {
+			final int capacity = count * 2;
+			this.logical = Arrays.copyOf(this.logical, capacity);
+			this.physical = Arrays.copyOf(this.physical, capacity);
+			this.length = Arrays.copyOf(this.length, capacity);
+			this.pattern = Arrays.copyOf(this.pattern, capacity);
+		}
+		this.logical[count] = logical;
+		this.physical[count] = physical;
+		this.length[count] = length;
+		this.pattern[count] = pattern;
+		count++;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the index of the last extent starting at or before the position, or -1 if there is none
+	 */
+	public int floor(long position) {
+		int index = Arrays.binarySearch(logical, 0, count, position);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	public long getStart(int index) {
+		return logical[index];
+	}
+
+	public long getEnd(int index) {
+		return logical[index] + length[index];
+	}
+
+	public boolean isFill(int index) {
+		return physical[index] == FILL;
+	}
+
+	public long getPhysical(int index) {
+		return physical[index];
+	}
+
+	public int getPattern(int index) {
+		return pattern[index];
+	}
+}
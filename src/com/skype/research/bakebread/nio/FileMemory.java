@@ -6,13 +6,9 @@
 
 package com.skype.research.bakebread.nio;
 
-import com.skype.research.bakebread.io.AutoClose;
 import com.skype.research.bakebread.model.analysis.Areas;
 import com.skype.research.bakebread.model.memory.MemArea;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
@@ -34,13 +30,7 @@ public class FileMemory implements Memory {
 		this.length = length;
 	}
 	
-	public FileMemory(File file, long offset, long length, AutoClose autoClose) {
-		channelSource = new ObtainedChannel(file, autoClose);
-		this.offset = offset;
-		this.length = length;
-	}
-	
-	private FileMemory(ChannelSource channelSource, long offset, long length) {
+	public FileMemory(ChannelSource channelSource, long offset, long length) {
 		this.channelSource = channelSource;
 		this.offset = offset;
 		this.length = length;
@@ -48,26 +38,37 @@ public class FileMemory implements Memory {
 
 	@Override
 	public long writeTo(OutputStream outputStream) throws IOException {
-		FileChannel channel = channelSource.open();
-		channel.position(offset);
-		byte[] tmp = new byte[(int) Math.min(BLOCK_SIZE, length)];
-		ByteBuffer buf = ByteBuffer.wrap(tmp);
-		long transferred = 0;
-		while (transferred < length) {
-			buf.clear().limit((int) Math.min(length - transferred, buf.capacity()));
-			int payload = channel.read(buf);
-			if (payload < 0) { // paranoid
-				break;
+		try (FileChannel channel = channelSource.open()) { // may be shared, read it positionally
+			byte[] tmp = new byte[(int) Math.min(BLOCK_SIZE, length)];
+			ByteBuffer buf = ByteBuffer.wrap(tmp);
+			long transferred = 0;
+			while (transferred < length) {
+				buf.clear().limit((int) Math.min(length - transferred, buf.capacity()));
+				int payload = channel.read(buf, offset + transferred);
+				if (payload < 0) { // paranoid
+					break;
+				}
+				outputStream.write(tmp, 0, payload);
+				transferred += payload;
 			}
-			outputStream.write(tmp, 0, payload);
-			transferred += payload;
+			return transferred;
 		}
-		return transferred;
 	}
 
 	@Override
 	public long writeTo(WritableByteChannel channel) throws IOException {
-		return channelSource.open().transferTo(offset, length, channel);
+		try (FileChannel source = channelSource.open()) {
+			// a single transfer may stop short, e.g. at a pipe or past 2G
+			long transferred = 0;
+			while (transferred < length) {
+				final long count = source.transferTo(offset + transferred, length - transferred, channel);
+				if (count <= 0 && offset + transferred >= source.size()) {
+					break; // the file is shorter than mapped
+				}
+				transferred += count;
+			}
+			return transferred;
+		}
 	}
 
 	@Override
@@ -82,8 +83,8 @@ public class FileMemory implements Memory {
 		return new FileMemory(channelSource, adjustedOffset, Areas.length(to));
 	}
 
-	private interface ChannelSource {
-		FileChannel open() throws FileNotFoundException;
+	public interface ChannelSource {
+		FileChannel open() throws IOException; // close when done; a shared channel is only handed back
 	}
 
 	private static class ProvidedChannel implements ChannelSource {
@@ -95,7 +96,7 @@ public class FileMemory implements Memory {
 
 		@Override
 		public FileChannel open() {
-			return channel;
+			return new ChannelLease(channel, null); // belongs to whoever has provided it
 		}
 
 		@Override
@@ -104,30 +105,6 @@ public class FileMemory implements Memory {
 		}
 	}
 
-	private static class ObtainedChannel implements ChannelSource {
-		private final File file;
-		private final AutoClose autoClose;
-		private FileChannel channel;
-
-		private ObtainedChannel(File file, AutoClose autoClose) {
-			this.file = file;
-			this.autoClose = autoClose;
-		}
-
-		@Override
-		public synchronized FileChannel open() throws FileNotFoundException {
-			if (channel == null) {
-				channel = autoClose.register(new FileInputStream(file).getChannel());
-			}
-			return channel;
-		}
-
-		@Override
-		public String toString() {
-			return file.getName();
-		}
-	}
-
 	@Override
 	public String toString() {
 		return String.format("file:%s@%x+%x", channelSource.toString(), offset, length);
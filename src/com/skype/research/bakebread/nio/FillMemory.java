@@ -55,6 +55,18 @@ public class FillMemory implements Memory {
 		return writeTo(new ChannelSink(channel));
 	}
 
+	/**
+	 * @return true if the pattern is all zeros, i.e. what a file system hole reads as
+	 */
+	public boolean isBlank() {
+		for (byte b : pattern) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public Memory transform(MemArea from, MemArea to) {
 		return new FillMemory(pattern, to);
@@ -80,6 +92,8 @@ public class FillMemory implements Memory {
 	
 	private class ChannelSink implements Sink {
 		private final WritableByteChannel channel;
+		// own limits, so that loads sharing a pattern can be written concurrently
+		private final ByteBuffer buf = FillMemory.this.buf.duplicate();
 
 		public ChannelSink(WritableByteChannel channel) {
 			this.channel = channel;
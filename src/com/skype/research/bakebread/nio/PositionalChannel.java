@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes to a FileChannel at a private position, leaving the channel position alone.
+ * Several of these can fill disjoint ranges of one file concurrently.
+ */
+public class PositionalChannel implements WritableByteChannel {
+	private final FileChannel target;
+	private long position;
+
+	public PositionalChannel(FileChannel target, long position) {
+		this.target = target;
+		this.position = position;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		final int written = target.write(src, position);
+		position += written;
+		return written;
+	}
+
+	public long position() {
+		return position;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return target.isOpen();
+	}
+
+	@Override
+	public void close() {
+		// the target is not ours
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A FileChannel view of data that can be read at random but never written.
+ * Sequential reads are expressed through positional reads.
+ */
+public abstract class ReadOnlyChannel extends FileChannel {
+	private long position;
+
+	@Override
+	public synchronized int read(ByteBuffer dst) throws IOException {
+		int read = read(dst, position);
+		if (read > 0) {
+			position += read;
+		}
+		return read;
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+		long total = 0;
+		for (int i = offset; i < offset + length; ++i) {
+			int read = read(dsts[i]);
+			if (read < 0) {
+				return total == 0 ? -1 : total;
+			}
+			total += read;
+		}
+		return total;
+	}
+
+	@Override
+	public synchronized long position() {
+		return position;
+	}
+
+	@Override
+	public synchronized FileChannel position(long newPosition) throws IOException {
+		if (newPosition < 0) {
+			throw new IllegalArgumentException(Long.toString(newPosition));
+		}
+		position = newPosition;
+		return this;
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		throw new UnsupportedOperationException("Not backed by a mappable file");
+	}
+
+	@Override
+	public int write(ByteBuffer src) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public int write(ByteBuffer src, long position) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public FileChannel truncate(long size) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long transferFrom(ReadableByteChannel src, long position, long count) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public void force(boolean metaData) {
+		// nothing to flush
+	}
+
+	@Override
+	public FileLock lock(long position, long size, boolean shared) throws IOException {
+		throw new UnsupportedOperationException("Not backed by a lockable file");
+	}
+
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+		throw new UnsupportedOperationException("Not backed by a lockable file");
+	}
+
+	@Override
+	protected void implCloseChannel() throws IOException {
+		// the underlying data belongs to whoever has opened it
+	}
+}
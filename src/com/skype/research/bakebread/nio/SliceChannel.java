@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only FileChannel view of a range of another one, e.g. of a file stored in an archive.
+ * The backing channel is only read positionally, and is neither moved nor closed.
+ */
+public class SliceChannel extends ReadOnlyChannel {
+	private final FileChannel backing;
+	private final long offset;
+	private final long size;
+
+	public SliceChannel(FileChannel backing, long offset, long size) {
+		this.backing = backing;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		if (position >= size) {
+			return -1;
+		}
+		final int limit = dst.limit();
+		if (dst.remaining() > size - position) {
+			dst.limit(dst.position() + (int) (size - position));
+		}
+		try {
+			return backing.read(dst, offset + position);
+		} finally {
+			dst.limit(limit);
+		}
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		if (position >= size) {
+			return 0;
+		}
+		return backing.transferTo(offset + position, Math.min(count, size - position), target);
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		if (position + size > this.size) {
+			throw new IllegalArgumentException("Beyond the slice");
+		}
+		return backing.map(mode, offset + position, size);
+	}
+}
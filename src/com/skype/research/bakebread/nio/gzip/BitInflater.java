@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio.gzip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * A gzip (RFC 1952) decoder that can stop at deflate block boundaries and resume from them.
+ * java.util.zip.Inflater cannot: it neither exposes bit positions nor accepts them.
+ */
+final class BitInflater {
+	static final int WINDOW = 32768;
+	private static final int WINDOW_MASK = WINDOW - 1;
+
+	private static final int[] LEN_BASE = {
+			3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+			35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+	private static final int[] LEN_EXTRA = {
+			0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+			3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+	private static final int[] DIST_BASE = {
+			1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+			257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+	private static final int[] DIST_EXTRA = {
+			0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+			7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+	private static final int[] CODE_LENGTH_ORDER = {
+			16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+	private static final Huffman FIXED_LEN = new Huffman(288);
+	private static final Huffman FIXED_DIST = new Huffman(30);
+
+	static {
+		final short[] lengths = new short[288];
+		for (int i = 0; i < 288; i++) {
+			lengths[i] = (short) (i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8);
+		}
+		FIXED_LEN.build(lengths, 0, 288);
+		for (int i = 0; i < 30; i++) {
+			lengths[i] = 5;
+		}
+		FIXED_DIST.build(lengths, 0, 30);
+	}
+
+	private enum State {
+		MEMBER,  // expecting a gzip member header or the end of input
+		BLOCK,   // expecting a deflate block header; a resumable point
+		STORED,  // inside an uncompressed block
+		CODES,   // inside a Huffman-coded block
+		TRAILER, // expecting CRC32 and ISIZE
+		END,
+	}
+
+	private final FileChannel source;
+	private final ByteBuffer input = ByteBuffer.allocate(1 << 16);
+	private long inputEnd; // source offset following the last byte loaded
+	private long bits;
+	private int bitCount;
+
+	private final byte[] window = new byte[WINDOW];
+	private long output; // uncompressed bytes produced
+
+	private State state;
+	private boolean lastBlock;
+	private boolean stopAtBlocks;
+	private CRC32 crc; // of the current member, when verifying
+	private long memberStart; // output at the start of the current member
+	private int storedLeft;
+	private Huffman lenCode, distCode;
+	private int copyLeft, copyDist;
+
+	private final Huffman dynLen = new Huffman(288);
+	private final Huffman dynDist = new Huffman(30);
+	private final Huffman dynCodeLen = new Huffman(19);
+	private final short[] lengths = new short[286 + 30];
+
+	/**
+	 * Starts at the very beginning of a gzip file.
+	 */
+	BitInflater(FileChannel source) {
+		this.source = source;
+		input.limit(0);
+		state = State.MEMBER;
+	}
+
+	/**
+	 * Resumes at a block boundary recorded earlier with {@link #bitPosition()} and {@link #dictionary()}.
+	 */
+	BitInflater(FileChannel source, long bitPosition, long output, byte[] dictionary) throws IOException {
+		this.source = source;
+		input.limit(0);
+		inputEnd = bitPosition >>> 3;
+		final int skip = (int) (bitPosition & 7);
+		if (skip != 0) {
+			bits(skip);
+		}
+		this.output = output;
+		for (int i = 0; i < dictionary.length; i++) {
+			window[(int) (output - dictionary.length + i) & WINDOW_MASK] = dictionary[i];
+		}
+		state = State.BLOCK;
+	}
+
+	void setStopAtBlocks(boolean stopAtBlocks) {
+		this.stopAtBlocks = stopAtBlocks;
+	}
+
+	/**
+	 * Checks the CRC32 and ISIZE of every member against its contents. Only from the very beginning.
+	 */
+	void setVerify(boolean verify) {
+		crc = verify ? new CRC32() : null;
+	}
+
+	boolean atBlockBoundary() {
+		return state == State.BLOCK;
+	}
+
+	long output() {
+		return output;
+	}
+
+	long bitPosition() {
+		return (inputEnd - input.remaining()) * 8 - bitCount;
+	}
+
+	byte[] dictionary() {
+		final int length = (int) Math.min(output, WINDOW);
+		final byte[] dictionary = new byte[length];
+		for (int i = 0; i < length; i++) {
+			dictionary[i] = window[(int) (output - length + i) & WINDOW_MASK];
+		}
+		return dictionary;
+	}
+
+	long skip(long count) throws IOException {
+		final byte[] scratch = new byte[(int) Math.min(count, 1 << 14)];
+		long skipped = 0;
+		while (skipped < count) {
+			final int read = read(scratch, 0, (int) Math.min(scratch.length, count - skipped));
+			if (read < 0) {
+				break;
+			}
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	/**
+	 * @return bytes produced, -1 at the end of input; with stopAtBlocks, returns early at block boundaries
+	 */
+	int read(byte[] dst, int offset, int length) throws IOException {
+		int pos = offset;
+		int checked = offset;
+		final int end = offset + length;
+		while (pos < end) {
+			switch (state) {
+				case MEMBER:
+					state = readMemberHeader() ? State.BLOCK : State.END;
+					break;
+				case BLOCK:
+					if (stopAtBlocks && pos > offset) {
+						return produced(dst, offset, checked, pos);
+					}
+					readBlockHeader();
+					break;
+				case STORED:
+					pos = copyStored(dst, pos, end);
+					break;
+				case CODES:
+					pos = decodeCodes(dst, pos, end);
+					break;
+				case TRAILER:
+					bits(bitCount & 7);
+					final long crc32 = bits(32) & 0xffffffffL;
+					final long isize = bits(32) & 0xffffffffL; // modulo 2^32
+					if (crc != null) {
+						crc.update(dst, checked, pos - checked);
+						checked = pos;
+						if (((output - memberStart) & 0xffffffffL) != isize) {
+							throw new ZipException("Gzip member size mismatch at " + output);
+						}
+						if (crc.getValue() != crc32) {
+							throw new ZipException("Gzip member CRC32 mismatch at " + output);
+						}
+						crc.reset();
+					}
+					memberStart = output;
+					state = State.MEMBER;
+					break;
+				case END:
+					return pos == offset ? -1 : produced(dst, offset, checked, pos);
+			}
+		}
+		return produced(dst, offset, checked, pos);
+	}
+
+	private int produced(byte[] dst, int offset, int checked, int pos) {
+		if (crc != null) {
+			crc.update(dst, checked, pos - checked);
+		}
+		return pos - offset;
+	}
+
+	private int decodeCodes(byte[] dst, int pos, int end) throws IOException {
+		while (pos < end) {
+			if (copyLeft > 0) {
+				final int count = Math.min(copyLeft, end - pos);
+				for (int i = 0; i < count; i++) {
+					final byte b = window[(int) (output - copyDist) & WINDOW_MASK];
+					window[(int) output++ & WINDOW_MASK] = b;
+					dst[pos++] = b;
+				}
+				copyLeft -= count;
+				continue;
+			}
+			int symbol = decode(lenCode);
+			if (symbol < 256) {
+				window[(int) output++ & WINDOW_MASK] = (byte) symbol;
+				dst[pos++] = (byte) symbol;
+			} else if (symbol == 256) {
+				state = lastBlock ? State.TRAILER : State.BLOCK;
+				break;
+			} else {
+				symbol -= 257;
+				if (symbol >= LEN_BASE.length) {
+					throw new ZipException("Invalid length symbol");
+				}
+				copyLeft = LEN_BASE[symbol] + bits(LEN_EXTRA[symbol]);
+				symbol = decode(distCode);
+				if (symbol >= DIST_BASE.length) {
+					throw new ZipException("Invalid distance symbol");
+				}
+				copyDist = DIST_BASE[symbol] + bits(DIST_EXTRA[symbol]);
+				if (copyDist > output) {
+					throw new ZipException("Distance too far back");
+				}
+			}
+		}
+		return pos;
+	}
+
+	private int copyStored(byte[] dst, int pos, int end) throws IOException {
+		while (pos < end && storedLeft > 0) {
+			final byte b;
+			if (bitCount >= 8) {
+				b = (byte) bits(8);
+			} else {
+				final int next = nextByte();
+				if (next < 0) {
+					throw new EOFException("Truncated stored block");
+				}
+				b = (byte) next;
+			}
+			window[(int) output++ & WINDOW_MASK] = b;
+			dst[pos++] = b;
+			storedLeft--;
+		}
+		if (storedLeft == 0) {
+			state = lastBlock ? State.TRAILER : State.BLOCK;
+		}
+		return pos;
+	}
+
+	private void readBlockHeader() throws IOException {
+		lastBlock = bits(1) == 1;
+		switch (bits(2)) {
+			case 0:
+				bits(bitCount & 7);
+				final int length = bits(16);
+				if (length != (~bits(16) & 0xffff)) {
+					throw new ZipException("Stored block length mismatch");
+				}
+				storedLeft = length;
+				state = length == 0 ? (lastBlock ? State.TRAILER : State.BLOCK) : State.STORED;
+				break;
+			case 1:
+				lenCode = FIXED_LEN;
+				distCode = FIXED_DIST;
+				state = State.CODES;
+				break;
+			case 2:
+				readDynamicCodes();
+				lenCode = dynLen;
+				distCode = dynDist;
+				state = State.CODES;
+				break;
+			default:
+				throw new ZipException("Invalid block type");
+		}
+	}
+
+	private void readDynamicCodes() throws IOException {
+		final int lenCount = bits(5) + 257;
+		final int distCount = bits(5) + 1;
+		final int codeCount = bits(4) + 4;
+		if (lenCount > 286 || distCount > 30) {
+			throw new ZipException("Invalid code counts");
+		}
+		for (int i = 0; i < 19; i++) {
+			lengths[CODE_LENGTH_ORDER[i]] = (short) (i < codeCount ? bits(3) : 0);
+		}
+		if (dynCodeLen.build(lengths, 0, 19) != 0) {
+			throw new ZipException("Incomplete code length code");
+		}
+		int index = 0;
+		while (index < lenCount + distCount) {
+			int symbol = decode(dynCodeLen);
+			if (symbol < 16) {
+				lengths[index++] = (short) symbol;
+			} else {
+				short length = 0;
+				int repeat;
+				if (symbol == 16) {
+					if (index == 0) {
+						throw new ZipException("Repeat with no first length");
+					}
+					length = lengths[index - 1];
+					repeat = 3 + bits(2);
+				} else if (symbol == 17) {
+					repeat = 3 + bits(3);
+				} else {
+					repeat = 11 + bits(7);
+				}
+				if (index + repeat > lenCount + distCount) {
+					throw new ZipException("Too many lengths");
+				}
+				while (repeat-- > 0) {
+					lengths[index++] = length;
+				}
+			}
+		}
+		if (lengths[256] == 0) {
+			throw new ZipException("No end-of-block code");
+		}
+		checkCode(dynLen, dynLen.build(lengths, 0, lenCount), lenCount);
+		checkCode(dynDist, dynDist.build(lengths, lenCount, distCount), distCount);
+	}
+
+	private static void checkCode(Huffman code, int left, int symbolCount) throws ZipException {
+		// an incomplete code is only allowed for a single length-one code
+		if (left < 0 || left > 0 && symbolCount - code.count[0] != 1) {
+			throw new ZipException("Invalid literal/length or distance code");
+		}
+	}
+
+	private boolean readMemberHeader() throws IOException {
+		bits(bitCount & 7);
+		final int id1 = alignedByte();
+		final int id2 = id1 < 0 ? -1 : alignedByte();
+		if (id1 != 0x1f || id2 != 0x8b) {
+			if (output == 0) {
+				throw new ZipException("Not in GZIP format");
+			}
+			return false; // end of input, or trailing padding
+		}
+		if (requireByte() != 8) {
+			throw new ZipException("Unsupported compression method");
+		}
+		final int flags = requireByte();
+		skipBytes(6); // MTIME, XFL, OS
+		if ((flags & 4) != 0) {
+			skipBytes(requireByte() | requireByte() << 8);
+		}
+		if ((flags & 8) != 0) {
+			while (requireByte() != 0) ; // FNAME
+		}
+		if ((flags & 16) != 0) {
+			while (requireByte() != 0) ; // FCOMMENT
+		}
+		if ((flags & 2) != 0) {
+			skipBytes(2); // FHCRC
+		}
+		return true;
+	}
+
+	private int decode(Huffman code) throws IOException {
+		fill(Huffman.FAST_BITS);
+		final int entry = code.fast[(int) bits & Huffman.FAST_MASK];
+		if (entry != 0 && entry >>> 16 <= bitCount) {
+			bits >>>= entry >>> 16;
+			bitCount -= entry >>> 16;
+			return entry & 0xffff;
+		}
+		int value = 0, first = 0, index = 0;
+		for (int len = 1; len <= Huffman.MAX_BITS; len++) {
+			value |= bits(1);
+			final int count = code.count[len];
+			if (value - count < first) {
+				return code.symbol[index + value - first];
+			}
+			index += count;
+			first += count;
+			first <<= 1;
+			value <<= 1;
+		}
+		throw new ZipException("Invalid Huffman code");
+	}
+
+	private int bits(int count) throws IOException {
+		while (bitCount < count) {
+			final int next = nextByte();
+			if (next < 0) {
+				throw new EOFException("Truncated deflate stream");
+			}
+			bits |= (long) next << bitCount;
+			bitCount += 8;
+		}
+		final int value = (int) (bits & ((1L << count) - 1));
+		bits >>>= count;
+		bitCount -= count;
+		return value;
+	}
+
+	private void fill(int count) throws IOException {
+		while (bitCount < count) {
+			final int next = nextByte();
+			if (next < 0) {
+				return; // the slow path will complain if it matters
+			}
+			bits |= (long) next << bitCount;
+			bitCount += 8;
+		}
+	}
+
+	private int alignedByte() throws IOException {
+		return bitCount >= 8 ? bits(8) : nextByte();
+	}
+
+	private int requireByte() throws IOException {
+		return bits(8);
+	}
+
+	private void skipBytes(int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			bits(8);
+		}
+	}
+
+	private int nextByte() throws IOException {
+		if (!input.hasRemaining()) {
+			input.clear();
+			final int read = source.read(input, inputEnd);
+			input.flip();
+			if (read <= 0) {
+				return -1;
+			}
+			inputEnd += read;
+		}
+		return input.get() & 0xff;
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio.gzip;
+
+import com.skype.research.bakebread.nio.ReadOnlyChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A FileChannel view of the uncompressed contents, with a position of its own.
+ */
+class GzipChannel extends ReadOnlyChannel {
+	private final SeekableGzip gzip;
+
+	GzipChannel(SeekableGzip gzip) {
+		this.gzip = gzip;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		return gzip.read(dst, position);
+	}
+
+	@Override
+	public long size() {
+		return gzip.size();
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		return gzip.transferTo(position, count, target);
+	}
+}
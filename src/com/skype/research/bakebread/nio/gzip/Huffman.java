@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio.gzip;
+
+import java.util.Arrays;
+
+/**
+ * A canonical Huffman code as used by deflate (RFC 1951), with a lookup table for short codes.
+ * WISDOM: the slow path is that of Mark Adler's "puff" - it walks the code one bit at a time.
+ */
+final class Huffman {
+	static final int MAX_BITS = 15;
+	static final int FAST_BITS = 9;
+	static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
+	final short[] count = new short[MAX_BITS + 1]; // codes per length
+	final short[] symbol;                          // symbols ordered by code
+	final int[] fast = new int[1 << FAST_BITS];    // (length << 16 | symbol), 0 for longer codes
+	private final short[] offsets = new short[MAX_BITS + 1];
+
+	Huffman(int maxSymbols) {
+		symbol = new short[maxSymbols];
+	}
+
+	/**
+	 * @return 0 for a complete code, negative if over-subscribed, positive if incomplete
+	 */
+	int build(short[] lengths, int offset, int n) {
+		Arrays.fill(count, (short) 0);
+		for (int i = 0; i < n; i++) {
+			count[lengths[offset + i]]++;
+		}
+		Arrays.fill(fast, 0);
+		if (count[0] == n) {
+			return 0; // no codes; complete, but decoding fails
+		}
+		int left = 1;
+		for (int len = 1; len <= MAX_BITS; len++) {
+			left <<= 1;
+			left -= count[len];
+			if (left < 0) {
+				return left;
+			}
+		}
+		offsets[1] = 0;
+		for (int len = 1; len < MAX_BITS; len++) {
+			offsets[len + 1] = (short) (offsets[len] + count[len]);
+		}
+		for (int i = 0; i < n; i++) {
+			final short len = lengths[offset + i];
+			if (len != 0) {
+				symbol[offsets[len]++] = (short) i;
+			}
+		}
+		// canonical codes are assigned in symbol order within each length
+		int code = 0, index = 0;
+		for (int len = 1; len <= FAST_BITS; len++) {
+			for (int k = 0; k < count[len]; k++, code++) {
+				final int entry = len << 16 | symbol[index++];
+				// deflate packs codes starting from the most significant bit
+				for (int i = Integer.reverse(code) >>> (32 - len); i < fast.length; i += 1 << len) {
+					fast[i] = entry;
+				}
+			}
+			code <<= 1;
+		}
+		return left;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio.gzip;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A deflate block boundary: where it starts (in bits), what it produces (in bytes) and what precedes it.
+ */
+final class SeekPoint {
+	final long output;
+	final long bitPosition;
+	final int windowLength;
+	final byte[] packedWindow; // deflated to keep the index small
+
+	SeekPoint(long output, long bitPosition, int windowLength, byte[] packedWindow) {
+		this.output = output;
+		this.bitPosition = bitPosition;
+		this.windowLength = windowLength;
+		this.packedWindow = packedWindow;
+	}
+
+	static SeekPoint of(BitInflater inflater) {
+		final byte[] window = inflater.dictionary();
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(window);
+			deflater.finish();
+			final ByteArrayOutputStream packed = new ByteArrayOutputStream(window.length / 2);
+			final byte[] chunk = new byte[4096];
+			while (!deflater.finished()) {
+				packed.write(chunk, 0, deflater.deflate(chunk));
+			}
+			return new SeekPoint(inflater.output(), inflater.bitPosition(), window.length, packed.toByteArray());
+		} finally {
+			deflater.end();
+		}
+	}
+
+	byte[] window() throws ZipException {
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(packedWindow);
+			final byte[] window = new byte[windowLength];
+			int length = 0;
+			while (length < windowLength) {
+				final int inflated = inflater.inflate(window, length, windowLength - length);
+				if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+					throw new ZipException("Truncated seek point window");
+				}
+				length += inflated;
+			}
+			return window;
+		} catch (DataFormatException e) {
+			throw new ZipException(e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+}
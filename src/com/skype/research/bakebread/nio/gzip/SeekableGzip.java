@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio.gzip;
+
+import com.skype.research.bakebread.io.PrivateFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Random access to the contents of a gzip file through an index of deflate block boundaries.
+ * A read inflates from the closest preceding boundary only. The index can be kept in a sidecar file;
+ * a sidecar which cannot be read back is rebuilt. Indexing checks the CRC32 and size of every member.
+ */
+public class SeekableGzip implements Closeable {
+	public static final long SPAN = 1 << 20; // uncompressed bytes between seek points
+	private static final int PAGE = 1 << 16;
+	private static final int PAGES = 32;
+	private static final int SIDECAR_MAGIC = 0x4242475a; // "BBGZ"
+	private static final int SIDECAR_VERSION = 1;
+
+	private final FileChannel source;
+	private final List<SeekPoint> points;
+	private final long size;
+
+	// the last used position, cheap to move forward
+	private BitInflater cursor;
+	// recently inflated pages, for scattered small reads
+	private final Map<Long, byte[]> pages = new RecentPages();
+
+	private SeekableGzip(FileChannel source, List<SeekPoint> points, long size) {
+		this.source = source;
+		this.points = points;
+		this.size = size;
+	}
+
+	public static boolean isGzip(File file) throws IOException {
+		try (InputStream is = new FileInputStream(file)) {
+			return is.read() == 0x1f && is.read() == 0x8b;
+		}
+	}
+
+	public static File sidecarOf(File file) {
+		return new File(file.getParentFile(), file.getName() + ".seek");
+	}
+
+	/**
+	 * @param sidecar index file to reuse if current, or to create otherwise; null to index in memory only
+	 */
+	public static SeekableGzip open(File file, File sidecar) throws IOException {
+		final FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			SeekableGzip gzip = sidecar == null ? null : load(source, file, sidecar);
+			if (gzip == null) {
+				gzip = build(source);
+				if (sidecar != null) {
+					gzip.save(file, sidecar);
+				}
+			}
+			return gzip;
+		} catch (IOException | RuntimeException e) {
+			source.close();
+			throw e;
+		}
+	}
+
+	private static SeekableGzip build(FileChannel source) throws IOException {
+		final List<SeekPoint> points = new ArrayList<>();
+		final BitInflater inflater = new BitInflater(source);
+		inflater.setStopAtBlocks(true);
+		inflater.setVerify(true);
+		final byte[] scratch = new byte[PAGE];
+		long last = 0;
+		while (inflater.read(scratch, 0, scratch.length) >= 0) {
+			if (inflater.atBlockBoundary() && inflater.output() - last >= SPAN) {
+				points.add(SeekPoint.of(inflater));
+				last = inflater.output();
+			}
+		}
+		return new SeekableGzip(source, points, inflater.output());
+	}
+
+	/**
+	 * @return the index kept in the sidecar, or null if it is missing, stale, foreign, truncated or corrupt
+	 */
+	private static SeekableGzip load(FileChannel source, File file, File sidecar) {
+		if (!sidecar.isFile()) {
+			return null;
+		}
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+			if (dis.readInt() != SIDECAR_MAGIC || dis.readInt() != SIDECAR_VERSION
+					|| dis.readLong() != file.length() || dis.readLong() != file.lastModified()) {
+				return null; // stale or foreign
+			}
+			final long size = dis.readLong();
+			final int count = dis.readInt();
+			if (size < 0 || count < 0 || count > size / SPAN) {
+				return null;
+			}
+			final List<SeekPoint> points = new ArrayList<>(count);
+			long last = 0;
+			for (int i = 0; i < count; i++) {
+				final long output = dis.readLong();
+				final long bitPosition = dis.readLong();
+				final int windowLength = dis.readInt();
+				final int packedLength = dis.readInt();
+				if (output <= last || output > size || bitPosition < 0 || bitPosition >= file.length() * 8
+						|| windowLength < 0 || windowLength > BitInflater.WINDOW
+						|| packedLength < 0 || packedLength > 2 * BitInflater.WINDOW) {
+					return null;
+				}
+				final byte[] packedWindow = new byte[packedLength];
+				dis.readFully(packedWindow);
+				final SeekPoint point = new SeekPoint(output, bitPosition, windowLength, packedWindow);
+				point.window(); // inflates
+				points.add(point);
+				last = output;
+			}
+			return new SeekableGzip(source, points, size);
+		} catch (IOException | RuntimeException e) {
+			return null; // truncated or corrupt: index anew
+		}
+	}
+
+	private void save(File file, File sidecar) {
+		try {
+			final File temp = PrivateFiles.createTemp(sidecar);
+			try {
+				write(file, temp);
+				PrivateFiles.replace(temp, sidecar);
+			} finally {
+				//noinspection ResultOfMethodCallIgnored
+				temp.delete(); // moved unless failed
+			}
+		} catch (IOException e) {
+			// MOREINFO a read-only dump folder is legit; the index is merely not reused
+		}
+	}
+
+	private void write(File file, File sidecar) throws IOException {
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sidecar)))) {
+			dos.writeInt(SIDECAR_MAGIC);
+			dos.writeInt(SIDECAR_VERSION);
+			dos.writeLong(file.length());
+			dos.writeLong(file.lastModified());
+			dos.writeLong(size);
+			dos.writeInt(points.size());
+			for (SeekPoint point : points) {
+				dos.writeLong(point.output);
+				dos.writeLong(point.bitPosition);
+				dos.writeInt(point.windowLength);
+				dos.writeInt(point.packedWindow.length);
+				dos.write(point.packedWindow);
+			}
+		}
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public int getSeekPointCount() {
+		return points.size();
+	}
+
+	public FileChannel newChannel() {
+		return new GzipChannel(this);
+	}
+
+	public synchronized int read(ByteBuffer dst, long position) throws IOException {
+		if (position >= size) {
+			return -1;
+		}
+		final long pageIndex = position / PAGE;
+		byte[] page = pages.get(pageIndex);
+		if (page == null) {
+			final long pageStart = pageIndex * PAGE;
+			page = new byte[(int) Math.min(PAGE, size - pageStart)];
+			readFully(seek(pageStart), page, page.length);
+			pages.put(pageIndex, page);
+		}
+		final int offset = (int) (position % PAGE);
+		final int count = Math.min(dst.remaining(), page.length - offset);
+		dst.put(page, offset, count);
+		return count;
+	}
+
+	public synchronized long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		count = Math.min(count, size - position);
+		if (count <= 0) {
+			return 0;
+		}
+		final BitInflater inflater = seek(position);
+		final byte[] chunk = new byte[(int) Math.min(count, PAGE)];
+		final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+		long transferred = 0;
+		while (transferred < count) {
+			final int length = (int) Math.min(chunk.length, count - transferred);
+			readFully(inflater, chunk, length);
+			buffer.clear().limit(length);
+			while (buffer.hasRemaining()) {
+				target.write(buffer);
+			}
+			transferred += length;
+		}
+		return transferred;
+	}
+
+	private BitInflater seek(long position) throws IOException {
+		SeekPoint closest = null;
+		int lo = 0, hi = points.size() - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (points.get(mid).output <= position) {
+				closest = points.get(mid);
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		final long closestOutput = closest == null ? 0 : closest.output;
+		if (cursor == null || cursor.output() > position || cursor.output() < closestOutput) {
+			cursor = closest == null ? new BitInflater(source)
+					: new BitInflater(source, closest.bitPosition, closest.output, closest.window());
+		}
+		cursor.skip(position - cursor.output());
+		return cursor;
+	}
+
+	private static void readFully(BitInflater inflater, byte[] dst, int length) throws IOException {
+		int filled = 0;
+		while (filled < length) {
+			final int read = inflater.read(dst, filled, length - filled);
+			if (read < 0) {
+				throw new IOException("Gzip contents shorter than indexed");
+			}
+			filled += read;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+
+	private static class RecentPages extends LinkedHashMap<Long, byte[]> {
+		private static final long serialVersionUID = 1L;
+
+		RecentPages() {
+			super(PAGES, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+			return size() > PAGES;
+		}
+	}
+}
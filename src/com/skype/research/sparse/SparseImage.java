@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.sparse;
+
+import com.skype.research.bakebread.nio.ExtentChannel;
+import com.skype.research.bakebread.nio.ExtentMap;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to the expanded contents of a sparse image, read in place.
+ * Unlike {@link SparseFile}, which expands a stream, this only reads the chunk headers.
+ * MOREINFO an image is expected to start with its header, and to come in one piece
+ */
+public class SparseImage {
+	private static final int FILE_HEADER_SIZE = 28;
+	private static final int CHUNK_HEADER_SIZE = 12;
+	private static final short CHUNK_TYPE_CRC32 = (short) 0xCAC4; // a checksum of what precedes, no data
+
+	private final ExtentMap extents = new ExtentMap();
+	private long size;
+
+	private SparseImage() {
+	}
+
+	/**
+	 * @param channel a channel to the image
+	 * @return the chunk layout, or null if this is not a sparse image
+	 */
+	public static SparseImage read(FileChannel channel) throws IOException {
+		if (channel.size() < FILE_HEADER_SIZE) {
+			return null;
+		}
+		final ByteBuffer header = readFully(channel, 0, FILE_HEADER_SIZE);
+		if (header.getInt(0) != SparseFile.MAGIC) {
+			return null;
+		}
+		final int fileHeaderSize = header.getShort(8) & 0xffff;
+		final int chunkHeaderSize = header.getShort(10) & 0xffff;
+		final long blockSize = header.getInt(12) & 0xffffffffL;
+		final long chunkCount = header.getInt(20) & 0xffffffffL;
+		if (chunkHeaderSize < CHUNK_HEADER_SIZE) {
+			throw new IOException("Corrupt sparse image header");
+		}
+		final SparseImage sparseImage = new SparseImage();
+		long in = fileHeaderSize;
+		long out = 0;
+		for (long i = 0; i < chunkCount; i++) {
+			final ByteBuffer chunk = readFully(channel, in, chunkHeaderSize);
+			final long targetBytes = (chunk.getInt(4) & 0xffffffffL) * blockSize;
+			final long sourceBytes = chunk.getInt(8) & 0xffffffffL;
+			final short magic = chunk.getShort(0);
+			if (magic == CHUNK_TYPE_CRC32) {
+				in += sourceBytes;
+				continue;
+			}
+			final ChunkType chunkType;
+			try {
+				chunkType = ChunkType.fromMagic(magic);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Unknown sparse chunk type", e);
+			}
+			switch (chunkType) {
+				case CHUNK_TYPE_DATA:
+					sparseImage.extents.add(out, in + chunkHeaderSize, targetBytes);
+					break;
+				case CHUNK_TYPE_ZERO: // in fact a fill, mostly of zeroes
+					sparseImage.extents.addFill(out, targetBytes, readFully(channel, in + chunkHeaderSize, 4).getInt(0));
+					break;
+				case CHUNK_TYPE_SKIP:
+					break;
+			}
+			in += sourceBytes;
+			out += targetBytes;
+		}
+		sparseImage.size = out;
+		return sparseImage;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Truncated sparse image");
+			}
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return the expanded image size
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @param channel a channel to the image
+	 * @return a channel to the expanded contents
+	 */
+	public FileChannel expand(FileChannel channel) {
+		return new ExtentChannel(channel, extents, size);
+	}
+}
@@ -43,8 +43,8 @@ public class Ext4Scanner implements Scanner {
 	public static final int RATING_EARLY_REFERENCED = 20;
 
 	// magic
-	private static final short EXT4MAGIC = (short) 0xef53;
-	private static final int EXT4_OFFSET = 0x438;
+	public static final short EXT4MAGIC = (short) 0xef53;
+	public static final int EXT4_OFFSET = 0x438; // superblock at 0x400, magic at 0x38 into it
 	
 	// binary
 	private static final int SIZEOF_INT = 4;
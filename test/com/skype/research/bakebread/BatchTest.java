@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread;
+
+import com.skype.research.bakebread.config.Configuration;
+import com.skype.research.bakebread.config.cmdline.CmdLineConfiguration;
+import com.skype.research.bakebread.io.AutoClose;
+import com.skype.research.bakebread.model.host.HostCache;
+import com.skype.research.bakebread.nio.gzip.SeekableGzip;
+import junit.framework.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Batches of dumps from a folder and from a list, converted against one host cache.
+ */
+public class BatchTest extends DumpTestCase {
+	private File folder;
+	private File dumps;
+	private File out;
+	private final ByteArrayOutputStream console = new ByteArrayOutputStream();
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		folder = tempFolderFile;
+		dumps = mkdirs(tempFolderFile, "dumps");
+		out = new File(tempFolderFile, "out");
+		final File dumpFile = copyDump(dumps, "mini.dmp");
+		try (GZIPOutputStream gzos = new GZIPOutputStream(new FileOutputStream(new File(dumps, "gz.dmp.gz")))) {
+			gzos.write(Files.readAllBytes(dumpFile.toPath()));
+		}
+		// neither is a dump
+		mkFile(SeekableGzip.sidecarOf(new File(dumps, "gz.dmp.gz")), 64, new byte[] {'B', 'B', 'G', 'Z'});
+		mkFile(dumps, "mini.dmp.log", 100, "converted\n".getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private boolean runBatch(String... args) throws Exception {
+		final Configuration configuration = new CmdLineConfiguration(args);
+		try (HostCache hostCache = Main.newHostCache(configuration, System.out, new AutoClose())) {
+			return Main.runBatch(configuration, new PrintStream(console, true), hostCache);
+		}
+	}
+
+	private byte[] core(String item) throws IOException {
+		return Files.readAllBytes(new File(new File(out, item), "core").toPath());
+	}
+
+	public void testFolder() throws Exception {
+		Assert.assertTrue(runBatch("-B", dumps.getAbsolutePath(), "-CC", new File(out, "core").getAbsolutePath()));
+		Assert.assertEquals(Arrays.asList("gz.dmp.gz.out", "mini.dmp.out"), Arrays.asList(sorted(out.list())));
+		// gzipped or not, the same dump
+		Assert.assertTrue(Arrays.equals(core("mini.dmp.out"), core("gz.dmp.gz.out")));
+		Assert.assertTrue(new File(new File(out, "mini.dmp.out"), "mini.dmp.log").isFile());
+		Assert.assertTrue(console.toString().contains("2 of 2 dumps converted"));
+	}
+
+	public void testSameNames() throws Exception {
+		copyDump(new File(folder, "more"), "mini.dmp");
+		final File list = mkFile(folder, "dumps.txt", 0, new byte[0]);
+		Files.write(list.toPath(), "dumps/mini.dmp\n# the other one\nmore/mini.dmp\n".getBytes(StandardCharsets.UTF_8));
+		Assert.assertTrue(runBatch("-B", list.getAbsolutePath(), "-CC", new File(out, "core").getAbsolutePath()));
+		Assert.assertEquals(Arrays.asList("mini.dmp-2.out", "mini.dmp.out"), Arrays.asList(sorted(out.list())));
+		Assert.assertTrue(Arrays.equals(core("mini.dmp.out"), core("mini.dmp-2.out")));
+	}
+
+	public void testFailure() throws Exception {
+		final File list = mkFile(folder, "dumps.txt", 0, new byte[0]);
+		Files.write(list.toPath(), "dumps/mini.dmp\ndumps/mini.dmp.log\n".getBytes(StandardCharsets.UTF_8));
+		Assert.assertFalse(runBatch("-B", list.getAbsolutePath(), "-CC", new File(out, "core").getAbsolutePath()));
+		Assert.assertTrue(console.toString().contains("mini.dmp.log: failed"));
+		Assert.assertTrue(console.toString().contains("1 of 2 dumps converted"));
+	}
+
+	private static String[] sorted(String[] names) {
+		Arrays.sort(names);
+		return names;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread;
+
+import com.skype.research.bakebread.config.Configuration;
+import com.skype.research.bakebread.config.cmdline.CmdLineConfiguration;
+import com.skype.research.bakebread.io.AutoClose;
+import com.skype.research.bakebread.model.host.HostCache;
+import junit.framework.Assert;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+/**
+ * Jobs sent to a resident converter, with and without its token.
+ */
+public class DaemonTest extends DumpTestCase {
+	private File folder;
+	private File dumpFile;
+	private Daemon daemon;
+	private Thread running;
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		folder = tempFolderFile;
+		dumpFile = copyDump(tempFolderFile, "mini.dmp");
+		daemon = new Daemon(0, new File(tempFolderFile, "state"), new PrintStream(new ByteArrayOutputStream()));
+		running = new Thread(daemon);
+		running.start();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		daemon.close();
+		running.join(5000);
+		Assert.assertFalse(running.isAlive());
+		Assert.assertFalse(daemon.getTokenFile().exists());
+		super.tearDown();
+	}
+
+	private String token() throws IOException {
+		return new String(Files.readAllBytes(daemon.getTokenFile().toPath()), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return the reply, its last line being the exit code
+	 */
+	private String send(String... lines) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+			final OutputStream out = socket.getOutputStream();
+			for (String line : lines) {
+				out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+			out.write('\n');
+			out.flush();
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			final StringBuilder reply = new StringBuilder();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				reply.append(line).append('\n');
+				if (line.startsWith(Daemon.EXIT)) {
+					break;
+				}
+			}
+			return reply.toString();
+		}
+	}
+
+	public void testTokenFile() throws Exception {
+		Assert.assertEquals(64, token().length());
+		if (Files.getFileStore(daemon.getTokenFile().toPath()).supportsFileAttributeView("posix")) {
+			Assert.assertEquals("rw-------", PosixFilePermissions.toString(
+					Files.getPosixFilePermissions(daemon.getTokenFile().toPath())));
+		}
+	}
+
+	public void testRoundTrip() throws Exception {
+		final File core = new File(folder, "daemon.core");
+		Assert.assertTrue(send(token(), "-CC", core.getAbsolutePath(), dumpFile.getAbsolutePath())
+				.endsWith(Daemon.EXIT + 0 + "\n"));
+		// the same as converted in place
+		final File expected = new File(folder, "direct.core");
+		final Configuration configuration = new CmdLineConfiguration(new String[] {
+				"-CC", expected.getAbsolutePath(), dumpFile.getAbsolutePath()});
+		try (HostCache hostCache = Main.newHostCache(configuration, System.out, new AutoClose())) {
+			Main.runTask(configuration, new PrintStream(new ByteArrayOutputStream()), hostCache);
+		}
+		Assert.assertTrue(Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(core.toPath())));
+		// and again, with the host state kept
+		final File again = new File(folder, "again.core");
+		Assert.assertTrue(send(token(), "-CC", again.getAbsolutePath(), dumpFile.getAbsolutePath())
+				.endsWith(Daemon.EXIT + 0 + "\n"));
+		Assert.assertTrue(Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(again.toPath())));
+	}
+
+	public void testWrongToken() throws Exception {
+		final File core = new File(folder, "stranger.core");
+		final String reply = send("0123", "-CC", core.getAbsolutePath(), dumpFile.getAbsolutePath());
+		Assert.assertEquals("Error: wrong token!\n" + Daemon.EXIT + 1 + "\n", reply);
+		Assert.assertFalse(core.exists());
+	}
+
+	public void testGdbServerRejected() throws Exception {
+		final String reply = send(token(), "-CG", "0", dumpFile.getAbsolutePath());
+		Assert.assertTrue(reply, reply.endsWith(Daemon.EXIT + 1 + "\n"));
+		// a worker is still free
+		Assert.assertTrue(send(token(), "-CC", new File(folder, "after.core").getAbsolutePath(),
+				dumpFile.getAbsolutePath()).endsWith(Daemon.EXIT + 0 + "\n"));
+	}
+}
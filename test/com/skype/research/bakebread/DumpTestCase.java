@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread;
+
+import com.skype.research.bakebread.model.analysis.FileTestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * A test case converting a small synthetic minidump (mini.dmp: two threads, a heap and a library).
+ */
+public abstract class DumpTestCase extends FileTestCase {
+
+	public File copyDump(File folder, String name) throws IOException {
+		final File dumpFile = new File(mkdirs(folder), name);
+		try (InputStream is = DumpTestCase.class.getResourceAsStream("mini.dmp")) {
+			Files.copy(is, dumpFile.toPath());
+		}
+		return dumpFile;
+	}
+}
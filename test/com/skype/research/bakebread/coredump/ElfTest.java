@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.coredump;
+
+import com.skype.research.bakebread.config.OutConfig;
+import com.skype.research.bakebread.config.WrConfig;
+import com.skype.research.bakebread.config.WriteMode;
+import com.skype.research.bakebread.io.ReverseEndianDataInput;
+import com.skype.research.bakebread.model.analysis.FillLoad;
+import com.skype.research.bakebread.model.analysis.mock.MockMapInfo;
+import com.skype.research.bakebread.model.analysis.mock.PermSet;
+import com.skype.research.bakebread.model.host.FileLoad;
+import com.skype.research.bakebread.model.memory.MemLoad;
+import com.skype.research.bakebread.nio.FileMemory;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Core dump writing and reading back.
+ */
+public class ElfTest extends TestCase {
+	private static final OutConfig WRITE_ALL = new OutConfig() {
+		@Override
+		public boolean shallWrite(MemLoad memLoad) {
+			return true;
+		}
+	};
+
+	private File coreFile;
+	private File hostFile;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		coreFile = File.createTempFile("elf", ".core");
+		hostFile = File.createTempFile("elf", ".so");
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		//noinspection ResultOfMethodCallIgnored
+		coreFile.delete();
+		//noinspection ResultOfMethodCallIgnored
+		hostFile.delete();
+		super.tearDown();
+	}
+
+	private static ELF sample(int loadCount, int stride) {
+		final ELF elf = new ELF(ELF.Preset.ANDROID_32, ELF.Type.CORE);
+		for (int i = 0; i < loadCount; i++) {
+			final long address = 0x10000000L + i * stride;
+			final PermSet perm = i % 2 == 0 ? PermSet.RO_DATA : PermSet.RW_DATA;
+			elf.addLoad(new FillLoad(new MockMapInfo(address, address + 0x10 + i % 7, perm), new byte[] {(byte) i}), WRITE_ALL);
+		}
+		return elf;
+	}
+
+	private void write(ELF elf) throws IOException {
+		try (FileOutputStream fos = new FileOutputStream(coreFile)) {
+			elf.writeExternal(new DataOutputStream(fos), fos.getChannel());
+		}
+	}
+
+	private int roundTrip(int loadCount) throws IOException {
+		final ELF elf = sample(loadCount, 0x20);
+		write(elf);
+		Assert.assertEquals(loadCount >= ElfHeader.PN_XNUM, elf.elfHeader.isProgEntryCountExtended());
+		final ELF read = new ELF(ELF.Preset.ANDROID_32, ELF.Type.CORE);
+		try (RandomAccessFile raf = new RandomAccessFile(coreFile, "r")) {
+			read.readExternal(new ReverseEndianDataInput(raf), raf.getChannel());
+		}
+		return read.getLoadCount();
+	}
+
+	public void testVirtualCore() throws IOException {
+		final ELF elf = sample(300, 0x1800);
+		elf.setWrConfig(new WrConfig() {
+			@Override
+			public boolean isWriteModeEnabled(WriteMode mode) {
+				return mode == WriteMode.HOLES; // alignment gaps in between
+			}
+		});
+		write(elf);
+		final byte[] expected = Files.readAllBytes(coreFile.toPath());
+		try (FileChannel virtualCore = elf.openVirtualCore()) {
+			Assert.assertEquals(expected.length, virtualCore.size());
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			Assert.assertEquals(expected.length, virtualCore.transferTo(0, Long.MAX_VALUE, Channels.newChannel(baos)));
+			Assert.assertTrue(Arrays.equals(expected, baos.toByteArray()));
+			final Random random = new Random(expected.length);
+			for (int k = 0; k < 1000; k++) {
+				final int position = random.nextInt(expected.length);
+				final ByteBuffer dst = ByteBuffer.allocate(Math.min(expected.length - position, 1 + random.nextInt(10000)));
+				while (dst.hasRemaining()) {
+					Assert.assertTrue(virtualCore.read(dst, position + dst.position()) > 0);
+				}
+				Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(expected, position, position + dst.capacity()), dst.array()));
+			}
+		}
+	}
+
+	public void testFewLoads() throws IOException {
+		Assert.assertEquals(1000, roundTrip(1000));
+	}
+
+	public void testExtendedLoadCount() throws IOException {
+		Assert.assertEquals(70000, roundTrip(70000));
+		Assert.assertEquals(ElfHeader.PN_XNUM, roundTrip(ElfHeader.PN_XNUM));
+	}
+
+	/**
+	 * Accepts a few bytes at a time, as a pipe may.
+	 */
+	private static class TrickleChannel implements WritableByteChannel {
+		private final WritableByteChannel channel;
+
+		TrickleChannel(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			final ByteBuffer some = src.duplicate();
+			some.limit(Math.min(src.limit(), src.position() + 1000));
+			final int written = channel.write(some);
+			src.position(src.position() + written);
+			return written;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private final FileMemory.ChannelSource hostSource = new FileMemory.ChannelSource() {
+		@Override
+		public FileChannel open() throws IOException {
+			return FileChannel.open(hostFile.toPath(), StandardOpenOption.READ);
+		}
+	};
+
+	/**
+	 * @return fills and host file contents in turn, the latter beyond the length of a single write
+	 */
+	private ELF mixed(int loadCount) throws IOException {
+		final byte[] contents = new byte[0x8000];
+		new Random(loadCount).nextBytes(contents);
+		Files.write(hostFile.toPath(), contents);
+		final ELF elf = new ELF(ELF.Preset.ANDROID_32, ELF.Type.CORE);
+		for (int i = 0; i < loadCount; i++) {
+			final long address = 0x10000000L + i * 0x10000L;
+			if (i % 2 == 0) {
+				elf.addLoad(new FillLoad(new MockMapInfo(address, address + 0x1234, PermSet.RW_DATA), new byte[] {(byte) i}), WRITE_ALL);
+			} else {
+				elf.addLoad(new FileLoad(new MockMapInfo(address, address + 0x8000 - i * 0x100, PermSet.LIBRARY,
+						i * 0x100, hostFile.getName()), hostFile, hostSource), WRITE_ALL);
+			}
+		}
+		return elf;
+	}
+
+	public void testStreamingAsWritten() throws IOException {
+		final ELF elf = mixed(10);
+		write(elf);
+		final byte[] expected = Files.readAllBytes(coreFile.toPath());
+		final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		elf.writeTo(new TrickleChannel(Channels.newChannel(streamed)));
+		Assert.assertTrue(Arrays.equals(expected, streamed.toByteArray()));
+		final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzos = new GZIPOutputStream(gzipped)) {
+			elf.writeTo(Channels.newChannel(gzos));
+		}
+		final ByteArrayOutputStream gunzipped = new ByteArrayOutputStream();
+		try (GZIPInputStream gzis = new GZIPInputStream(new ByteArrayInputStream(gzipped.toByteArray()))) {
+			final byte[] buffer = new byte[0x1000];
+			for (int count; (count = gzis.read(buffer)) > 0; ) {
+				gunzipped.write(buffer, 0, count);
+			}
+		}
+		Assert.assertTrue(Arrays.equals(expected, gunzipped.toByteArray()));
+	}
+
+	private byte[] writeWith(ELF elf, WriteMode... modes) throws IOException {
+		final List<WriteMode> enabled = Arrays.asList(modes);
+		elf.setWrConfig(new WrConfig() {
+			@Override
+			public boolean isWriteModeEnabled(WriteMode mode) {
+				return enabled.contains(mode);
+			}
+		});
+		write(elf);
+		return Files.readAllBytes(coreFile.toPath());
+	}
+
+	public void testParallelAsSequential() throws IOException {
+		final ELF sequential = mixed(16);
+		final ELF parallel = mixed(16);
+		// the host file shrinks after the loads are laid out: the loads past its end are left short
+		try (FileChannel channel = FileChannel.open(hostFile.toPath(), StandardOpenOption.WRITE)) {
+			channel.truncate(0x4000);
+		}
+		// the first load, a fill of zeroes, is a hole
+		final byte[] expected = writeWith(sequential, WriteMode.HOLES);
+		final byte[] actual = writeWith(parallel, WriteMode.HOLES, WriteMode.PARALLEL);
+		Assert.assertEquals(expected.length, actual.length);
+		Assert.assertTrue(Arrays.equals(expected, actual));
+	}
+
+	public void testStreamingShortSource() throws IOException {
+		final ELF elf = mixed(4);
+		// the host file shrinks after the loads are laid out
+		try (FileChannel channel = FileChannel.open(hostFile.toPath(), StandardOpenOption.WRITE)) {
+			channel.truncate(0x4000);
+		}
+		try {
+			elf.writeTo(Channels.newChannel(new ByteArrayOutputStream()));
+			Assert.fail("Padded a short load");
+		} catch (IOException expected) {
+			Assert.assertTrue(expected.getMessage().startsWith("Short write"));
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.gdb;
+
+import com.skype.research.bakebread.model.AppInfo;
+import com.skype.research.bakebread.model.DmpInfo;
+import com.skype.research.bakebread.model.RegBank;
+import com.skype.research.bakebread.model.SigInfo;
+import com.skype.research.bakebread.model.ThrInfo;
+import com.skype.research.bakebread.model.analysis.FillLoad;
+import com.skype.research.bakebread.model.analysis.mock.MockMapInfo;
+import com.skype.research.bakebread.model.analysis.mock.PermSet;
+import com.skype.research.bakebread.model.memory.MapInfo;
+import com.skype.research.bakebread.model.memory.MemData;
+import com.skype.research.bakebread.model.memory.MemLoad;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Remote protocol replies, checked by a stub client.
+ */
+public class GdbServerTest extends TestCase {
+	private static final int CRASHED = 0x20;
+	private static final int SIGBUS = 7;
+
+	private static class MockThread implements ThrInfo<IntBuffer, IntBuffer>, RegBank<IntBuffer>, SigInfo {
+		private final int threadId;
+
+		MockThread(int threadId) {
+			this.threadId = threadId;
+		}
+
+		@Override public int getThreadId() { return threadId; }
+		@Override public boolean hasMainRegs() { return true; }
+		@Override public RegBank<IntBuffer> getMainRegs() { return this; }
+		@Override public boolean hasMathRegs() { return false; }
+		@Override public RegBank<IntBuffer> getMathRegs() { return null; }
+		@Override public boolean hasSigInfo() { return threadId == CRASHED; }
+		@Override public SigInfo getSigInfo() { return this; }
+		@Override public IntBuffer getRegisterValues() { return null; }
+		@Override public long getRegisterValue(int index) { return index * 0x01010101L + threadId; }
+		@Override public ByteBuffer getRawRegisterValues(ByteOrder byteOrder) { return null; }
+		@Override public long getSpecialValue(Special kind) { return 0x60000010L; }
+		@Override public int getSigNo() { return SIGBUS; }
+		@Override public long getSigAddr() { return 0; }
+		@Override public long getSigData() { return 0; }
+	}
+
+	private static final DmpInfo<IntBuffer, IntBuffer, IntBuffer> DUMP = new DmpInfo<IntBuffer, IntBuffer, IntBuffer>() {
+		@Override public AppInfo<IntBuffer> getAppInfo() { return null; }
+		@Override public int[] getThreadIds() { return new int[] {CRASHED, 0x10}; }
+		@Override public ThrInfo<IntBuffer, IntBuffer> getThread(int threadId) { return new MockThread(threadId); }
+		@Override public int getCrashedThreadId() { return CRASHED; }
+		@Override public Collection<? extends MapInfo> getMemMap() { return null; }
+		@Override public Collection<? extends MemData> getMemDmp() { return null; }
+	};
+
+	private static List<MemLoad> memory() {
+		return Arrays.<MemLoad>asList(
+				new FillLoad(new MockMapInfo(0x1000, 0x1010, PermSet.RO_DATA), new byte[] {(byte) 0xab}),
+				new FillLoad(new MockMapInfo(0x1010, 0x1020, PermSet.RW_DATA), new byte[] {(byte) 0xcd}),
+				new FillLoad(new MockMapInfo(0x2000, 0x2004, PermSet.RW_DATA), new byte[] {1, 2}));
+	}
+
+	private GdbServer server;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		server = new GdbServer(DUMP, memory(), 0);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		server.close();
+		super.tearDown();
+	}
+
+	public void testStopAndThreads() {
+		Assert.assertEquals("T0athread:20;", server.handle("?"));
+		Assert.assertEquals("m10,20", server.handle("qfThreadInfo"));
+		Assert.assertEquals("l", server.handle("qsThreadInfo"));
+		Assert.assertEquals("OK", server.handle("T10"));
+		Assert.assertEquals("E01", server.handle("T30"));
+		Assert.assertEquals("E01", server.handle("Hg30"));
+		Assert.assertEquals("OK", server.handle("Hg10"));
+		Assert.assertEquals("QC10", server.handle("qC"));
+		Assert.assertEquals("OK", server.handle("Hg0"));
+		Assert.assertEquals("QC10", server.handle("qC"));
+	}
+
+	public void testRegisters() {
+		server.handle("Hg10");
+		final String regs = server.handle("g");
+		Assert.assertEquals(16 * 8, regs.length());
+		Assert.assertEquals("10000000", regs.substring(0, 8));
+		Assert.assertEquals("1f0f0f0f", regs.substring(15 * 8));
+		Assert.assertEquals("12020202", server.handle("p2"));
+		Assert.assertEquals("10000060", server.handle("p19"));
+		Assert.assertEquals("E01", server.handle("p10"));
+		Assert.assertTrue(server.handle("qXfer:features:read:target.xml:0,1000").startsWith("l<?xml"));
+		Assert.assertTrue(server.handle("qXfer:features:read:target.xml:0,10").startsWith("m<?xml"));
+	}
+
+	public void testMemory() {
+		Assert.assertEquals("abababab", server.handle("m1000,4"));
+		// across adjacent loads
+		Assert.assertEquals("ababcdcd", server.handle("m100e,4"));
+		// stops short at a gap
+		Assert.assertEquals("cdcd", server.handle("m101e,8"));
+		Assert.assertEquals("01020102", server.handle("m2000,4"));
+		Assert.assertEquals("E14", server.handle("m1800,4"));
+		Assert.assertEquals("E01", server.handle("M1000,1:00"));
+	}
+
+	public void testMalformed() {
+		Assert.assertEquals("E01", server.handle("m1000"));
+		Assert.assertEquals("E01", server.handle("mzz,4"));
+		Assert.assertEquals("E01", server.handle("m1000,-4"));
+		Assert.assertEquals("E01", server.handle("p"));
+		Assert.assertEquals("E01", server.handle("H"));
+		Assert.assertEquals("E01", server.handle("Hgxyz"));
+		Assert.assertEquals("E01", server.handle("T"));
+		Assert.assertEquals("E01", server.handle("qXfer:features:read:target.xml:0"));
+		Assert.assertEquals("E01", server.handle("qXfer:features:read:target.xml:q,10"));
+		// still serving
+		Assert.assertEquals("abababab", server.handle("m1000,4"));
+	}
+
+	private static void send(OutputStream out, String packet) throws IOException {
+		int sum = 0;
+		for (int i = 0; i < packet.length(); i++) {
+			sum += packet.charAt(i);
+		}
+		out.write(String.format("$%s#%02x", packet, sum & 0xff).getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+	}
+
+	private static String receive(InputStream in, OutputStream out) throws IOException {
+		Assert.assertEquals('+', in.read());
+		Assert.assertEquals('$', in.read());
+		final StringBuilder reply = new StringBuilder();
+		int c;
+		int sum = 0;
+		while ((c = in.read()) != '#') {
+			Assert.assertTrue(c >= 0);
+			reply.append((char) c);
+			sum += c;
+		}
+		final String checksum = "" + (char) in.read() + (char) in.read();
+		Assert.assertEquals(sum & 0xff, Integer.parseInt(checksum, 16));
+		out.write('+');
+		out.flush();
+		return reply.toString();
+	}
+
+	public void testSession() throws Exception {
+		final IOException[] failure = new IOException[1];
+		final Thread serving = new Thread() {
+			@Override
+			public void run() {
+				try {
+					server.serve();
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		};
+		serving.start();
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+			final InputStream in = socket.getInputStream();
+			final OutputStream out = socket.getOutputStream();
+			out.write('+');
+			send(out, "qSupported:multiprocess+;swbreak+");
+			Assert.assertTrue(receive(in, out).contains("qXfer:features:read+"));
+			// corrupt checksum, asked to retransmit
+			out.write("$g#00".getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+			Assert.assertEquals('-', in.read());
+			send(out, "m1000,2");
+			Assert.assertEquals("abab", receive(in, out));
+			send(out, "vMustReplyEmpty");
+			Assert.assertEquals("", receive(in, out));
+			send(out, "mxyz");
+			Assert.assertEquals("E01", receive(in, out));
+			send(out, "D");
+			Assert.assertEquals("OK", receive(in, out));
+			Assert.assertEquals(-1, in.read()); // a clean end of stream, not a reset
+		}
+		serving.join(5000);
+		Assert.assertFalse(serving.isAlive());
+		Assert.assertNull(failure[0]);
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.minidump;
+
+import com.skype.research.bakebread.DumpTestCase;
+import com.skype.research.bakebread.config.InConfig;
+import com.skype.research.bakebread.config.InputMode;
+import com.skype.research.bakebread.model.host.BuildIdStore;
+import com.skype.research.bakebread.model.memory.MapInfo;
+import com.skype.research.bakebread.model.memory.MemData;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tests that eager, lazy and concurrent decoding of a minidump, plain or gzipped, tell the same.
+ */
+public class MiniDumpFromFileTest extends DumpTestCase {
+	private File dumpFile;
+	private File gzipFile;
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		dumpFile = copyDump(tempFolderFile, "mini.dmp");
+		gzipFile = new File(tempFolderFile, "mini.dmp.gz");
+		try (GZIPOutputStream gzos = new GZIPOutputStream(new FileOutputStream(gzipFile))) {
+			gzos.write(Files.readAllBytes(dumpFile.toPath()));
+		}
+	}
+
+	private static InConfig modes(final InputMode... modes) {
+		final List<InputMode> enabled = Arrays.asList(modes);
+		return new InConfig() {
+			@Override
+			public boolean isInputModeEnabled(InputMode mode) {
+				return enabled.contains(mode);
+			}
+		};
+	}
+
+	/**
+	 * @param backwards whether to ask for the derived parts before the streams they are derived from
+	 * @return all that is decoded, as text
+	 */
+	private static String decode(File file, InConfig inConfig, boolean backwards) throws IOException {
+		final MiniDumpFromFile miniDump = new MiniDumpFromFile(file, inConfig);
+		miniDump.open();
+		try {
+			final StringBuilder streams = new StringBuilder();
+			final StringBuilder model = new StringBuilder();
+			if (backwards) {
+				describeModel(miniDump, model);
+				describeStreams(miniDump, streams);
+			} else {
+				describeStreams(miniDump, streams);
+				describeModel(miniDump, model);
+			}
+			return streams.append(model).toString();
+		} finally {
+			miniDump.close();
+		}
+	}
+
+	private static void describeStreams(MiniDumpFromFile miniDump, StringBuilder decoded) {
+		decoded.append("streams ").append(miniDump.getTopLevelStreamTypes()).append('\n');
+		decoded.append("signal ").append(miniDump.getSignalStream()).append('\n');
+		decoded.append("threads ").append(miniDump.getThreadStreams()).append('\n');
+		decoded.append("memory ").append(miniDump.getMemoryStreams()).append('\n');
+		decoded.append("stacks ").append(miniDump.getStackStreams()).append('\n');
+		decoded.append("mappings ").append(miniDump.getMappings()).append('\n');
+		for (Map.Entry<String, byte[]> buildId : miniDump.getBuildIds().entrySet()) {
+			decoded.append("build-id ").append(buildId.getKey()).append(' ')
+					.append(BuildIdStore.toHex(buildId.getValue())).append('\n');
+		}
+	}
+
+	private static void describeModel(MiniDumpFromFile miniDump, StringBuilder decoded) {
+		decoded.append("crashed ").append(miniDump.getCrashedThreadId())
+				.append(" of ").append(Arrays.toString(miniDump.getThreadIds())).append('\n');
+		decoded.append("cmdline ").append(miniDump.getAppInfo().getCmdLine()).append('\n');
+		for (MapInfo mapInfo : miniDump.getMemMap()) {
+			decoded.append(String.format("map %x-%x %x %s%n", mapInfo.getStartAddress(), mapInfo.getEndAddress(),
+					mapInfo.getFileOffset(), mapInfo.getName()));
+		}
+		for (MemData memData : miniDump.getMemDmp()) {
+			decoded.append(String.format("dmp %x-%x%n", memData.getStartAddress(), memData.getEndAddress()));
+		}
+	}
+
+	public void testDecodingModesAgree() throws Exception {
+		final String eager = decode(dumpFile, null, false);
+		Assert.assertTrue(eager, eager.contains("SIGSEGV"));
+		Assert.assertTrue(eager, eager.contains("map "));
+		Assert.assertEquals(eager, decode(dumpFile, modes(InputMode.LAZY), false));
+		Assert.assertEquals(eager, decode(dumpFile, modes(InputMode.LAZY), true));
+		Assert.assertEquals(eager, decode(dumpFile, modes(InputMode.PARALLEL), false));
+		Assert.assertEquals(eager, decode(dumpFile, modes(InputMode.PARALLEL), true));
+	}
+
+	public void testGzippedAgrees() throws Exception {
+		final String eager = decode(dumpFile, null, false);
+		Assert.assertEquals(eager, decode(gzipFile, null, false));
+		Assert.assertEquals(eager, decode(gzipFile, modes(InputMode.LAZY), true));
+		Assert.assertEquals(eager, decode(gzipFile, modes(InputMode.PARALLEL), false));
+	}
+}
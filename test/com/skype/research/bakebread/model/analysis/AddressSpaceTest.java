@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.model.memory.MemArea;
+import com.skype.research.bakebread.model.memory.MemData;
+import com.skype.research.bakebread.nio.ByteMemory;
+import com.skype.research.bakebread.nio.FileMemory;
+import com.skype.research.bakebread.nio.FillMemory;
+import com.skype.research.bakebread.nio.Memory;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test, {@link AddressSpace}, reads of reconstructed memory across areas, pages and gaps.
+ */
+public class AddressSpaceTest extends FileTestCase {
+	private static final int PAGE = AddressSpace.PAGE_SIZE;
+
+	private final byte[] bytes = new byte[PAGE + 100];
+	private RandomAccessFile raf;
+	private List<MemData> memory;
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i * 7);
+		}
+		final File file = mkFile(tempFolderFile, "libfile.so", 3 * PAGE, new byte[] {'f', 'i', 'l', 'e'});
+		raf = new RandomAccessFile(file, "r");
+		memory = Arrays.<MemData>asList(
+				// bytes, not page aligned, followed by a fill
+				new ResolvedMemData(PAGE - 100, 2 * PAGE, new ByteMemory(ByteBuffer.wrap(bytes))),
+				new ResolvedMemData(2 * PAGE, 2 * PAGE + 50,
+						new FillMemory(new byte[] {'?'}, new ResolvedMemArea(2 * PAGE, 2 * PAGE + 50))),
+				// a gap, then a file mapped from its second page on
+				new ResolvedMemData(4 * PAGE, 6 * PAGE, new FileMemory(raf.getChannel(), PAGE, 2 * PAGE)));
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		raf.close();
+		super.tearDown();
+	}
+
+	public void testRead() throws Exception {
+		final AddressSpace space = new AddressSpace(memory, 2);
+		Assert.assertEquals(-1, space.read(PAGE - 101, ByteBuffer.allocate(16)));
+		final ByteBuffer dst = ByteBuffer.allocate(PAGE + 200);
+		Assert.assertEquals(PAGE + 150, space.read(PAGE - 100, dst)); // stops at the gap
+		Assert.assertTrue(Arrays.equals(bytes, Arrays.copyOf(dst.array(), bytes.length)));
+		for (int i = bytes.length; i < PAGE + 150; i++) {
+			Assert.assertEquals('?', dst.get(i));
+		}
+		Assert.assertSame(memory.get(1), space.find(2 * PAGE + 49));
+		Assert.assertNull(space.find(2 * PAGE + 50));
+	}
+
+	public void testReadFileAcrossPages() throws Exception {
+		final AddressSpace space = new AddressSpace(memory, 1); // every page is read again
+		final ByteBuffer dst = ByteBuffer.allocate(8);
+		Assert.assertEquals(8, space.read(5 * PAGE - 3, dst));
+		Assert.assertEquals("lefile", new String(dst.array(), 1, 6, "US-ASCII"));
+		dst.clear();
+		Assert.assertEquals(2, space.read(6 * PAGE - 2, dst)); // the end of the file mapping
+		Assert.assertEquals("le", new String(dst.array(), 0, 2, "US-ASCII"));
+	}
+
+	public void testCachedPagesServedAgain() throws Exception {
+		final AddressSpace space = new AddressSpace(memory);
+		final ByteBuffer first = ByteBuffer.allocate(64);
+		final ByteBuffer again = ByteBuffer.allocate(64);
+		Assert.assertEquals(64, space.read(PAGE + 10, first));
+		bytes[110] ^= 0xff; // cached, not read again
+		Assert.assertEquals(64, space.read(PAGE + 10, again));
+		Assert.assertTrue(Arrays.equals(first.array(), again.array()));
+	}
+
+	/**
+	 * A fill read only when let through, failing if told to.
+	 */
+	private static class GatedMemory implements Memory {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		volatile boolean failing;
+
+		@Override
+		public long writeTo(OutputStream outputStream) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long writeTo(WritableByteChannel channel) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Memory transform(final MemArea from, final MemArea to) {
+			return new FillMemory(new byte[] {'!'}, to) {
+				@Override
+				public long writeTo(WritableByteChannel channel) throws IOException {
+					entered.countDown();
+					try {
+						if (!release.await(5, TimeUnit.SECONDS)) {
+							throw new IOException("Not let through");
+						}
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+					if (failing) {
+						throw new IOException("Unreadable");
+					}
+					return super.writeTo(channel);
+				}
+			};
+		}
+	}
+
+	public void testReadOutsideLock() throws Exception {
+		final GatedMemory gated = new GatedMemory();
+		final List<MemData> gatedMemory = new ArrayList<>(memory);
+		gatedMemory.add(new ResolvedMemData(8 * PAGE, 9 * PAGE, gated));
+		final AddressSpace space = new AddressSpace(gatedMemory);
+		final ByteBuffer slow = ByteBuffer.allocate(16);
+		final IOException[] failure = new IOException[1];
+		final Thread slowReader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					space.read(8 * PAGE, slow);
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		};
+		slowReader.start();
+		try {
+			Assert.assertTrue(gated.entered.await(5, TimeUnit.SECONDS));
+			// another page is served while the slow one is being read
+			final ByteBuffer dst = ByteBuffer.allocate(64);
+			Assert.assertEquals(64, space.read(PAGE + 10, dst));
+		} finally {
+			gated.release.countDown();
+		}
+		slowReader.join(5000);
+		Assert.assertNull(failure[0]);
+		Assert.assertEquals(16, slow.position());
+		Assert.assertEquals('!', slow.get(0));
+	}
+
+	public void testFailedPageReadAgain() throws Exception {
+		final GatedMemory gated = new GatedMemory();
+		gated.release.countDown();
+		gated.failing = true;
+		final AddressSpace space = new AddressSpace(Arrays.<MemData>asList(new ResolvedMemData(0, PAGE, gated)));
+		try {
+			space.read(0, ByteBuffer.allocate(16));
+			Assert.fail("Read an unreadable page");
+		} catch (IOException expected) {
+			Assert.assertEquals("Unreadable", expected.getMessage());
+		}
+		gated.failing = false; // not remembered as failed
+		Assert.assertEquals(16, space.read(0, ByteBuffer.allocate(16)));
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.io.AutoClose;
+import com.skype.research.bakebread.model.analysis.mock.MockMapInfo;
+import com.skype.research.bakebread.model.analysis.mock.PermSet;
+import com.skype.research.bakebread.model.host.ApkFileFinder;
+import com.skype.research.bakebread.model.host.HostCache;
+import com.skype.research.bakebread.model.host.ZipEntryFile;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests the lookup of libraries stored in APKs.
+ */
+public class ApkFileFinderTest extends AppFileTestCase {
+	private static final String LIBM = "lib/armeabi-v7a/libm.so";
+	private static final byte[] BUILD_ID = {0x10, 0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17};
+
+	private HostCache hostCache;
+	private ApkFileFinder finder;
+	private File apk;
+	private byte[] libm;
+	private int libmOffset;
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		super.setUp(tempFolderFile);
+		libm = Files.readAllBytes(BuildIdFileFinderTest.mkElf(new File(tempFolderFile, "libm.so"), BUILD_ID).toPath());
+		apk = new File(appLibRoot, "base.apk");
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(apk))) {
+			zos.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+			zos.write(new byte[BASE_SIZE]);
+			final ZipEntry stored = new ZipEntry(LIBM);
+			final CRC32 crc32 = new CRC32();
+			crc32.update(libm);
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(libm.length);
+			stored.setCrc(crc32.getValue());
+			zos.putNextEntry(stored);
+			zos.write(libm);
+			zos.putNextEntry(new ZipEntry("classes.dex"));
+			zos.write(libm); // deflated
+		}
+		final byte[] archive = Files.readAllBytes(apk.toPath());
+		for (libmOffset = 0; !Arrays.equals(libm, Arrays.copyOfRange(archive, libmOffset, libmOffset + libm.length)); libmOffset++) {
+			Assert.assertTrue(libmOffset < archive.length);
+		}
+		hostCache = new HostCache(fileFinder, new AutoClose());
+		finder = new ApkFileFinder(hostCache.getFinder(), hostCache);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		hostCache.close();
+		super.tearDown();
+	}
+
+	private MockMapInfo mapApk(long fileOffset) {
+		return new MockMapInfo(0x40000000, 0x40001000, PermSet.LIBRARY, fileOffset, "/data/app/com.example.app-1/base.apk");
+	}
+
+	public void testStoredEntry() throws Exception {
+		final File file = finder.find(mapApk(libmOffset + 40));
+		Assert.assertTrue(file instanceof ZipEntryFile);
+		final ZipEntryFile entry = (ZipEntryFile) file;
+		Assert.assertEquals(LIBM, entry.getEntryName());
+		Assert.assertEquals(apk, entry.getArchive());
+		Assert.assertEquals(libmOffset, entry.getDataOffset());
+		Assert.assertEquals(libm.length, entry.length());
+		Assert.assertEquals(40, entry.rebase(mapApk(libmOffset + 40)).getFileOffset());
+	}
+
+	public void testReadInPlace() throws Exception {
+		final File file = finder.find(mapApk(libmOffset));
+		try (FileChannel channel = hostCache.getChannelSource(file).open();
+		     FileChannel again = hostCache.getChannelSource(file).open()) {
+			Assert.assertEquals(libm.length, channel.size());
+			final ByteBuffer buffer = ByteBuffer.allocate(libm.length + 16);
+			Assert.assertEquals(libm.length, channel.read(buffer, 0));
+			Assert.assertEquals(-1, channel.read(buffer, libm.length));
+			Assert.assertTrue(Arrays.equals(libm, Arrays.copyOf(buffer.array(), libm.length)));
+			Assert.assertEquals(libm.length, again.size());
+			Assert.assertEquals(1, hostCache.getChannelPool().getOpenedCount()); // the archive, once
+		}
+	}
+
+	public void testOtherwiseAsIs() throws Exception {
+		Assert.assertEquals(apk, finder.find(mapApk(0))); // deflated manifest
+		Assert.assertEquals(apk, finder.find(mapApk(libmOffset + libm.length + 1))); // deflated dex
+		Assert.assertEquals(new File(sysLibRoot, "libc.so").getCanonicalFile(),
+				finder.find(new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libc.so")).getCanonicalFile());
+	}
+}
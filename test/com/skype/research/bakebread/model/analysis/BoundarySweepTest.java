@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.model.analysis.mock.MockMapInfo;
+import com.skype.research.bakebread.model.analysis.mock.MockMemData;
+import com.skype.research.bakebread.model.analysis.mock.PermSet;
+import com.skype.research.bakebread.model.memory.MemLoad;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test, {@link BoundarySweep}, against the tree set of boundary objects it has replaced.
+ */
+public class BoundarySweepTest extends TestCase {
+
+	/**
+	 * The former Splitter#collectBounds, kept as the reference.
+	 */
+	static class TreeSetSweep {
+		private final SortedSet<Boundary> bounds = new TreeSet<>();
+		private final List<MemLoad> result = new ArrayList<>();
+
+		void add(MemLoad stream, Credibility credibility) {
+			bounds.add(new Boundary(credibility, true, stream));
+			bounds.add(new Boundary(credibility, false, stream));
+		}
+
+		List<MemLoad> sweep(Validator validator) {
+			MutableMemArea window = new MutableMemArea();
+			window.setStartAddress(0);
+			final EnumMap<Credibility, Boundary> src = new EnumMap<>(Credibility.class);
+			for (Boundary boundary : bounds) {
+				Boundary prev = Credibility.mostCredibleOrNull(src);
+				if (boundary.start) {
+					Boundary existing = src.put(boundary.r, boundary);
+					if (existing != null) {
+						throw new IllegalStateException("Mappings "
+								+ existing + " and " + boundary.chunk + "overlap");
+					}
+				} else {
+					if (src.remove(boundary.r) == null) {
+						throw new IllegalStateException("Closing a mapping that isn't open: "
+								+ boundary.chunk);
+					}
+				}
+				Boundary next = Credibility.mostCredibleOrNull(src);
+				if (prev != next) {
+					if (boundary.start) {
+						if (prev != null) {
+							window.setEndAddress(boundary.chunk.getStartAddress());
+							if (validator != null && boundary.chunk.isReliable() && prev.chunk.isReliable()) {
+								validator.compare(boundary.chunk, prev.chunk);
+							}
+							addLoad(prev.chunk, window);
+						}
+					} else {
+						window.setEndAddress(boundary.chunk.getEndAddress());
+						addLoad(boundary.chunk, window);
+					}
+				}
+			}
+			if (!src.isEmpty()) {
+				throw new IllegalStateException("Not all mappings closed: " + src);
+			}
+			return result;
+		}
+
+		private void addLoad(MemLoad memLoad, MutableMemArea window) {
+			memLoad = memLoad.trimTo(window);
+			if (!Areas.isEmpty(memLoad)) {
+				result.add(memLoad);
+			}
+			window.setStartAddress(memLoad.getEndAddress());
+		}
+
+		static class Boundary implements Comparable<Boundary> {
+			final Credibility r;
+			final boolean start;
+			final MemLoad chunk;
+
+			Boundary(Credibility credibility, boolean start, MemLoad chunk) {
+				this.r = credibility;
+				this.start = start;
+				this.chunk = chunk;
+			}
+
+			public long getAddress() {
+				return start ? chunk.getStartAddress() : chunk.getEndAddress();
+			}
+
+			@Override
+			public int compareTo(Boundary other) {
+				int cmp = Long.compare(getAddress(), other.getAddress());
+				if (cmp != 0) return cmp;
+				cmp = Boolean.compare(start, other.start);
+				if (cmp != 0) return cmp;
+				if (start) {
+					return other.r.compareTo(r); // weaker starts first
+				} else {
+					return r.compareTo(other.r); // weaker lasts longer
+				}
+			}
+		}
+	}
+
+	static class RecordingValidator implements Validator {
+		final List<String> comparisons = new ArrayList<>();
+
+		@Override
+		public void compare(MemLoad modified, MemLoad original) {
+			comparisons.add(modified + " ~ " + original);
+		}
+	}
+
+	private static MemLoad load(long start, long end, boolean reliable) {
+		final MockMapInfo mapInfo = new MockMapInfo(start, end, PermSet.LIBRARY);
+		return reliable
+				? new DumpLoad(mapInfo, new MockMemData(start, end))
+				: new FillLoad(mapInfo, new byte[] {'?'});
+	}
+
+	private static void assertSameSweep(List<MemLoad> loads, List<Credibility> credibilities) {
+		final BoundarySweep sweep = new BoundarySweep();
+		final TreeSetSweep oracle = new TreeSetSweep();
+		for (int i = 0; i < loads.size(); i++) {
+			sweep.add(loads.get(i), credibilities.get(i));
+			oracle.add(loads.get(i), credibilities.get(i));
+		}
+		final RecordingValidator swept = new RecordingValidator();
+		final RecordingValidator expected = new RecordingValidator();
+		final List<MemLoad> result = sweep.sweep(swept);
+		final List<MemLoad> reference = oracle.sweep(expected);
+		Assert.assertEquals(reference.toString(), result.toString());
+		for (int i = 0; i < reference.size(); i++) {
+			Assert.assertEquals(reference.get(i).isReliable(), result.get(i).isReliable());
+			Assert.assertEquals(reference.get(i).isDumpData(), result.get(i).isDumpData());
+		}
+		Assert.assertEquals(expected.comparisons, swept.comparisons);
+	}
+
+	public void testLayers() throws Exception {
+		final List<MemLoad> loads = new ArrayList<>();
+		final List<Credibility> credibilities = new ArrayList<>();
+		loads.add(load(0, 0x10000, false));
+		credibilities.add(Credibility.Desc);
+		loads.add(load(0x1000, 0x8000, true));
+		credibilities.add(Credibility.Host);
+		loads.add(load(0x2000, 0x3000, true));
+		credibilities.add(Credibility.Dump);
+		loads.add(load(0x3000, 0x4000, true)); // adjacent
+		credibilities.add(Credibility.Dump);
+		loads.add(load(0x8000, 0x9000, true)); // after the host load
+		credibilities.add(Credibility.Link);
+		assertSameSweep(loads, credibilities);
+	}
+
+	public void testDuplicateBoundariesKeepFirst() throws Exception {
+		final List<MemLoad> loads = new ArrayList<>();
+		final List<Credibility> credibilities = new ArrayList<>();
+		loads.add(load(0x1000, 0x2000, true));
+		credibilities.add(Credibility.Host);
+		loads.add(load(0x1000, 0x2000, false)); // the same range again, dropped
+		credibilities.add(Credibility.Host);
+		assertSameSweep(loads, credibilities);
+	}
+
+	public void testLargeAddresses() throws Exception {
+		assertSameSweep(Collections.singletonList(load(0x1000, Long.MAX_VALUE, false)),
+				Collections.singletonList(Credibility.Desc));
+	}
+
+	public void testRandom() throws Exception {
+		final Random random = new Random(0);
+		for (int round = 0; round < 50; round++) {
+			final List<MemLoad> loads = new ArrayList<>();
+			final List<Credibility> credibilities = new ArrayList<>();
+			for (Credibility credibility : Credibility.values()) {
+				long address = random.nextInt(4) * 0x1000L;
+				for (int i = random.nextInt(40); i > 0; i--) {
+					final long end = address + (1 + random.nextInt(8)) * 0x1000L;
+					loads.add(load(address, end, random.nextBoolean()));
+					credibilities.add(credibility);
+					address = end + random.nextInt(3) * 0x1000L; // adjacent or not
+				}
+			}
+			// registered in no particular order
+			final long seed = random.nextLong();
+			Collections.shuffle(loads, new Random(seed));
+			Collections.shuffle(credibilities, new Random(seed));
+			assertSameSweep(loads, credibilities);
+		}
+	}
+}
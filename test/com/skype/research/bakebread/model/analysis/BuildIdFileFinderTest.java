@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.model.analysis.mock.MockMapInfo;
+import com.skype.research.bakebread.model.analysis.mock.PermSet;
+import com.skype.research.bakebread.model.host.BuildIdFileFinder;
+import com.skype.research.bakebread.model.host.BuildIdStore;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Tests the lookup of host files by build-id, before the lookup by name.
+ */
+public class BuildIdFileFinderTest extends AppFileTestCase {
+	private static final byte[] SHSTRTAB = "\0.shstrtab\0.note.gnu.build-id\0".getBytes();
+	private static final byte[] RIGHT = {0x10, 0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17, 0x18, 0x19,
+			0x1a, 0x1b, 0x1c, 0x1d, 0x1e, 0x1f, 0x20, 0x21, 0x22, 0x23};
+	private static final byte[] WRONG = {0x40, 0x41, 0x42, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+			0x4a, 0x4b, 0x4c, 0x4d, 0x4e, 0x4f, 0x50, 0x51, 0x52, 0x53};
+	private static final MockMapInfo LIBM = new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libm.so");
+
+	private BuildIdStore store;
+	private File rightLibM;
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		super.setUp(tempFolderFile);
+		mkElf(new File(sysLibRoot, "libm.so"), WRONG);
+		rightLibM = mkElf(new File(mkdirs(appLibRoot, "v2"), "libm.so"), RIGHT);
+		store = new BuildIdStore(new File(tempFolderFile, "store"));
+		Assert.assertEquals(2, store.ingest(Arrays.asList(systemRoot, appLibRoot)));
+	}
+
+	/**
+	 * A 32-bit little endian ELF file with no program headers and a build-id note section.
+	 */
+	static File mkElf(File file, byte[] buildId) throws IOException {
+		final int noteOff = 52;
+		final int noteLen = 16 + buildId.length;
+		final int strOff = noteOff + noteLen;
+		final int shOff = (strOff + SHSTRTAB.length + 3) & ~3;
+		final ByteBuffer elf = ByteBuffer.allocate(shOff + 3 * 40).order(ByteOrder.LITTLE_ENDIAN);
+		elf.put(new byte[] {0x7f, 'E', 'L', 'F', 1, 1, 1, 0}).put(new byte[8]);
+		elf.putShort((short) 3).putShort((short) 40).putInt(1).putInt(0).putInt(0).putInt(shOff).putInt(0x5000000);
+		elf.putShort((short) 52).putShort((short) 32).putShort((short) 0).putShort((short) 40);
+		elf.putShort((short) 3).putShort((short) 1);
+		elf.putInt(4).putInt(buildId.length).putInt(3).put("GNU\0".getBytes()).put(buildId);
+		elf.put(SHSTRTAB);
+		elf.position(shOff + 40);
+		elf.putInt(1).putInt(3).putInt(0).putInt(0).putInt(strOff).putInt(SHSTRTAB.length).putInt(0).putInt(0).putInt(1).putInt(0);
+		elf.putInt(11).putInt(7).putInt(2).putInt(0).putInt(noteOff).putInt(noteLen).putInt(0).putInt(0).putInt(4).putInt(0);
+		try (FileOutputStream fos = new FileOutputStream(file)) {
+			fos.write(elf.array());
+		}
+		return file;
+	}
+
+	public void testReadBuildId() throws Exception {
+		Assert.assertTrue(Arrays.equals(RIGHT, BuildIdStore.readBuildId(rightLibM)));
+		Assert.assertEquals(null, BuildIdStore.readBuildId(new File(sysLibRoot, "libc.so")));
+	}
+
+	public void testByBuildId() throws Exception {
+		final BuildIdFileFinder finder = new BuildIdFileFinder(store, fileFinder);
+		Assert.assertEquals(new File(sysLibRoot, "libm.so").getCanonicalFile(), finder.find(LIBM).getCanonicalFile());
+		finder.putBuildId(LIBM.getName(), RIGHT);
+		Assert.assertEquals(rightLibM.getCanonicalFile(), finder.find(LIBM));
+	}
+
+	public void testByPrefix() throws Exception {
+		final BuildIdFileFinder finder = new BuildIdFileFinder(store, fileFinder);
+		finder.putBuildId(LIBM.getName(), Arrays.copyOf(RIGHT, 16));
+		Assert.assertEquals(rightLibM.getCanonicalFile(), finder.find(LIBM));
+	}
+
+	public void testByName() throws Exception {
+		final BuildIdFileFinder finder = new BuildIdFileFinder(store, fileFinder);
+		finder.putBuildId(LIBM.getName(), new byte[] {1, 2, 3, 4});
+		Assert.assertEquals(new File(sysLibRoot, "libm.so").getCanonicalFile(), finder.find(LIBM).getCanonicalFile());
+		Assert.assertEquals(LIBC_SIZE, finder.find(new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libc.so")).length());
+	}
+
+	public void testIngestOnce() throws Exception {
+		Assert.assertEquals(0, store.ingest(Arrays.asList(systemRoot, appLibRoot)));
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.model.host.ChannelPool;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Tests sharing, eviction and reopening of pooled host file channels.
+ */
+public class ChannelPoolTest extends FileTestCase {
+	private final ChannelPool pool = new ChannelPool(2);
+	private File libA;
+	private File libB;
+	private File libC;
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		libA = mkFile(tempFolderFile, "liba.so", 100, new byte[] {'a'});
+		libB = mkFile(tempFolderFile, "libb.so", 200, new byte[] {'b'});
+		libC = mkFile(tempFolderFile, "libc.so", 300, new byte[] {'c'});
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		pool.close();
+		super.tearDown();
+	}
+
+	private static byte readFirst(FileChannel channel) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(1);
+		Assert.assertEquals(1, channel.read(buffer, 0));
+		return buffer.get(0);
+	}
+
+	public void testSharedByCanonicalFile() throws Exception {
+		final File dotted = new File(new File(libA.getParentFile(), "."), libA.getName());
+		try (FileChannel first = pool.acquire(libA); FileChannel second = pool.acquire(dotted)) {
+			Assert.assertEquals(100, first.size());
+			Assert.assertEquals('a', readFirst(second));
+			first.position(10);
+			Assert.assertEquals(0, second.position()); // positions are per lease
+		}
+		Assert.assertEquals(1, pool.getOpenCount());
+		Assert.assertEquals(1, pool.getOpenedCount());
+	}
+
+	public void testIdleEvictedAndReopened() throws Exception {
+		pool.acquire(libA).close();
+		pool.acquire(libB).close();
+		pool.acquire(libA).close(); // libB is now the least recently used
+		pool.acquire(libC).close();
+		Assert.assertEquals(2, pool.getOpenCount());
+		Assert.assertEquals(3, pool.getOpenedCount());
+		pool.acquire(libA).close(); // still open
+		Assert.assertEquals(3, pool.getOpenedCount());
+		try (FileChannel channel = pool.acquire(libB)) {
+			Assert.assertEquals('b', readFirst(channel));
+		}
+		Assert.assertEquals(4, pool.getOpenedCount());
+		Assert.assertEquals(2, pool.getOpenCount());
+	}
+
+	public void testLeasedKeptOverBudget() throws Exception {
+		try (FileChannel a = pool.acquire(libA); FileChannel b = pool.acquire(libB); FileChannel c = pool.acquire(libC)) {
+			Assert.assertEquals(3, pool.getOpenCount());
+			Assert.assertEquals('a', readFirst(a));
+			Assert.assertEquals('b', readFirst(b));
+			Assert.assertEquals('c', readFirst(c));
+		}
+		Assert.assertEquals(2, pool.getOpenCount());
+	}
+
+	public void testReopenedAfterInterrupt() throws Exception {
+		try (FileChannel interrupted = pool.acquire(libA); FileChannel other = pool.acquire(libA)) {
+			Thread.currentThread().interrupt();
+			try {
+				readFirst(interrupted);
+				Assert.fail("Read while interrupted");
+			} catch (ClosedByInterruptException expected) {
+				Assert.assertTrue(Thread.interrupted());
+			}
+			try {
+				readFirst(other);
+				Assert.fail("Read a closed channel");
+			} catch (ClosedChannelException expected) {
+				// the shared channel is gone for its other leases too
+			}
+		}
+		try (FileChannel channel = pool.acquire(libA)) {
+			Assert.assertEquals('a', readFirst(channel));
+		}
+		Assert.assertEquals(2, pool.getOpenedCount());
+		Assert.assertEquals(1, pool.getOpenCount());
+	}
+}
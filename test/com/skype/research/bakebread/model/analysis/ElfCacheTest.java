@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.coredump.ELF;
+import com.skype.research.bakebread.coredump.MalformedElfMagicException;
+import com.skype.research.bakebread.coredump.Section;
+import com.skype.research.bakebread.io.AutoClose;
+import com.skype.research.bakebread.io.ReverseEndianDataInput;
+import com.skype.research.bakebread.model.host.ElfCache;
+import com.skype.research.bakebread.nio.BufferSink;
+import com.skype.research.bakebread.nio.FileMemory;
+import junit.framework.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Tests the persistent cache of parsed ELF headers.
+ */
+public class ElfCacheTest extends FileTestCase {
+	private static final byte[] BUILD_ID = {1, 2, 3, 4, 5, 6, 7, 8};
+
+	private File elfFile;
+	private File cacheFile;
+	private final AutoClose autoClose = new AutoClose();
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		elfFile = BuildIdFileFinderTest.mkElf(new File(tempFolderFile, "libm.so"), BUILD_ID);
+		cacheFile = new File(tempFolderFile, ElfCache.FILE_NAME);
+	}
+
+	private ELF parse(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			ELF elf = new ELF(ELF.Preset.ANDROID_32, ELF.Type.DYN);
+			elf.readExternal(new ReverseEndianDataInput(raf), raf.getChannel());
+			return elf;
+		}
+	}
+
+	private FileMemory.ChannelSource source(final File file) {
+		return new FileMemory.ChannelSource() {
+			@Override
+			public FileChannel open() throws IOException {
+				return autoClose.register(new RandomAccessFile(file, "r")).getChannel();
+			}
+		};
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		autoClose.close();
+		super.tearDown();
+	}
+
+	public void testRoundTrip() throws Exception {
+		final ELF parsed = parse(elfFile);
+		try (ElfCache elfCache = ElfCache.open(cacheFile)) {
+			Assert.assertNull(elfCache.get(elfFile, source(elfFile)));
+			elfCache.put(elfFile, parsed);
+		}
+		Assert.assertTrue(cacheFile.isFile());
+		try (ElfCache elfCache = ElfCache.open(cacheFile)) {
+			final ELF cached = elfCache.get(elfFile, source(elfFile));
+			Assert.assertNotNull(cached);
+			Assert.assertEquals(parsed.getSectionCount(), cached.getSectionCount());
+			for (int i = 0; i < parsed.getSectionCount(); i++) {
+				Assert.assertEquals(parsed.getSection(i).toString(), cached.getSection(i).toString());
+			}
+			final Section note = cached.getSection(".note.gnu.build-id");
+			Assert.assertEquals(parsed.getSectionIndex(".note.gnu.build-id"), cached.getSectionIndex(".note.gnu.build-id"));
+			final ByteBuffer contents = ByteBuffer.allocate((int) note.getSize());
+			note.getData().writeTo(new BufferSink(contents));
+			Assert.assertEquals(BUILD_ID[0], contents.get(16));
+			Assert.assertEquals(parsed.getRelocatedReadOnly().getType(), cached.getRelocatedReadOnly().getType());
+		}
+	}
+
+	public void testModified() throws Exception {
+		try (ElfCache elfCache = ElfCache.open(cacheFile)) {
+			elfCache.put(elfFile, parse(elfFile));
+		}
+		Assert.assertTrue(elfFile.setLastModified(elfFile.lastModified() + 2000));
+		try (ElfCache elfCache = ElfCache.open(cacheFile)) {
+			Assert.assertNull(elfCache.get(elfFile, source(elfFile)));
+		}
+	}
+
+	public void testNotElf() throws Exception {
+		final File text = mkFile(elfFile.getParentFile(), "README", 100, new byte[] {'t', 'x', 't'});
+		try (ElfCache elfCache = ElfCache.open(cacheFile)) {
+			elfCache.putNotElf(text);
+		}
+		try (ElfCache elfCache = ElfCache.open(cacheFile)) {
+			elfCache.get(text, source(text));
+			Assert.fail("not an ELF file");
+		} catch (MalformedElfMagicException expected) {
+			// cached verdict
+		}
+	}
+
+	public void testUnwritable() throws Exception {
+		final File unwritable = new File(new File(elfFile, "not-a-folder"), ElfCache.FILE_NAME);
+		final ByteArrayOutputStream warnings = new ByteArrayOutputStream();
+		try (ElfCache elfCache = ElfCache.open(unwritable, new PrintStream(warnings, true))) {
+			elfCache.put(elfFile, parse(elfFile));
+			Assert.assertNotNull(elfCache.get(elfFile, source(elfFile)));
+		}
+		Assert.assertFalse(unwritable.exists());
+		Assert.assertTrue(warnings.toString().startsWith("Warning: cannot write the ELF cache"));
+	}
+
+	public void testBoundedInMemory() throws Exception {
+		final File folder = mkdirs(elfFile.getParentFile(), "text");
+		final File[] texts = new File[ElfCache.MAX_ADDED + 1];
+		try (ElfCache elfCache = ElfCache.open(cacheFile)) {
+			for (int i = 0; i < texts.length; i++) {
+				texts[i] = mkFile(folder, "README." + i, 10, new byte[] {'t', 'x', 't'});
+				elfCache.putNotElf(texts[i]);
+			}
+			Assert.assertTrue(cacheFile.isFile()); // written back before the last one
+			for (File text : texts) {
+				try {
+					elfCache.get(text, source(text));
+					Assert.fail("not an ELF file");
+				} catch (MalformedElfMagicException expected) {
+					// mapped anew, or still in memory
+				}
+			}
+		}
+		try (ElfCache elfCache = ElfCache.open(cacheFile)) {
+			elfCache.get(texts[texts.length - 1], source(texts[texts.length - 1]));
+			Assert.fail("not an ELF file");
+		} catch (MalformedElfMagicException expected) {
+			// all written back on close
+		}
+	}
+}
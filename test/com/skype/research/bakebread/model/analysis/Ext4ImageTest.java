@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.io.AutoClose;
+import com.skype.research.bakebread.model.analysis.mock.MockMapInfo;
+import com.skype.research.bakebread.model.analysis.mock.PermSet;
+import com.skype.research.bakebread.model.host.Ext4File;
+import com.skype.research.bakebread.model.host.Ext4Image;
+import com.skype.research.bakebread.model.host.HostCache;
+import com.skype.research.bakebread.model.host.HostFileFinder;
+import com.skype.research.sparse.ChunkType;
+import com.skype.research.sparse.SparseFile;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Tests the lookup of host files in ext4 images, plain and sparse, without mounting them.
+ * The images, meant to be mounted at /system, have been made with mke2fs -b 1024 -d from
+ *   lib/libfoo.so        5000 bytes of (i * 7 + 3)
+ *   lib/libbig.so       40000 bytes of (i * 13), in two extents
+ *   lib64 -> lib
+ *   bin/libfoo.so -> /lib/libfoo.so
+ */
+public class Ext4ImageTest extends FileTestCase {
+	private static final int SPARSE_BLOCK = 4096;
+
+	private final HostCache hostCache = new HostCache(null, new AutoClose());
+	private File ext4;
+	private File ext2;
+	private File sparse;
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		ext4 = copyResource("system-ext4.img", tempFolderFile);
+		ext2 = copyResource("system-ext2.img", tempFolderFile);
+		sparse = toSparse(ext4, new File(tempFolderFile, "system.sparse.img"), null);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		hostCache.close();
+		super.tearDown();
+	}
+
+	private File copyResource(String name, File folder) throws IOException {
+		final File file = new File(folder, name);
+		try (InputStream inputStream = getClass().getResourceAsStream(name)) {
+			Files.copy(inputStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return file;
+	}
+
+	/**
+	 * Packs zero blocks as fills (the first run) and skips (the others), the rest as raw data.
+	 * @param trailer the type of a last chunk, of four bytes and no blocks, e.g. a CRC32; or null
+	 */
+	private static File toSparse(File image, File sparse, Short trailer) throws IOException {
+		final byte[] raw = Files.readAllBytes(image.toPath());
+		final int blocks = raw.length / SPARSE_BLOCK;
+		final ByteBuffer chunks = ByteBuffer.allocate(raw.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+		int chunkCount = 0;
+		boolean filled = false;
+		for (int block = 0; block < blocks; chunkCount++) {
+			final boolean zero = isZero(raw, block);
+			int end = block + 1;
+			while (end < blocks && isZero(raw, end) == zero) {
+				end++;
+			}
+			if (!zero) {
+				chunks.putShort(ChunkType.CHUNK_TYPE_DATA.magic).putShort((short) 0)
+						.putInt(end - block).putInt(12 + (end - block) * SPARSE_BLOCK)
+						.put(raw, block * SPARSE_BLOCK, (end - block) * SPARSE_BLOCK);
+			} else if (!filled) {
+				chunks.putShort(ChunkType.CHUNK_TYPE_ZERO.magic).putShort((short) 0)
+						.putInt(end - block).putInt(12 + 4).putInt(0);
+				filled = true;
+			} else {
+				chunks.putShort(ChunkType.CHUNK_TYPE_SKIP.magic).putShort((short) 0)
+						.putInt(end - block).putInt(12);
+			}
+			block = end;
+		}
+		if (trailer != null) {
+			chunks.putShort(trailer).putShort((short) 0).putInt(0).putInt(12 + 4).putInt(0x12345678);
+			chunkCount++;
+		}
+		final ByteBuffer header = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt((int) SparseFile.MAGIC).putShort((short) 1).putShort((short) 0)
+				.putShort((short) 28).putShort((short) 12)
+				.putInt(SPARSE_BLOCK).putInt(blocks).putInt(chunkCount).putInt(0);
+		try (FileOutputStream fos = new FileOutputStream(sparse)) {
+			fos.write(header.array());
+			fos.write(chunks.array(), 0, chunks.position());
+		}
+		return sparse;
+	}
+
+	private static boolean isZero(byte[] raw, int block) {
+		for (int i = block * SPARSE_BLOCK; i < (block + 1) * SPARSE_BLOCK; i++) {
+			if (raw[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] pattern(int length, int multiplier, int addend) {
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (i * multiplier + addend);
+		}
+		return bytes;
+	}
+
+	private byte[] read(File file) throws IOException {
+		try (FileChannel channel = hostCache.getChannelSource(file).open()) {
+			final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining()) {
+				Assert.assertTrue(channel.read(buffer, buffer.position()) > 0);
+			}
+			return buffer.array();
+		}
+	}
+
+	private void assertImage(File imageFile) throws IOException {
+		try (Ext4Image image = Ext4Image.open(imageFile)) {
+			Assert.assertNotNull(image);
+			assertImage(imageFile, image);
+		}
+	}
+
+	private void assertImage(File imageFile, Ext4Image image) throws IOException {
+		final File libFoo = image.find("/system/lib/libfoo.so");
+		Assert.assertTrue(libFoo instanceof Ext4File);
+		Assert.assertEquals(new File(imageFile.getPath() + "!/lib/libfoo.so"), libFoo);
+		Assert.assertEquals(5000, libFoo.length());
+		Assert.assertTrue(Arrays.equals(pattern(5000, 7, 3), read(libFoo)));
+		Assert.assertTrue(Arrays.equals(pattern(40000, 13, 0), read(image.find("/system/lib/libbig.so"))));
+		Assert.assertEquals(5000, image.find("/system/lib64/libfoo.so").length());
+		Assert.assertEquals(5000, image.find("/system/bin/libfoo.so").length());
+		Assert.assertEquals(null, image.find("/system/lib/libc.so"));
+		Assert.assertEquals(null, image.find("/system/lib")); // not a regular file
+	}
+
+	public void testExtents() throws Exception {
+		assertImage(ext4);
+	}
+
+	public void testBlockMaps() throws Exception {
+		assertImage(ext2);
+	}
+
+	public void testSparse() throws Exception {
+		Assert.assertTrue(sparse.length() < ext4.length());
+		assertImage(sparse);
+	}
+
+	public void testCrcChunk() throws Exception {
+		assertImage(toSparse(ext4, new File(sparse.getParentFile(), "crc.sparse.img"), (short) 0xCAC4));
+	}
+
+	public void testUnknownChunk() throws Exception {
+		final File unknown = toSparse(ext4, new File(sparse.getParentFile(), "unknown.sparse.img"), (short) 0xCACF);
+		try {
+			Ext4Image.open(unknown);
+			Assert.fail("Opened an unknown chunk type");
+		} catch (IOException expected) {
+			// not an IllegalArgumentException
+		}
+		try (HostFileFinder finder = new HostFileFinder(unknown, sparse)) {
+			// the unreadable image is passed over, the next root is looked into
+			for (int i = 0; i < 2; i++) {
+				Assert.assertTrue(finder.find(new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libbig.so"))
+						.getPath().startsWith(sparse.getPath()));
+			}
+		}
+	}
+
+	public void testNotAnImage() throws Exception {
+		Assert.assertEquals(null, Ext4Image.open(mkFile(sparse.getParentFile(), "readme", 4096, new byte[] {'t', 'x', 't'})));
+		Assert.assertEquals(null, Ext4Image.open(mkFile(sparse.getParentFile(), "empty", 0, new byte[0])));
+	}
+
+	public void testConcurrentLookups() throws Exception {
+		try (final Ext4Image image = Ext4Image.open(sparse)) {
+			final Throwable[] failure = new Throwable[1];
+			final Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int j = 0; j < 20; j++) {
+								assertImage(sparse, image);
+							}
+						} catch (Throwable e) {
+							failure[0] = e;
+						}
+					}
+				};
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			Assert.assertNull(failure[0]);
+		}
+	}
+
+	public void testHostFileFinder() throws Exception {
+		try (HostFileFinder finder = new HostFileFinder(sparse.getParentFile(), sparse)) {
+			final File libBig = finder.find(new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libbig.so"));
+			Assert.assertTrue(libBig instanceof Ext4File);
+			Assert.assertTrue(Arrays.equals(pattern(40000, 13, 0), read(libBig)));
+			Assert.assertEquals(null, finder.find(new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libc.so")));
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.coredump.ELF;
+import com.skype.research.bakebread.coredump.MalformedElfMagicException;
+import com.skype.research.bakebread.io.AutoClose;
+import com.skype.research.bakebread.model.analysis.mock.MockMapInfo;
+import com.skype.research.bakebread.model.analysis.mock.PermSet;
+import com.skype.research.bakebread.model.host.FileFinder;
+import com.skype.research.bakebread.model.host.HostCache;
+import com.skype.research.bakebread.model.memory.MapInfo;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the sharing of parsed ELF headers between conversions.
+ */
+public class HostCacheTest extends TestCase {
+	private static final File LIBC = new File("/system/lib/libc.so");
+
+	private final HostCache hostCache = new HostCache(null, new AutoClose());
+	private final AtomicInteger parsed = new AtomicInteger();
+
+	@Override
+	protected void tearDown() throws Exception {
+		hostCache.close();
+		super.tearDown();
+	}
+
+	private Callable<ELF> parser() {
+		return new Callable<ELF>() {
+			@Override
+			public ELF call() {
+				parsed.incrementAndGet();
+				return new ELF(ELF.Preset.ANDROID_32, ELF.Type.DYN);
+			}
+		};
+	}
+
+	public void testSingleFlight() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<ELF> slowParser = new Callable<ELF>() {
+			@Override
+			public ELF call() throws Exception {
+				parsed.incrementAndGet();
+				started.countDown();
+				release.await();
+				return new ELF(ELF.Preset.ANDROID_32, ELF.Type.DYN);
+			}
+		};
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final Callable<ELF> conversion = new Callable<ELF>() {
+				@Override
+				public ELF call() throws Exception {
+					return hostCache.getElf(LIBC, slowParser);
+				}
+			};
+			final Future<ELF> first = executor.submit(conversion);
+			started.await();
+			final Future<ELF> second = executor.submit(conversion);
+			final Future<ELF> third = executor.submit(conversion);
+			release.countDown();
+			Assert.assertSame(first.get(), second.get());
+			Assert.assertSame(first.get(), third.get());
+			Assert.assertEquals(1, parsed.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testNotElfKept() throws Exception {
+		final Callable<ELF> readme = new Callable<ELF>() {
+			@Override
+			public ELF call() throws IOException {
+				parsed.incrementAndGet();
+				throw new MalformedElfMagicException("signature");
+			}
+		};
+		for (int i = 0; i < 2; i++) {
+			try {
+				hostCache.getElf(LIBC, readme);
+				Assert.fail("not an ELF file");
+			} catch (MalformedElfMagicException expected) {
+				// the verdict stands
+			}
+		}
+		Assert.assertEquals(1, parsed.get());
+	}
+
+	public void testFailureForgotten() throws Exception {
+		try {
+			hostCache.getElf(LIBC, new Callable<ELF>() {
+				@Override
+				public ELF call() throws IOException {
+					throw new IOException("busy");
+				}
+			});
+			Assert.fail("not parsed");
+		} catch (IOException expected) {
+			// tried again below
+		}
+		Assert.assertNotNull(hostCache.getElf(LIBC, parser()));
+		Assert.assertEquals(1, parsed.get());
+	}
+
+	public void testBounded() throws Exception {
+		final ELF libc = hostCache.getElf(LIBC, parser());
+		for (int i = 0; i < HostCache.MAX_ELVES - 1; i++) {
+			hostCache.getElf(new File("lib" + i + ".so"), parser());
+		}
+		Assert.assertSame(libc, hostCache.getElf(LIBC, parser())); // recently used again
+		hostCache.getElf(new File("libz.so"), parser());
+		Assert.assertSame(libc, hostCache.getElf(LIBC, parser()));
+		Assert.assertEquals(HostCache.MAX_ELVES + 1, parsed.get());
+		hostCache.getElf(new File("lib0.so"), parser()); // evicted by libz.so
+		Assert.assertEquals(HostCache.MAX_ELVES + 2, parsed.get());
+	}
+
+	public void testChangedFileParsedAgain() throws Exception {
+		final File lib = File.createTempFile("lib", ".so");
+		try {
+			final ELF first = hostCache.getElf(lib, parser());
+			Assert.assertSame(first, hostCache.getElf(lib, parser()));
+			Files.write(lib.toPath(), new byte[] {0x7f, 'E', 'L', 'F'}); // e.g. a sysroot update
+			final ELF second = hostCache.getElf(lib, parser());
+			Assert.assertNotSame(first, second);
+			Assert.assertTrue(lib.setLastModified(lib.lastModified() + 2000));
+			Assert.assertNotSame(second, hostCache.getElf(lib, parser()));
+			Assert.assertEquals(3, parsed.get());
+		} finally {
+			//noinspection ResultOfMethodCallIgnored
+			lib.delete();
+		}
+	}
+
+	public void testRefreshForgetsLookups() throws Exception {
+		final AtomicInteger lookups = new AtomicInteger();
+		final HostCache finding = new HostCache(new FileFinder() {
+			@Override
+			public File find(MapInfo name) {
+				lookups.incrementAndGet();
+				return null;
+			}
+		}, new AutoClose());
+		try {
+			final MockMapInfo libm = new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libm.so");
+			Assert.assertNull(finding.getFinder().find(libm));
+			Assert.assertNull(finding.getFinder().find(libm)); // not found, and remembered as such
+			Assert.assertEquals(1, lookups.get());
+			finding.refresh();
+			Assert.assertNull(finding.getFinder().find(libm));
+			Assert.assertEquals(2, lookups.get());
+		} finally {
+			finding.close();
+		}
+	}
+}
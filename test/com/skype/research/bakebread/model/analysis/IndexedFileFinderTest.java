@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.model.analysis.mock.MockMapInfo;
+import com.skype.research.bakebread.model.analysis.mock.PermSet;
+import com.skype.research.bakebread.model.host.IndexedFileFinder;
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Tests the indexed file locator against the same expectations, and its index refresh.
+ */
+public class IndexedFileFinderTest extends FileFinderTest {
+	private File indexFolder;
+
+	@Override
+	protected void setUp(File tempFolderFile) throws IOException {
+		super.setUp(tempFolderFile);
+		indexFolder = new File(new File(tempFolderFile, "cache"), IndexedFileFinder.FOLDER_NAME);
+		fileFinder = new IndexedFileFinder(Arrays.asList(systemRoot, appLibRoot), indexFolder);
+	}
+
+	public void testRefresh() throws Exception {
+		final MockMapInfo libm = new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libm.so");
+		Assert.assertEquals(null, fileFinder.find(libm));
+		mkFile(sysLibRoot, "libm.so", LIBC_SIZE, new byte[] {'l', 'i', 'b', 'm'});
+		// folder timestamps may be coarse, make the change visible
+		Assert.assertTrue(sysLibRoot.setLastModified(sysLibRoot.lastModified() + 2000));
+		// what is indexed stays indexed until the folder changes
+		Assert.assertEquals(null, fileFinder.find(libm));
+		fileFinder = new IndexedFileFinder(Arrays.asList(systemRoot, appLibRoot), indexFolder);
+		Assert.assertEquals(LIBC_SIZE, fileFinder.find(libm).length());
+	}
+
+	public void testIndexOutsideRoot() throws Exception {
+		// the roots are left as they are, an index per root is kept aside
+		Assert.assertEquals(Arrays.asList("system"), Arrays.asList(systemRoot.list()));
+		Assert.assertEquals(Arrays.asList("base.apk"), Arrays.asList(appLibRoot.list()));
+		final String[] sidecars = indexFolder.list();
+		Assert.assertEquals(2, sidecars.length);
+		for (String sidecar : sidecars) {
+			Assert.assertTrue(sidecar.endsWith(".idx"));
+		}
+	}
+
+	public void testDamagedIndex() throws Exception {
+		for (File sidecar : indexFolder.listFiles()) {
+			Files.write(sidecar.toPath(), new byte[] {'B', 'B', 'I'});
+		}
+		fileFinder = new IndexedFileFinder(Arrays.asList(systemRoot, appLibRoot), indexFolder);
+		testFullPath();
+		testLoneFile();
+		for (File sidecar : indexFolder.listFiles()) {
+			Assert.assertTrue(sidecar.length() > 3); // listed and saved again
+		}
+	}
+
+	public void testRefreshInPlace() throws Exception {
+		final MockMapInfo libm = new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libm.so");
+		Assert.assertEquals(null, fileFinder.find(libm));
+		mkFile(sysLibRoot, "libm.so", LIBC_SIZE, new byte[] {'l', 'i', 'b', 'm'});
+		Assert.assertTrue(sysLibRoot.setLastModified(sysLibRoot.lastModified() + 2000));
+		((IndexedFileFinder) fileFinder).refresh(); // e.g. before the next job of a resident converter
+		Assert.assertEquals(LIBC_SIZE, fileFinder.find(libm).length());
+	}
+
+	public void testRemoval() throws Exception {
+		final MockMapInfo libc = new MockMapInfo(0, 1024, PermSet.LIBRARY, 0, "/system/lib/libc.so");
+		Assert.assertNotNull(fileFinder.find(libc));
+		Assert.assertTrue(new File(sysLibRoot, "libc.so").delete());
+		Assert.assertTrue(sysLibRoot.delete());
+		fileFinder = new IndexedFileFinder(Arrays.asList(systemRoot, appLibRoot), indexFolder);
+		Assert.assertEquals(null, fileFinder.find(libc));
+	}
+}
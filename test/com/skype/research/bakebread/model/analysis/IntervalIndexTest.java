@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.model.analysis;
+
+import com.skype.research.bakebread.model.memory.MemArea;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.SortedMap;
+
+/**
+ * Test, {@link IntervalIndex}, the read-only memory map, against {@link MemHeap}.
+ */
+public class IntervalIndexTest extends TestCase {
+
+	final IntervalIndex<MemArea> index = IntervalIndex.<MemArea>of(Arrays.asList(
+			new ResolvedMemArea(3000, 4000),
+			new ResolvedMemArea(1000, 2000),
+			new ResolvedMemArea(2000, 2500),
+			new ResolvedMemArea(5000, 5000))); // empty, skipped
+
+	public void testPopulate() throws Exception {
+		Assert.assertEquals(3, index.size());
+		Assert.assertEquals(Arrays.<MemArea>asList(
+				new ResolvedMemArea(1000, 2000),
+				new ResolvedMemArea(2000, 2500),
+				new ResolvedMemArea(3000, 4000)), index.values());
+		try {
+			IntervalIndex.<MemArea>of(Arrays.asList(
+					new ResolvedMemArea(3000, 4000),
+					new ResolvedMemArea(1500, 3500)));
+			Assert.fail();
+		} catch (IllegalStateException expected) {
+			// overlap
+		}
+	}
+
+	public void testFind() throws Exception {
+		Assert.assertNull(index.find(999));
+		Assert.assertEquals(0, index.indexOf(1000));
+		Assert.assertEquals(0, index.indexOf(1999));
+		Assert.assertEquals(1, index.indexOf(2000));
+		Assert.assertEquals(-1, index.indexOf(2500));
+		Assert.assertEquals(new ResolvedMemArea(3000, 4000), index.map(3999));
+		Assert.assertNull(index.find(4000));
+		try {
+			index.map(2700);
+			Assert.fail();
+		} catch (NoSuchElementException expected) {
+			// a gap
+		}
+	}
+
+	public void testRanges() throws Exception {
+		Assert.assertEquals(0, index.from(0));
+		Assert.assertEquals(1, index.from(2000));
+		Assert.assertEquals(2, index.from(2500));
+		Assert.assertEquals(3, index.from(4000));
+		Assert.assertEquals(0, index.to(1000));
+		Assert.assertEquals(2, index.to(3000));
+		Assert.assertEquals(3, index.to(3001));
+		Assert.assertTrue(index.overlaps(2499, 2501));
+		Assert.assertFalse(index.overlaps(2500, 3000));
+		Assert.assertFalse(index.overlaps(1500, 1500));
+		Assert.assertTrue(index.covers(1500, 2500));
+		Assert.assertFalse(index.covers(1500, 2501));
+		Assert.assertFalse(index.covers(1500, 3500));
+		Assert.assertFalse(index.covers(999, 1500));
+	}
+
+	public void testPayloads() throws Exception {
+		final IntervalIndex<String> byOffset = new IntervalIndex.Builder<String>()
+				.add(0x100, 0x200, ".text")
+				.add(0x34, 0x100, ".rel.plt")
+				.add(0x200, 0x280, ".data")
+				.build();
+		Assert.assertEquals(".rel.plt", byOffset.find(0x34));
+		Assert.assertEquals(".text", byOffset.find(0x1ff));
+		Assert.assertEquals(".data", byOffset.get(byOffset.indexOf(0x27f)));
+		Assert.assertNull(byOffset.find(0x280));
+	}
+
+	public void testAgreesWithMemHeap() throws Exception {
+		final Random random = new Random(0);
+		final MemHeap<MemArea> memHeap = new MemHeap<>();
+		long address = 0;
+		for (int i = 0; i < 500; i++) {
+			address += random.nextInt(3) * 0x1000; // some gaps
+			final long end = address + (1 + random.nextInt(4)) * 0x1000;
+			memHeap.add(new ResolvedMemArea(address, end));
+			address = end;
+		}
+		final IntervalIndex<MemArea> built = IntervalIndex.of(memHeap.values());
+		for (int i = 0; i < 5000; i++) {
+			final long start = random.nextInt((int) address + 0x1000);
+			final long end = start + random.nextInt(0x8000);
+			Assert.assertSame(memHeap.get(memHeap.pointMapping(start)), built.find(start));
+			final SortedMap<MemArea, MemArea> subMap = memHeap.subMap(start, end, true, true, false);
+			final int from = built.from(start);
+			Assert.assertEquals(subMap.size(), built.to(end) - from);
+			int j = from;
+			for (MemArea area : subMap.values()) {
+				Assert.assertSame(area, built.get(j++));
+			}
+			Assert.assertEquals(!subMap.isEmpty(), built.overlaps(start, end));
+		}
+	}
+}
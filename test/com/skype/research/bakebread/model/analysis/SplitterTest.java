@@ -264,6 +264,30 @@ public class SplitterTest extends AppFileTestCase {
 				new boolean[] { true, true, false, false, true, false });
 	}
 
+	/**
+	 * files resolved ahead on a pool are mapped exactly as those resolved in turn
+	 * @throws Exception
+	 */
+	public void testParallelResolution() throws Exception {
+		final HostFileMapper parallelMapper = new HostFileMapper(fogConfig, autoClose);
+		parallelMapper.setResolverCount(4);
+		List<MemLoad> result = Splitter.split(
+				Arrays.asList(
+						new MockMapInfo(1024, 2048, PermSet.LIBRARY,    0, "/system/lib/libc.so"),
+						new MockMapInfo(2560, 3072, PermSet.RO_DATA, 1536, "/system/lib/libc.so"),
+						new MockMapInfo(4096, 6144, PermSet.RW_DATA, 3072, "/system/lib/libc.so"),
+						new MockMapInfo(8192, 9216, PermSet.PACKAGE, 1600, "/data/app/com.skype.research/base.apk")
+				),
+				Collections.<MemData>emptyList(),
+				new HostFileFinder(Arrays.asList(systemRoot, appLibRoot)),
+				parallelMapper,
+				valConfig, new FragileValidator());
+		Assert.assertEquals(createMapsAndFilesMapping().toString(), result.toString());
+		validateReliability(result,
+				new boolean[]{true, true, false, true, false},
+				new boolean[]{true, true, false, true, false});
+	}
+
 	public List<MemLoad> createMapsAndFilesMapping() {
 		return split(
 				Arrays.asList(
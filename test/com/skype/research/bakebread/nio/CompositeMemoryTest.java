@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio;
+
+import com.skype.research.bakebread.model.analysis.ResolvedMemArea;
+import com.skype.research.bakebread.model.analysis.ResolvedMemData;
+import com.skype.research.bakebread.model.memory.MemData;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+/**
+ * Composite memory writing and trimming.
+ */
+public class CompositeMemoryTest extends TestCase {
+	private static final byte[] BYTES = "0123456789abcdef".getBytes();
+
+	private static CompositeMemory sample() {
+		return new CompositeMemory(Arrays.<MemData>asList(
+				new ResolvedMemData(0x1000, 0x1004, new ByteMemory(ByteBuffer.wrap(BYTES, 0, 4).slice())),
+				new ResolvedMemData(0x1004, 0x100c, new FillMemory(new byte[] {'x'}, new ResolvedMemArea(0x1004, 0x100c))),
+				new ResolvedMemData(0x100c, 0x1010, new ByteMemory(ByteBuffer.wrap(BYTES, 12, 4).slice()))
+		));
+	}
+
+	private static String contents(Memory memory) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		memory.writeTo(Channels.newChannel(baos));
+		return new String(baos.toByteArray());
+	}
+
+	public void testWrite() throws IOException {
+		Assert.assertEquals("0123xxxxxxxxcdef", contents(sample()));
+	}
+
+	public void testTransform() throws IOException {
+		final ResolvedMemArea whole = new ResolvedMemArea(0x1000, 0x1010);
+		Assert.assertEquals("23xxxxxxxxcd", contents(sample().transform(whole, new ResolvedMemArea(0x1002, 0x100e))));
+		Assert.assertEquals("xxx", contents(sample().transform(whole, new ResolvedMemArea(0x1005, 0x1008))));
+	}
+}
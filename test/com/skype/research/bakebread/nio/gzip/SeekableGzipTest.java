@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ *
+ * Licensed under the MIT license.
+ */
+
+package com.skype.research.bakebread.nio.gzip;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Random access to gzip contents against plain inflation.
+ */
+public class SeekableGzipTest extends TestCase {
+	private static final int LENGTH = 5 * (1 << 20) + 12345;
+
+	private File gzFile;
+	private byte[] contents;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		gzFile = File.createTempFile("seekable", ".dmp.gz");
+		// compressible, but not trivially: words, runs and noise
+		contents = new byte[LENGTH];
+		final Random random = new Random(LENGTH);
+		int i = 0;
+		while (i < LENGTH) {
+			int run = Math.min(LENGTH - i, 1 + random.nextInt(300));
+			switch (random.nextInt(3)) {
+				case 0: Arrays.fill(contents, i, i + run, (byte) random.nextInt()); break;
+				case 1: for (int j = 0; j < run; j++) contents[i + j] = (byte) ('a' + random.nextInt(6)); break;
+				default: for (int j = 0; j < run; j++) contents[i + j] = (byte) random.nextInt(); break;
+			}
+			i += run;
+		}
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		//noinspection ResultOfMethodCallIgnored
+		gzFile.delete();
+		//noinspection ResultOfMethodCallIgnored
+		SeekableGzip.sidecarOf(gzFile).delete();
+		super.tearDown();
+	}
+
+	private void writeMembers(int... splits) throws IOException {
+		try (OutputStream os = new FileOutputStream(gzFile)) {
+			int from = 0;
+			for (int k = 0; k <= splits.length; k++) {
+				int to = k < splits.length ? splits[k] : LENGTH;
+				GZIPOutputStream gzos = new GZIPOutputStream(os) {
+					{ def.setLevel(Deflater.BEST_SPEED); }
+				};
+				gzos.write(contents, from, to - from);
+				gzos.finish();
+				from = to;
+			}
+		}
+	}
+
+	private void assertRandomAccess(SeekableGzip gzip) throws IOException {
+		Assert.assertEquals(LENGTH, gzip.size());
+		Assert.assertTrue(gzip.getSeekPointCount() > 1);
+		final Random random = new Random(7);
+		for (int k = 0; k < 200; k++) {
+			final int position = random.nextInt(LENGTH);
+			final int length = Math.min(LENGTH - position, 1 + random.nextInt(k % 2 == 0 ? 64 : 200000));
+			final ByteBuffer dst = ByteBuffer.allocate(length);
+			while (dst.hasRemaining()) {
+				Assert.assertTrue(gzip.read(dst, position + dst.position()) > 0);
+			}
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(contents, position, position + length), dst.array()));
+		}
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Assert.assertEquals(LENGTH - 100, gzip.transferTo(100, LENGTH, Channels.newChannel(baos)));
+		Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(contents, 100, LENGTH), baos.toByteArray()));
+		Assert.assertEquals(-1, gzip.read(ByteBuffer.allocate(1), LENGTH));
+	}
+
+	public void testSingleMember() throws IOException {
+		writeMembers();
+		try (SeekableGzip gzip = SeekableGzip.open(gzFile, null)) {
+			assertRandomAccess(gzip);
+		}
+	}
+
+	public void testMultipleMembers() throws IOException {
+		writeMembers(1000, 1 << 20, 3 * (1 << 20) + 17);
+		try (SeekableGzip gzip = SeekableGzip.open(gzFile, null)) {
+			assertRandomAccess(gzip);
+		}
+	}
+
+	public void testSidecar() throws IOException {
+		writeMembers();
+		final File sidecar = SeekableGzip.sidecarOf(gzFile);
+		try (SeekableGzip gzip = SeekableGzip.open(gzFile, sidecar)) {
+			Assert.assertTrue(sidecar.isFile());
+			Assert.assertEquals(LENGTH, gzip.size());
+		}
+		final long indexed = sidecar.lastModified();
+		try (SeekableGzip gzip = SeekableGzip.open(gzFile, sidecar)) {
+			Assert.assertEquals(indexed, sidecar.lastModified());
+			assertRandomAccess(gzip);
+		}
+	}
+
+	public void testDamagedSidecar() throws IOException {
+		writeMembers();
+		final File sidecar = SeekableGzip.sidecarOf(gzFile);
+		try (SeekableGzip gzip = SeekableGzip.open(gzFile, sidecar)) {
+			Assert.assertTrue(gzip.getSeekPointCount() > 1);
+		}
+		final byte[] indexed = Files.readAllBytes(sidecar.toPath());
+		// truncated
+		Files.write(sidecar.toPath(), Arrays.copyOf(indexed, indexed.length - 100));
+		try (SeekableGzip gzip = SeekableGzip.open(gzFile, sidecar)) {
+			assertRandomAccess(gzip);
+		}
+		Assert.assertTrue(Arrays.equals(indexed, Files.readAllBytes(sidecar.toPath())));
+		// a packed window length beyond reason, in the first seek point
+		final byte[] corrupt = indexed.clone();
+		ByteBuffer.wrap(corrupt).putInt(4 + 4 + 8 + 8 + 8 + 4 + 8 + 8 + 4, Integer.MAX_VALUE);
+		Files.write(sidecar.toPath(), corrupt);
+		try (SeekableGzip gzip = SeekableGzip.open(gzFile, sidecar)) {
+			assertRandomAccess(gzip);
+		}
+		Assert.assertTrue(Arrays.equals(indexed, Files.readAllBytes(sidecar.toPath())));
+	}
+
+	public void testCorruptTrailer() throws IOException {
+		writeMembers();
+		final byte[] gz = Files.readAllBytes(gzFile.toPath());
+		gz[gz.length - 1] ^= 1; // ISIZE
+		Files.write(gzFile.toPath(), gz);
+		try (SeekableGzip ignored = SeekableGzip.open(gzFile, null)) {
+			Assert.fail("corrupt input accepted");
+		} catch (ZipException expected) {
+			Assert.assertTrue(expected.getMessage().contains("size"));
+		}
+		gz[gz.length - 1] ^= 1;
+		gz[gz.length - 5] ^= 1; // CRC32
+		Files.write(gzFile.toPath(), gz);
+		try (SeekableGzip ignored = SeekableGzip.open(gzFile, null)) {
+			Assert.fail("corrupt input accepted");
+		} catch (ZipException expected) {
+			Assert.assertTrue(expected.getMessage().contains("CRC32"));
+		}
+	}
+}